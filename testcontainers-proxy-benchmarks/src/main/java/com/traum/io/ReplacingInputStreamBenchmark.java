@@ -0,0 +1,127 @@
+package com.traum.io;
+
+/*-
+ * #%L
+ * testcontainers-proxy-benchmarks
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of the replacing streams used by {@code MountebankProxy.saveImposters}. The payload
+ * resembles a pretty-printed imposter export in which {@code matchesPerMille} of the lines contain
+ * the replaced term.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplacingInputStreamBenchmark {
+
+  private static final String SEARCH = "\"recordRequests\": false";
+  private static final String REPLACEMENT = "\"recordRequests\": true";
+
+  private static final String[] LINES = {
+    "      \"statusCode\": 200,\n",
+    "      \"headers\": {\n",
+    "        \"Content-Type\": \"application/json; charset=utf-8\",\n",
+    "        \"Date\": \"Tue, 03 Mar 2020 10:15:42 GMT\"\n",
+    "      },\n",
+    "      \"body\": \"{\\\"login\\\":\\\"octocat\\\",\\\"id\\\":583231}\"\n",
+  };
+
+  @Param({"65536", "1048576", "16777216"})
+  int payloadSize;
+
+  @Param({"0", "1", "100"})
+  int matchesPerMille;
+
+  private byte[] payload;
+
+  private Replacements singleRule;
+  private Replacements fourRules;
+
+  private final byte[] buffer = new byte[8192];
+
+  @Setup
+  public void setup() {
+    final Random random = new Random(payloadSize ^ matchesPerMille);
+    final StringBuilder builder = new StringBuilder(payloadSize + 128);
+    while (builder.length() < payloadSize) {
+      if (random.nextInt(1000) < matchesPerMille) {
+        builder.append("  ").append(SEARCH).append(",\n");
+      } else {
+        builder.append(LINES[random.nextInt(LINES.length)]);
+      }
+    }
+    payload = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+    singleRule = Replacements.of(SEARCH, REPLACEMENT);
+    fourRules =
+        singleRule
+            .with("api.github.com", "localhost:5050")
+            .with("\"Date\": \"", "\"X-Date\": \"")
+            .with("&utm_source=newsletter", "");
+  }
+
+  @Benchmark
+  public void replacingInputStream(Blackhole blackhole) throws IOException {
+    drain(
+        new ReplacingInputStream(new ByteArrayInputStream(payload), SEARCH, REPLACEMENT),
+        blackhole);
+  }
+
+  @Benchmark
+  public void multiReplacingInputStreamWithSingleRule(Blackhole blackhole) throws IOException {
+    drain(new MultiReplacingInputStream(new ByteArrayInputStream(payload), singleRule), blackhole);
+  }
+
+  @Benchmark
+  public void multiReplacingInputStreamWithFourRules(Blackhole blackhole) throws IOException {
+    drain(new MultiReplacingInputStream(new ByteArrayInputStream(payload), fourRules), blackhole);
+  }
+
+  private void drain(InputStream stream, Blackhole blackhole) throws IOException {
+    try (stream) {
+      long total = 0;
+      for (int n = stream.read(buffer); n != -1; n = stream.read(buffer)) {
+        total += n;
+      }
+      blackhole.consume(total);
+    }
+  }
+}
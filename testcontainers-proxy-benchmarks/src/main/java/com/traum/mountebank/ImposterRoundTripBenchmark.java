@@ -0,0 +1,153 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-benchmarks
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.io.Replacements;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full {@link MountebankProxy#importImposters(Path)} / {@link MountebankProxy#saveImposters(Path,
+ * Path, Replacements)} round trip against {@link InProcessMountebank}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImposterRoundTripBenchmark {
+
+  static final Path DIRECTORY = Path.of("target/benchmark/round-trip");
+
+  /** Number of recorded stubs in the imported imposter file, roughly 500 bytes each. */
+  @Param({"10", "1000", "20000"})
+  int stubs;
+
+  /** File extension of all imposter files; {@code json.gz} files are compressed. */
+  @Param({"json", "json.gz"})
+  String format;
+
+  private InProcessMountebank mountebank;
+  private MountebankProxy proxy;
+  private Path impostersInput;
+  private Path replayOutput;
+  private Path recordOutput;
+
+  @Setup
+  public void setup() throws IOException {
+    Files.createDirectories(DIRECTORY);
+    final Path plainInput = DIRECTORY.resolve("imposters-" + stubs + ".json");
+    impostersInput = DIRECTORY.resolve("imposters-" + stubs + "." + format);
+    replayOutput = DIRECTORY.resolve("replay-" + stubs + "." + format);
+    recordOutput = DIRECTORY.resolve("record-" + stubs + "." + format);
+    writeImposters(plainInput, stubs);
+    if (!impostersInput.equals(plainInput)) {
+      try (InputStream input = Files.newInputStream(plainInput)) {
+        ImposterFiles.write(input, impostersInput);
+      }
+    }
+
+    mountebank = new InProcessMountebank();
+    proxy = mountebank.createProxy();
+  }
+
+  @TearDown
+  public void tearDown() {
+    mountebank.close();
+  }
+
+  @Benchmark
+  public void importImposters() throws IOException {
+    proxy.invalidateImportedImposters();
+    proxy.importImposters(impostersInput);
+  }
+
+  /** The imposters are loaded already, only their fingerprint is computed. */
+  @Benchmark
+  public void importUnchangedImposters() throws IOException {
+    proxy.importImposters(impostersInput);
+  }
+
+  @Benchmark
+  public void saveImposters() {
+    proxy.saveImposters(replayOutput, true);
+  }
+
+  @Benchmark
+  public void importAndSaveReplayAndRecord() throws IOException {
+    proxy.invalidateImportedImposters();
+    proxy.importImposters(impostersInput);
+    proxy.saveImposters(replayOutput, recordOutput, Replacements.none());
+  }
+
+  /** Writes imposters shaped like a pretty-printed mountebank export of recorded responses. */
+  static void writeImposters(Path path, int stubs) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(path)) {
+      writer.write("{\n  \"imposters\": [\n    {\n");
+      writer.write("      \"protocol\": \"http\",\n");
+      writer.write("      \"port\": " + InProcessMountebank.IMPOSTER_PORT + ",\n");
+      writer.write("      \"recordRequests\": false,\n");
+      writer.write("      \"stubs\": [\n");
+      for (int i = 0; i < stubs; i++) {
+        writer.write(i == 0 ? "" : ",\n");
+        writer.write("        {\n");
+        writer.write("          \"predicates\": [\n");
+        writer.write("            {\n");
+        writer.write("              \"deepEquals\": {\n");
+        writer.write("                \"method\": \"GET\",\n");
+        writer.write("                \"path\": \"/users/user" + i + "\"\n");
+        writer.write("              }\n");
+        writer.write("            }\n");
+        writer.write("          ],\n");
+        writer.write("          \"responses\": [\n");
+        writer.write("            {\n");
+        writer.write("              \"is\": {\n");
+        writer.write("                \"statusCode\": 200,\n");
+        writer.write("                \"headers\": {\n");
+        writer.write("                  \"Content-Type\": \"application/json\"\n");
+        writer.write("                },\n");
+        writer.write("                \"body\": \"{\\\"login\\\":\\\"user" + i + "\\\"}\"\n");
+        writer.write("              }\n");
+        writer.write("            }\n");
+        writer.write("          ]\n");
+        writer.write("        }");
+      }
+      writer.write("\n      ]\n    }\n  ]\n}\n");
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-benchmarks
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stand-in for the mountebank admin API which merely stores the last imported imposters and hands
+ * them back on export; it records no requests. Isolates the client-side cost of {@link
+ * MountebankProxy} from mountebank.
+ */
+class InProcessMountebank implements AutoCloseable {
+
+  static final int IMPOSTER_PORT = MountebankContainer.DEFAULT_PROXY_PORT;
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  private volatile byte[] imposters = "{\"imposters\": []}".getBytes();
+
+  InProcessMountebank() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/imposters", this::handleImposters);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  MountebankProxy createProxy() {
+    return new ExternalMountebankProxy(
+        getApiUrl(), Map.of(IMPOSTER_PORT, "localhost:" + IMPOSTER_PORT));
+  }
+
+  String getApiUrl() {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+  }
+
+  private void handleImposters(HttpExchange exchange) throws IOException {
+    try {
+      if (!exchange.getRequestURI().getPath().equals("/imposters")) {
+        // e.g. DELETE /imposters/{port}/savedRequests, requests aren't recorded anyway
+        respond(exchange, "DELETE".equals(exchange.getRequestMethod()) ? 200 : 404, new byte[0]);
+        return;
+      }
+      switch (exchange.getRequestMethod()) {
+        case "PUT":
+          try (InputStream body = exchange.getRequestBody()) {
+            imposters = body.readAllBytes();
+          }
+          respond(exchange, 200, imposters);
+          break;
+        case "GET":
+          respond(exchange, 200, imposters);
+          break;
+        case "DELETE":
+          final byte[] deleted = imposters;
+          imposters = "{\"imposters\": []}".getBytes();
+          respond(exchange, 200, deleted);
+          break;
+        default:
+          respond(exchange, 405, new byte[0]);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int statusCode, byte[] body)
+      throws IOException {
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(statusCode, body.length == 0 ? -1 : body.length);
+    if (body.length > 0) {
+      try (OutputStream output = exchange.getResponseBody()) {
+        output.write(body);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,162 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-benchmarks
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.io.Replacements;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead {@link MountebankExtension} adds to every annotated test apart from talking to
+ * mountebank: annotation lookup, placeholder resolution, init policy evaluation and store handling.
+ * The proxy is a no-op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MountebankExtensionBenchmark {
+
+  static final String DIRECTORY = "target/benchmark/extension";
+
+  private MountebankExtension extension;
+  private StubExtensionContext classContext;
+  private StubExtensionContext methodContext;
+  private StubExtensionContext placeholderContext;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException, NoSuchMethodException {
+    final Path initial =
+        Files.createDirectories(Path.of(DIRECTORY))
+            .resolve(AnnotatedTestCase.class.getName().replace('$', '.') + ".json");
+    Files.writeString(initial, "{\"imposters\": []}");
+    Files.writeString(Path.of(DIRECTORY, "replay.json"), "{\"imposters\": []}");
+
+    extension =
+        new MountebankExtension(
+            new MountebankExtension.MountebankProxyFactory() {
+              @Override
+              public MountebankProxy create() {
+                return new NoOpProxy();
+              }
+            });
+    classContext = StubExtensionContext.root(Map.of()).forClass(AnnotatedTestCase.class);
+    methodContext =
+        classContext.forMethod(AnnotatedTestCase.class.getDeclaredMethod("withoutPlaceholders"));
+    placeholderContext =
+        classContext.forMethod(AnnotatedTestCase.class.getDeclaredMethod("withPlaceholders"));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Throwable {
+    classContext.close();
+  }
+
+  @Benchmark
+  public void beforeAndAfterEach() throws Throwable {
+    extension.beforeEach(methodContext);
+    extension.afterEach(methodContext);
+    methodContext.close();
+  }
+
+  @Benchmark
+  public void beforeAndAfterEachWithPlaceholders() throws Throwable {
+    extension.beforeEach(placeholderContext);
+    extension.afterEach(placeholderContext);
+    placeholderContext.close();
+  }
+
+  @MountebankExtension.WithProxy(initialImposters = DIRECTORY + "/{class.name}.json")
+  static class AnnotatedTestCase {
+
+    @MountebankExtension.WithProxy(
+      initialImposters = DIRECTORY + "/replay.json",
+      initPolicy = MountebankExtension.WithProxy.InitPolicy.ALWAYS
+    )
+    void withoutPlaceholders() {}
+
+    @MountebankExtension.WithProxy(
+      replayImposters = DIRECTORY + "/{class.name}-{method.name}-replay.json",
+      recordImposters = DIRECTORY + "/{class.name}-{method.name}-record.json"
+    )
+    void withPlaceholders() {}
+  }
+
+  private static class NoOpProxy extends MountebankProxy {
+
+    private boolean running;
+
+    @Override
+    public void start() {
+      running = true;
+    }
+
+    @Override
+    public void stop() {
+      running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+      return running;
+    }
+
+    @Override
+    public void importImposters(Path impostersInput) {}
+
+    @Override
+    public void saveImposters(Path replayOutput, Path recordOutput, Replacements replacements) {}
+
+    @Override
+    public String getApiUrl() {
+      return "http://localhost:" + MountebankContainer.MOUNTEBANK_API_PORT;
+    }
+
+    @Override
+    public String getImposterAuthority(int imposterPort) {
+      return "localhost:" + imposterPort;
+    }
+
+    @Override
+    public Collection<Integer> getImposterPorts() {
+      return List.of(MountebankContainer.DEFAULT_PROXY_PORT);
+    }
+  }
+}
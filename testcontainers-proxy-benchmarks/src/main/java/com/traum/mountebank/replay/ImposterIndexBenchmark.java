@@ -0,0 +1,96 @@
+package com.traum.mountebank.replay;
+
+/*-
+ * #%L
+ * testcontainers-proxy-benchmarks
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookup of the stub serving a request in replay imposters recorded by {@code proxyAlways} with
+ * method and path predicate generators, i.e. one stub per path. The request hits the last stub, the
+ * worst case of mountebank's linear scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImposterIndexBenchmark {
+
+  @Param({"10", "1000", "20000"})
+  int stubs;
+
+  private ImposterIndex index;
+  private Map<String, Object> lastRequest;
+  private Map<String, Object> missingRequest;
+
+  @Setup
+  public void setup() throws IOException {
+    final StringBuilder replay =
+        new StringBuilder("{\"imposters\": [{\"protocol\": \"http\", \"port\": 5050, \"stubs\": [");
+    for (int i = 0; i < stubs; i++) {
+      replay
+          .append(i == 0 ? "" : ",")
+          .append("{\"predicates\": [{\"deepEquals\": {\"method\": \"GET\", \"path\": \"/users/")
+          .append(i)
+          .append("\"}}], \"responses\": [{\"is\": {\"body\": \"user ")
+          .append(i)
+          .append("\"}}]}");
+    }
+    replay.append("]}]}");
+    index =
+        ImposterIndex.read(
+            new ByteArrayInputStream(replay.toString().getBytes(StandardCharsets.UTF_8)));
+    lastRequest = request("/users/" + (stubs - 1));
+    missingRequest = request("/users/missing");
+  }
+
+  @Benchmark
+  public OptionalInt findLastStub() {
+    return index.findStub(5050, lastRequest);
+  }
+
+  @Benchmark
+  public OptionalInt findNoStub() {
+    return index.findStub(5050, missingRequest);
+  }
+
+  private static Map<String, Object> request(String path) {
+    return Map.of(
+        "method", "GET", "path", path, "query", Map.of(), "headers", Map.of(), "body", "");
+  }
+}
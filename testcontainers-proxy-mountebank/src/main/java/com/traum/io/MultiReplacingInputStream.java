@@ -0,0 +1,193 @@
+package com.traum.io;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * Applies all rules of a {@link Replacements} set in a single pass over the underlying stream.
+ *
+ * @see ReplacingInputStream for a single rule
+ */
+public class MultiReplacingInputStream extends FilterInputStream {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Replacements.Automaton automaton;
+
+  private final byte[] inBuffer = new byte[BUFFER_SIZE];
+  private int inPosition, inLimit;
+
+  private final byte[] outBuffer;
+  private int outPosition, outLimit;
+
+  private int state;
+
+  private boolean eof;
+
+  public MultiReplacingInputStream(InputStream in, Replacements replacements) {
+    super(in);
+    this.automaton = replacements.automaton();
+    this.outBuffer = new byte[BUFFER_SIZE + automaton.maxEmitted];
+  }
+
+  private boolean fill() throws IOException {
+    outPosition = 0;
+    outLimit = 0;
+
+    while (outLimit == 0) {
+      if (inPosition == inLimit) {
+        if (eof) {
+          return false;
+        }
+        final int n = in.read(inBuffer, 0, inBuffer.length);
+        if (n < 0) {
+          eof = true;
+          // the pending partial match will never complete
+          final byte[] pending = automaton.labels[state];
+          System.arraycopy(pending, 0, outBuffer, 0, pending.length);
+          outLimit = pending.length;
+          state = 0;
+          continue;
+        }
+        inPosition = 0;
+        inLimit = n;
+      }
+      scan();
+    }
+    return true;
+  }
+
+  private void scan() {
+    final int[] transitions = automaton.transitions;
+    final byte[][] labels = automaton.labels;
+    final int[] matchLengths = automaton.matchLengths;
+    final byte[] out = outBuffer;
+    final int outCapacity = out.length - automaton.maxEmitted;
+    int o = outLimit;
+    int s = state;
+    int i = inPosition;
+
+    while (i < inLimit && o <= outCapacity) {
+      final byte b = inBuffer[i++];
+      final byte[] label = labels[s];
+      final int next = transitions[s << 8 | b & 0xFF];
+      final int nextDepth = labels[next].length;
+
+      // bytes falling out of the look-ahead window can no longer be part of an occurrence
+      final int dropped = label.length + 1 - nextDepth;
+      if (dropped > label.length) {
+        System.arraycopy(label, 0, out, o, label.length);
+        o += label.length;
+        out[o++] = b;
+      } else if (dropped > 0) {
+        System.arraycopy(label, 0, out, o, dropped);
+        o += dropped;
+      }
+
+      final int matchLength = matchLengths[next];
+      if (matchLength > 0) {
+        final int prefix = nextDepth - matchLength;
+        System.arraycopy(labels[next], 0, out, o, prefix);
+        o += prefix;
+        final byte[] replacement = automaton.replacements[next];
+        System.arraycopy(replacement, 0, out, o, replacement.length);
+        o += replacement.length;
+        s = 0;
+      } else {
+        s = next;
+      }
+    }
+
+    inPosition = i;
+    outLimit = o;
+    state = s;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (outPosition == outLimit && !fill()) {
+      return -1;
+    }
+    return outBuffer[outPosition++] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b) throws IOException {
+    return read(b, 0, b.length);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    Objects.checkFromIndexSize(off, len, b.length);
+    if (len == 0) {
+      return 0;
+    }
+
+    if (outPosition == outLimit && !fill()) {
+      return -1;
+    }
+
+    final int n = Math.min(len, outLimit - outPosition);
+    System.arraycopy(outBuffer, outPosition, b, off, n);
+    outPosition += n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0) {
+      return 0;
+    }
+
+    long remaining = n;
+    while (remaining > 0) {
+      if (outPosition == outLimit && !fill()) {
+        break;
+      }
+      final int skipped = (int) Math.min(remaining, outLimit - outPosition);
+      outPosition += skipped;
+      remaining -= skipped;
+    }
+    return n - remaining;
+  }
+
+  @Override
+  public int available() {
+    return outLimit - outPosition;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {}
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+}
@@ -0,0 +1,205 @@
+package com.traum.io;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Immutable set of literal search/replacement rules which are applied in a single pass by {@link
+ * MultiReplacingInputStream}.
+ *
+ * <p>The rules are compiled (lazily, once per instance) into an Aho-Corasick automaton. If
+ * occurrences of different rules overlap, the occurrence which ends first is replaced; among
+ * occurrences ending at the same byte the longest one wins. Adding a rule for an existing search
+ * term replaces the previous rule.
+ */
+public final class Replacements {
+
+  private static final Replacements NONE = new Replacements(Collections.emptyMap());
+
+  private final Map<String, String> rules;
+
+  private volatile Automaton automaton;
+
+  private Replacements(Map<String, String> rules) {
+    this.rules = rules;
+  }
+
+  public static Replacements none() {
+    return NONE;
+  }
+
+  public static Replacements of(String search, String replacement) {
+    return NONE.with(search, replacement);
+  }
+
+  public Replacements with(String search, String replacement) {
+    if (search.isEmpty()) {
+      throw new IllegalArgumentException("search must not be empty");
+    }
+
+    final Map<String, String> rules = new LinkedHashMap<>(this.rules);
+    rules.remove(search);
+    rules.put(search, replacement);
+    return new Replacements(Collections.unmodifiableMap(rules));
+  }
+
+  public Replacements with(Replacements other) {
+    if (other.isEmpty()) {
+      return this;
+    }
+    if (isEmpty()) {
+      return other;
+    }
+
+    Replacements result = this;
+    for (Map.Entry<String, String> rule : other.rules.entrySet()) {
+      result = result.with(rule.getKey(), rule.getValue());
+    }
+    return result;
+  }
+
+  public boolean isEmpty() {
+    return rules.isEmpty();
+  }
+
+  /** @return the rules in insertion order, mapping search terms to their replacements */
+  public Map<String, String> asMap() {
+    return rules;
+  }
+
+  Automaton automaton() {
+    Automaton result = automaton;
+    if (result == null) {
+      automaton = result = new Automaton(rules);
+    }
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Replacements && rules.equals(((Replacements) o).rules);
+  }
+
+  @Override
+  public int hashCode() {
+    return rules.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "Replacements" + rules;
+  }
+
+  /**
+   * Dense DFA over bytes. State {@code 0} is the root; every state's label is the input suffix it
+   * represents, which is always a prefix of at least one search term.
+   */
+  static final class Automaton {
+
+    /** {@code transitions[state << 8 | b]} is the successor of {@code state} on byte {@code b}. */
+    final int[] transitions;
+
+    final byte[][] labels;
+
+    /** Length of the longest search term that is a suffix of the state's label, or {@code 0}. */
+    final int[] matchLengths;
+
+    /** Replacement emitted for {@link #matchLengths}. */
+    final byte[][] replacements;
+
+    /** Upper bound for the bytes emitted while consuming a single input byte. */
+    final int maxEmitted;
+
+    private Automaton(Map<String, String> rules) {
+      int capacity = 1;
+      int maxReplacement = 0;
+      int maxDepth = 0;
+      for (Map.Entry<String, String> rule : rules.entrySet()) {
+        final int length = rule.getKey().getBytes(StandardCharsets.UTF_8).length;
+        capacity += length;
+        maxDepth = Math.max(maxDepth, length);
+        maxReplacement =
+            Math.max(maxReplacement, rule.getValue().getBytes(StandardCharsets.UTF_8).length);
+      }
+
+      final int[] trie = new int[capacity << 8];
+      final int[] failure = new int[capacity];
+      final byte[][] labels = new byte[capacity][];
+      final int[] matchLengths = new int[capacity];
+      final byte[][] replacements = new byte[capacity][];
+      labels[0] = new byte[0];
+      int states = 1;
+
+      for (Map.Entry<String, String> rule : rules.entrySet()) {
+        final byte[] search = rule.getKey().getBytes(StandardCharsets.UTF_8);
+        int state = 0;
+        for (int i = 0; i < search.length; i++) {
+          final int index = state << 8 | search[i] & 0xFF;
+          if (trie[index] == 0) {
+            labels[states] = Arrays.copyOf(search, i + 1);
+            trie[index] = states++;
+          }
+          state = trie[index];
+        }
+        matchLengths[state] = search.length;
+        replacements[state] = rule.getValue().getBytes(StandardCharsets.UTF_8);
+      }
+
+      // breadth-first, so failure states (which are shallower) are complete when visited
+      final Queue<Integer> queue = new ArrayDeque<>();
+      for (int b = 0; b < 256; b++) {
+        if (trie[b] != 0) {
+          queue.add(trie[b]);
+        }
+      }
+      while (!queue.isEmpty()) {
+        final int state = queue.remove();
+        if (matchLengths[state] == 0) {
+          matchLengths[state] = matchLengths[failure[state]];
+          replacements[state] = replacements[failure[state]];
+        }
+        for (int b = 0; b < 256; b++) {
+          final int index = state << 8 | b;
+          final int fallback = trie[failure[state] << 8 | b];
+          if (trie[index] == 0) {
+            trie[index] = fallback;
+          } else {
+            failure[trie[index]] = fallback;
+            queue.add(trie[index]);
+          }
+        }
+      }
+
+      this.transitions = Arrays.copyOf(trie, states << 8);
+      this.labels = Arrays.copyOf(labels, states);
+      this.matchLengths = Arrays.copyOf(matchLengths, states);
+      this.replacements = Arrays.copyOf(replacements, states);
+      this.maxEmitted = maxDepth + 1 + maxReplacement;
+    }
+  }
+}
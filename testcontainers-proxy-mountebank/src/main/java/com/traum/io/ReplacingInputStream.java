@@ -3,9 +3,8 @@ package com.traum.io;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 
 /**
  * Created by simon on 8/29/17. Copyright 2017 Simon Haoran Liang
@@ -24,102 +23,194 @@ import java.util.Queue;
  * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
  * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * <p>Replaces every non-overlapping occurrence of {@code search} (scanning left to right) with
+ * {@code replacement}. Input is consumed in chunks and matched with a KMP automaton, so the only
+ * look-ahead ever held back is the partial match, which is always a prefix of {@code search}.
  */
 public class ReplacingInputStream extends FilterInputStream {
 
-  private Queue<Integer> inQueue, outQueue;
+  private static final int BUFFER_SIZE = 8192;
+
   private final byte[] search, replacement;
+  private final int[] failure;
 
-  public ReplacingInputStream(InputStream in, String search, String replacement) {
-    super(in);
+  private final byte[] inBuffer = new byte[BUFFER_SIZE];
+  private int inPosition, inLimit;
 
-    this.inQueue = new LinkedList<>();
-    this.outQueue = new LinkedList<>();
+  private final byte[] outBuffer;
+  private int outPosition, outLimit;
 
-    this.search = search.getBytes();
-    this.replacement = replacement.getBytes();
+  /** Number of bytes of {@link #search} matched by the most recently consumed input. */
+  private int matched;
+
+  private boolean eof;
+
+  public ReplacingInputStream(InputStream in, String search, String replacement) {
+    this(
+        in,
+        search.getBytes(StandardCharsets.UTF_8),
+        replacement.getBytes(StandardCharsets.UTF_8));
   }
 
-  private boolean isMatchFound() {
-    Iterator<Integer> iterator = inQueue.iterator();
+  public ReplacingInputStream(InputStream in, byte[] search, byte[] replacement) {
+    super(in);
 
-    for (byte b : search) {
-      if (!iterator.hasNext() || b != iterator.next()) {
-        return false;
-      }
+    if (search.length == 0) {
+      throw new IllegalArgumentException("search must not be empty");
     }
 
-    return true;
-  }
+    this.search = search.clone();
+    this.replacement = replacement.clone();
+    this.failure = failureFunction(this.search);
 
-  private void readAhead() throws IOException {
-    // Work up some look-ahead.
-    while (inQueue.size() < search.length) {
-      int next = super.read();
-      inQueue.offer(next);
+    // a single input byte emits at most the pending partial match plus the replacement
+    this.outBuffer = new byte[BUFFER_SIZE + search.length + replacement.length];
+  }
 
-      if (next == -1) {
-        break;
+  private static int[] failureFunction(byte[] pattern) {
+    final int[] failure = new int[pattern.length];
+    for (int i = 1, k = 0; i < pattern.length; i++) {
+      while (k > 0 && pattern[i] != pattern[k]) {
+        k = failure[k - 1];
       }
+      if (pattern[i] == pattern[k]) {
+        k++;
+      }
+      failure[i] = k;
     }
+    return failure;
   }
 
-  @Override
-  public int read() throws IOException {
-    // Next byte already determined.
-
-    while (outQueue.isEmpty()) {
-      readAhead();
-
-      if (isMatchFound()) {
-        for (byte a : search) {
-          inQueue.remove();
+  /**
+   * Refills {@link #outBuffer} from the underlying stream.
+   *
+   * @return {@code false} if the end of the stream is reached and everything has been emitted
+   */
+  private boolean fill() throws IOException {
+    outPosition = 0;
+    outLimit = 0;
+
+    while (outLimit == 0) {
+      if (inPosition == inLimit) {
+        if (eof) {
+          return false;
+        }
+        final int n = in.read(inBuffer, 0, inBuffer.length);
+        if (n < 0) {
+          eof = true;
+          // the pending partial match will never complete
+          System.arraycopy(search, 0, outBuffer, 0, matched);
+          outLimit = matched;
+          matched = 0;
+          continue;
         }
+        inPosition = 0;
+        inLimit = n;
+      }
+      scan();
+    }
+    return true;
+  }
 
-        for (byte b : replacement) {
-          outQueue.offer((int) b);
+  /** Feeds buffered input through the matcher until it is consumed or the output is full. */
+  private void scan() {
+    final int reserve = search.length + replacement.length;
+    final byte[] out = outBuffer;
+    int o = outLimit;
+    int m = matched;
+    int i = inPosition;
+
+    while (i < inLimit && o + reserve <= out.length) {
+      final byte b = inBuffer[i++];
+
+      while (m > 0 && b != search[m]) {
+        // drop the part of the partial match which can no longer be part of an occurrence
+        final int k = failure[m - 1];
+        System.arraycopy(search, 0, out, o, m - k);
+        o += m - k;
+        m = k;
+      }
+
+      if (b == search[m]) {
+        if (++m == search.length) {
+          System.arraycopy(replacement, 0, out, o, replacement.length);
+          o += replacement.length;
+          m = 0;
         }
       } else {
-        outQueue.add(inQueue.remove());
+        out[o++] = b;
       }
     }
 
-    return outQueue.remove();
+    inPosition = i;
+    outLimit = o;
+    matched = m;
   }
 
   @Override
-  public int read(byte b[]) throws IOException {
+  public int read() throws IOException {
+    if (outPosition == outLimit && !fill()) {
+      return -1;
+    }
+    return outBuffer[outPosition++] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b) throws IOException {
     return read(b, 0, b.length);
   }
 
-  // copied straight from InputStream inplementation, just needed to to use `read()` from this class
   @Override
-  public int read(byte b[], int off, int len) throws IOException {
-    if (b == null) {
-      throw new NullPointerException();
-    } else if (off < 0 || len < 0 || len > b.length - off) {
-      throw new IndexOutOfBoundsException();
-    } else if (len == 0) {
+  public int read(byte[] b, int off, int len) throws IOException {
+    Objects.checkFromIndexSize(off, len, b.length);
+    if (len == 0) {
       return 0;
     }
 
-    int c = read();
-    if (c == -1) {
+    if (outPosition == outLimit && !fill()) {
       return -1;
     }
-    b[off] = (byte) c;
-
-    int i = 1;
-    try {
-      for (; i < len; i++) {
-        c = read();
-        if (c == -1) {
-          break;
-        }
-        b[off + i] = (byte) c;
+
+    final int n = Math.min(len, outLimit - outPosition);
+    System.arraycopy(outBuffer, outPosition, b, off, n);
+    outPosition += n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0) {
+      return 0;
+    }
+
+    long remaining = n;
+    while (remaining > 0) {
+      if (outPosition == outLimit && !fill()) {
+        break;
       }
-    } catch (IOException ee) {
+      final int skipped = (int) Math.min(remaining, outLimit - outPosition);
+      outPosition += skipped;
+      remaining -= skipped;
     }
-    return i;
+    return n - remaining;
+  }
+
+  @Override
+  public int available() {
+    return outLimit - outPosition;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {}
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
   }
 }
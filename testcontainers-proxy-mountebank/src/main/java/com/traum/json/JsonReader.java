@@ -0,0 +1,434 @@
+package com.traum.json;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Pull parser reading one JSON document token by token, so that imposter files are inspected
+ * without materializing them. Numbers are returned verbatim, as text.
+ *
+ * <p>Not thread-safe.
+ */
+public class JsonReader implements Closeable {
+
+  public enum Token {
+    BEGIN_OBJECT,
+    END_OBJECT,
+    BEGIN_ARRAY,
+    END_ARRAY,
+    NAME,
+    STRING,
+    NUMBER,
+    BOOLEAN,
+    NULL,
+    END_DOCUMENT
+  }
+
+  private static final int EMPTY_DOCUMENT = 0;
+  private static final int NONEMPTY_DOCUMENT = 1;
+  private static final int EMPTY_OBJECT = 2;
+  private static final int DANGLING_NAME = 3;
+  private static final int NONEMPTY_OBJECT = 4;
+  private static final int EMPTY_ARRAY = 5;
+  private static final int NONEMPTY_ARRAY = 6;
+  private static final int CLOSED = 7;
+
+  private final Reader reader;
+  private final char[] buffer = new char[8192];
+  private int position;
+  private int limit;
+  private long offset;
+
+  private int[] scopes = new int[32];
+  private int depth = 1;
+
+  private Token peeked;
+  private String peekedValue;
+  private final StringBuilder text = new StringBuilder();
+
+  public JsonReader(Reader reader) {
+    this.reader = reader;
+    scopes[0] = EMPTY_DOCUMENT;
+  }
+
+  /** Reads UTF-8, as mandated by RFC 8259. */
+  public JsonReader(InputStream input) {
+    this(new InputStreamReader(input, StandardCharsets.UTF_8));
+  }
+
+  public Token peek() throws IOException {
+    if (peeked != null) {
+      return peeked;
+    }
+    switch (scopes[depth - 1]) {
+      case EMPTY_DOCUMENT:
+        scopes[depth - 1] = NONEMPTY_DOCUMENT;
+        return peekValue(nextNonWhitespace());
+      case NONEMPTY_DOCUMENT:
+        final int trailing = nextNonWhitespace();
+        if (trailing != -1) {
+          throw syntaxError("Unexpected content after the document");
+        }
+        return peeked = Token.END_DOCUMENT;
+      case EMPTY_ARRAY:
+        scopes[depth - 1] = NONEMPTY_ARRAY;
+        final int first = nextNonWhitespace();
+        return first == ']' ? (peeked = Token.END_ARRAY) : peekValue(first);
+      case NONEMPTY_ARRAY:
+        final int separator = nextNonWhitespace();
+        if (separator == ']') {
+          return peeked = Token.END_ARRAY;
+        }
+        if (separator != ',') {
+          throw syntaxError("Expected ',' or ']'");
+        }
+        return peekValue(nextNonWhitespace());
+      case EMPTY_OBJECT:
+      case NONEMPTY_OBJECT:
+        int c = nextNonWhitespace();
+        if (c == '}') {
+          return peeked = Token.END_OBJECT;
+        }
+        if (scopes[depth - 1] == NONEMPTY_OBJECT) {
+          if (c != ',') {
+            throw syntaxError("Expected ',' or '}'");
+          }
+          c = nextNonWhitespace();
+        }
+        if (c != '"') {
+          throw syntaxError("Expected a name");
+        }
+        scopes[depth - 1] = DANGLING_NAME;
+        peekedValue = readString();
+        return peeked = Token.NAME;
+      case DANGLING_NAME:
+        if (nextNonWhitespace() != ':') {
+          throw syntaxError("Expected ':'");
+        }
+        scopes[depth - 1] = NONEMPTY_OBJECT;
+        return peekValue(nextNonWhitespace());
+      default:
+        throw new IllegalStateException("Reader is closed");
+    }
+  }
+
+  public boolean hasNext() throws IOException {
+    final Token token = peek();
+    return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+  }
+
+  public void beginObject() throws IOException {
+    consume(Token.BEGIN_OBJECT);
+    push(EMPTY_OBJECT);
+  }
+
+  public void endObject() throws IOException {
+    consume(Token.END_OBJECT);
+    depth--;
+  }
+
+  public void beginArray() throws IOException {
+    consume(Token.BEGIN_ARRAY);
+    push(EMPTY_ARRAY);
+  }
+
+  public void endArray() throws IOException {
+    consume(Token.END_ARRAY);
+    depth--;
+  }
+
+  public String nextName() throws IOException {
+    return consume(Token.NAME);
+  }
+
+  public String nextString() throws IOException {
+    return consume(Token.STRING);
+  }
+
+  /** @return the number exactly as written, e.g. {@code 1.50} or {@code -2e3} */
+  public String nextNumber() throws IOException {
+    return consume(Token.NUMBER);
+  }
+
+  public boolean nextBoolean() throws IOException {
+    return Boolean.parseBoolean(consume(Token.BOOLEAN));
+  }
+
+  public void nextNull() throws IOException {
+    consume(Token.NULL);
+  }
+
+  /** Skips the next value including everything nested in it, or the next name and its value. */
+  public void skipValue() throws IOException {
+    if (peek() == Token.NAME) {
+      nextName();
+    }
+    int nesting = 0;
+    do {
+      switch (peek()) {
+        case BEGIN_OBJECT:
+          beginObject();
+          nesting++;
+          break;
+        case BEGIN_ARRAY:
+          beginArray();
+          nesting++;
+          break;
+        case END_OBJECT:
+          endObject();
+          nesting--;
+          break;
+        case END_ARRAY:
+          endArray();
+          nesting--;
+          break;
+        case END_DOCUMENT:
+          throw syntaxError("Unexpected end of document");
+        default:
+          peeked = null;
+          peekedValue = null;
+      }
+    } while (nesting > 0);
+  }
+
+  /** @return the number of enclosing arrays and objects */
+  public int getDepth() {
+    return depth - 1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    depth = 1;
+    scopes[0] = CLOSED;
+    peeked = null;
+    reader.close();
+  }
+
+  private String consume(Token expected) throws IOException {
+    final Token token = peek();
+    if (token != expected) {
+      throw syntaxError("Expected " + expected + " but was " + token);
+    }
+    final String value = peekedValue;
+    peeked = null;
+    peekedValue = null;
+    return value;
+  }
+
+  private void push(int scope) {
+    if (depth == scopes.length) {
+      scopes = Arrays.copyOf(scopes, depth * 2);
+    }
+    scopes[depth++] = scope;
+  }
+
+  private Token peekValue(int c) throws IOException {
+    switch (c) {
+      case '{':
+        return peeked = Token.BEGIN_OBJECT;
+      case '[':
+        return peeked = Token.BEGIN_ARRAY;
+      case '"':
+        peekedValue = readString();
+        return peeked = Token.STRING;
+      case 't':
+        readLiteral("rue");
+        peekedValue = "true";
+        return peeked = Token.BOOLEAN;
+      case 'f':
+        readLiteral("alse");
+        peekedValue = "false";
+        return peeked = Token.BOOLEAN;
+      case 'n':
+        readLiteral("ull");
+        return peeked = Token.NULL;
+      case -1:
+        throw syntaxError("Unexpected end of document");
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          peekedValue = readNumber((char) c);
+          return peeked = Token.NUMBER;
+        }
+        throw syntaxError("Unexpected character '" + (char) c + "'");
+    }
+  }
+
+  private String readString() throws IOException {
+    text.setLength(0);
+    while (true) {
+      // copy unescaped runs in bulk
+      final int start = position;
+      while (position < limit) {
+        final char c = buffer[position];
+        if (c == '"' || c == '\\' || c < 0x20) {
+          break;
+        }
+        position++;
+      }
+      text.append(buffer, start, position - start);
+      if (position == limit) {
+        if (!fill()) {
+          throw syntaxError("Unterminated string");
+        }
+        continue;
+      }
+
+      final char c = buffer[position++];
+      if (c == '"') {
+        return text.toString();
+      }
+      if (c != '\\') {
+        throw syntaxError("Unescaped control character in string");
+      }
+      text.append(readEscape());
+    }
+  }
+
+  private char readEscape() throws IOException {
+    final int c = read();
+    switch (c) {
+      case '"':
+      case '\\':
+      case '/':
+        return (char) c;
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          final int digit = Character.digit(read(), 16);
+          if (digit < 0) {
+            throw syntaxError("Malformed unicode escape");
+          }
+          value = value << 4 | digit;
+        }
+        return (char) value;
+      default:
+        throw syntaxError("Invalid escape sequence");
+    }
+  }
+
+  /** Validates {@code -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?} while reading. */
+  private String readNumber(char first) throws IOException {
+    text.setLength(0);
+    text.append(first);
+    int c = first == '-' ? appendNext() : first;
+    if (c == '0') {
+      c = appendNext();
+    } else if (c >= '1' && c <= '9') {
+      c = appendDigits();
+    } else {
+      throw syntaxError("Malformed number");
+    }
+    if (c == '.') {
+      c = appendDigits(appendNext());
+    }
+    if (c == 'e' || c == 'E') {
+      c = appendNext();
+      if (c == '+' || c == '-') {
+        c = appendNext();
+      }
+      c = appendDigits(c);
+    }
+    // the character following the number belongs to the next token
+    text.setLength(text.length() - (c == -1 ? 0 : 1));
+    if (c != -1) {
+      position--;
+    }
+    return text.toString();
+  }
+
+  private int appendDigits(int first) throws IOException {
+    if (first < '0' || first > '9') {
+      throw syntaxError("Malformed number");
+    }
+    return appendDigits();
+  }
+
+  private int appendDigits() throws IOException {
+    int c;
+    do {
+      c = appendNext();
+    } while (c >= '0' && c <= '9');
+    return c;
+  }
+
+  private int appendNext() throws IOException {
+    final int c = read();
+    if (c != -1) {
+      text.append((char) c);
+    }
+    return c;
+  }
+
+  private void readLiteral(String remainder) throws IOException {
+    for (int i = 0; i < remainder.length(); i++) {
+      if (read() != remainder.charAt(i)) {
+        throw syntaxError("Unexpected literal");
+      }
+    }
+  }
+
+  private int nextNonWhitespace() throws IOException {
+    while (position < limit || fill()) {
+      final char c = buffer[position++];
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+        return c;
+      }
+    }
+    return -1;
+  }
+
+  private int read() throws IOException {
+    return position < limit || fill() ? buffer[position++] : -1;
+  }
+
+  private boolean fill() throws IOException {
+    offset += limit;
+    position = 0;
+    limit = 0;
+    final int count = reader.read(buffer, 0, buffer.length);
+    if (count <= 0) {
+      return false;
+    }
+    limit = count;
+    return true;
+  }
+
+  private JsonSyntaxException syntaxError(String message) {
+    return new JsonSyntaxException(message + " at offset " + (offset + position));
+  }
+}
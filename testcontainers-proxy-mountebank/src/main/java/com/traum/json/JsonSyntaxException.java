@@ -0,0 +1,33 @@
+package com.traum.json;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+
+/** Thrown by {@link JsonReader} if its input is not well-formed JSON. */
+public class JsonSyntaxException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  public JsonSyntaxException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,274 @@
+package com.traum.json;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Streaming counterpart of {@link JsonReader}. Output is compact unless an {@link
+ * #setIndent(String) indent} is set, in which case it is laid out like {@code JSON.stringify(value,
+ * null, indent)} does, i.e. like mountebank exports imposters.
+ *
+ * <p>Not thread-safe.
+ */
+public class JsonWriter implements Closeable, Flushable {
+
+  private static final int EMPTY_DOCUMENT = 0;
+  private static final int NONEMPTY_DOCUMENT = 1;
+  private static final int EMPTY_OBJECT = 2;
+  private static final int DANGLING_NAME = 3;
+  private static final int NONEMPTY_OBJECT = 4;
+  private static final int EMPTY_ARRAY = 5;
+  private static final int NONEMPTY_ARRAY = 6;
+
+  private static final String[] ESCAPES = new String[0x20];
+
+  static {
+    for (int c = 0; c < ESCAPES.length; c++) {
+      ESCAPES[c] = String.format("\\u%04x", c);
+    }
+    ESCAPES['\b'] = "\\b";
+    ESCAPES['\f'] = "\\f";
+    ESCAPES['\n'] = "\\n";
+    ESCAPES['\r'] = "\\r";
+    ESCAPES['\t'] = "\\t";
+  }
+
+  private final Writer out;
+  private String indent = "";
+
+  private int[] scopes = new int[32];
+  private int depth = 1;
+
+  public JsonWriter(Writer out) {
+    this.out = out;
+    scopes[0] = EMPTY_DOCUMENT;
+  }
+
+  /** @param indent e.g. two spaces, or empty for compact output */
+  public JsonWriter setIndent(String indent) {
+    this.indent = indent;
+    return this;
+  }
+
+  public JsonWriter beginObject() throws IOException {
+    beforeValue();
+    push(EMPTY_OBJECT);
+    out.write('{');
+    return this;
+  }
+
+  public JsonWriter endObject() throws IOException {
+    return close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+  }
+
+  public JsonWriter beginArray() throws IOException {
+    beforeValue();
+    push(EMPTY_ARRAY);
+    out.write('[');
+    return this;
+  }
+
+  public JsonWriter endArray() throws IOException {
+    return close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+  }
+
+  public JsonWriter name(String name) throws IOException {
+    final int scope = scopes[depth - 1];
+    if (scope != EMPTY_OBJECT && scope != NONEMPTY_OBJECT) {
+      throw new IllegalStateException("Names are only allowed in objects");
+    }
+    if (scope == NONEMPTY_OBJECT) {
+      out.write(',');
+    }
+    newline();
+    string(name);
+    out.write(indent.isEmpty() ? ":" : ": ");
+    scopes[depth - 1] = DANGLING_NAME;
+    return this;
+  }
+
+  /** Writes {@code null} if the value is null. */
+  public JsonWriter value(String value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    string(value);
+    return this;
+  }
+
+  /** @param value a valid JSON number, written verbatim */
+  public JsonWriter numberValue(String value) throws IOException {
+    beforeValue();
+    out.write(value);
+    return this;
+  }
+
+  public JsonWriter value(boolean value) throws IOException {
+    beforeValue();
+    out.write(value ? "true" : "false");
+    return this;
+  }
+
+  public JsonWriter nullValue() throws IOException {
+    beforeValue();
+    out.write("null");
+    return this;
+  }
+
+  /**
+   * Copies the next value of the reader including everything nested in it, or the next name and
+   * its value.
+   */
+  public JsonWriter copyValue(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonReader.Token.NAME) {
+      name(reader.nextName());
+    }
+    final int start = reader.getDepth();
+    do {
+      copyToken(reader);
+    } while (reader.getDepth() > start);
+    return this;
+  }
+
+  /** Copies the next token of the reader. */
+  public JsonWriter copyToken(JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+      case BEGIN_OBJECT:
+        reader.beginObject();
+        return beginObject();
+      case END_OBJECT:
+        reader.endObject();
+        return endObject();
+      case BEGIN_ARRAY:
+        reader.beginArray();
+        return beginArray();
+      case END_ARRAY:
+        reader.endArray();
+        return endArray();
+      case NAME:
+        return name(reader.nextName());
+      case STRING:
+        return value(reader.nextString());
+      case NUMBER:
+        return numberValue(reader.nextNumber());
+      case BOOLEAN:
+        return value(reader.nextBoolean());
+      case NULL:
+        reader.nextNull();
+        return nullValue();
+      default:
+        throw new JsonSyntaxException("Unexpected end of document");
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  private void beforeValue() throws IOException {
+    switch (scopes[depth - 1]) {
+      case EMPTY_DOCUMENT:
+        scopes[depth - 1] = NONEMPTY_DOCUMENT;
+        break;
+      case DANGLING_NAME:
+        scopes[depth - 1] = NONEMPTY_OBJECT;
+        break;
+      case EMPTY_ARRAY:
+        scopes[depth - 1] = NONEMPTY_ARRAY;
+        newline();
+        break;
+      case NONEMPTY_ARRAY:
+        out.write(',');
+        newline();
+        break;
+      case NONEMPTY_DOCUMENT:
+        throw new IllegalStateException("A document has a single top-level value");
+      default:
+        throw new IllegalStateException("Expected a name");
+    }
+  }
+
+  private JsonWriter close(int emptyScope, int nonEmptyScope, char bracket) throws IOException {
+    final int scope = scopes[depth - 1];
+    if (scope != emptyScope && scope != nonEmptyScope) {
+      throw new IllegalStateException("Nesting problem");
+    }
+    depth--;
+    if (scope == nonEmptyScope) {
+      newline();
+    }
+    out.write(bracket);
+    return this;
+  }
+
+  private void push(int scope) {
+    if (depth == scopes.length) {
+      scopes = Arrays.copyOf(scopes, depth * 2);
+    }
+    scopes[depth++] = scope;
+  }
+
+  private void newline() throws IOException {
+    if (indent.isEmpty()) {
+      return;
+    }
+    out.write('\n');
+    for (int i = 1; i < depth; i++) {
+      out.write(indent);
+    }
+  }
+
+  private void string(String value) throws IOException {
+    out.write('"');
+    int last = 0;
+    final int length = value.length();
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      final String escape;
+      if (c < 0x20) {
+        escape = ESCAPES[c];
+      } else if (c == '"') {
+        escape = "\\\"";
+      } else if (c == '\\') {
+        escape = "\\\\";
+      } else {
+        continue;
+      }
+      out.write(value, last, i - last);
+      out.write(escape);
+      last = i + 1;
+    }
+    out.write(value, last, length - last);
+    out.write('"');
+  }
+}
@@ -0,0 +1,118 @@
+package com.traum.mountebank;
+
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.net.http.HttpClient;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The HTTP client which all proxies share to talk to mountebank, so that connections to the same
+ * admin API are kept alive and reused across proxies, and the executor which runs their
+ * asynchronous operations.
+ *
+ * <p>Operations block while they wait for mountebank, which is why they don't run on the executor
+ * of the client: a bounded executor would otherwise be exhausted by operations waiting for
+ * responses that need the same threads to be delivered.
+ */
+final class AdminClient {
+
+  private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+  private static final HttpClient CLIENT =
+      HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+  private static final Executor DEFAULT_EXECUTOR = newDefaultExecutor();
+
+  private static volatile Executor executor = DEFAULT_EXECUTOR;
+
+  private AdminClient() {}
+
+  static HttpClient get() {
+    return CLIENT;
+  }
+
+  static Executor getExecutor() {
+    return executor;
+  }
+
+  /** @param executor null for virtual threads if the runtime has them, daemon threads otherwise */
+  static void setExecutor(Executor executor) {
+    AdminClient.executor = executor == null ? DEFAULT_EXECUTOR : executor;
+  }
+
+  /** Runs the operation on the executor, failing the future with whatever it throws. */
+  static <T> CompletableFuture<T> supplyAsync(Operation<T> operation) {
+    return supplyAsync(operation, executor);
+  }
+
+  /**
+   * Like {@link #supplyAsync(Operation)}, but always on the default executor, which is unbounded.
+   * Operations which wait for others, like those of a sharded proxy for its shards, may themselves
+   * run on the executor, so that a bounded one would be left waiting for tasks queued behind them.
+   */
+  static <T> CompletableFuture<T> supplyUnbounded(Operation<T> operation) {
+    return supplyAsync(operation, DEFAULT_EXECUTOR);
+  }
+
+  private static <T> CompletableFuture<T> supplyAsync(Operation<T> operation, Executor executor) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    try {
+      executor.execute(
+          () -> {
+            try {
+              future.complete(operation.get());
+            } catch (Throwable e) {
+              future.completeExceptionally(e);
+            }
+          });
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /** Virtual threads are cheap to block, so each operation gets its own on Java 21 and later. */
+  private static Executor newDefaultExecutor() {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(
+          runnable -> {
+            final Thread thread =
+                new Thread(runnable, "mountebank-admin-" + THREAD_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+    }
+  }
+
+  @FunctionalInterface
+  interface Operation<T> {
+
+    T get() throws Exception;
+  }
+}
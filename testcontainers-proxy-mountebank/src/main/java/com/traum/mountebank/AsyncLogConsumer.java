@@ -0,0 +1,150 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.testcontainers.containers.output.OutputFrame;
+
+/**
+ * Hands container output over to another consumer on a background thread, so that a chatty
+ * container doesn't slow down the thread streaming its logs. Frames are buffered in a bounded
+ * queue; when the delegate can't keep up, frames are dropped according to the {@link
+ * OverflowPolicy} and counted. The worker thread only runs while frames are pending.
+ */
+public class AsyncLogConsumer implements Consumer<OutputFrame> {
+
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /** With {@link OverflowPolicy#SAMPLE}, only every n-th frame is kept. */
+  static final int SAMPLE_RATE = 8;
+
+  private static final long IDLE_MILLIS = 100;
+
+  public enum OverflowPolicy {
+    /** Drop frames arriving while the buffer is full, keeping the start of a burst. */
+    DROP_NEWEST,
+    /** Drop the oldest buffered frames, keeping the end of a burst. */
+    DROP_OLDEST,
+    /**
+     * Once the buffer is half full, keep only every {@value #SAMPLE_RATE}th frame and drop frames
+     * arriving while it is full, so that a burst remains visible throughout.
+     */
+    SAMPLE
+  }
+
+  private final Consumer<OutputFrame> delegate;
+  private final OverflowPolicy overflowPolicy;
+  private final int capacity;
+  private final BlockingQueue<OutputFrame> frames;
+  private final AtomicBoolean working = new AtomicBoolean();
+
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+
+  public AsyncLogConsumer(Consumer<OutputFrame> delegate) {
+    this(delegate, DEFAULT_CAPACITY, OverflowPolicy.SAMPLE);
+  }
+
+  public AsyncLogConsumer(
+      Consumer<OutputFrame> delegate, int capacity, OverflowPolicy overflowPolicy) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive, but is " + capacity);
+    }
+    this.delegate = delegate;
+    this.capacity = capacity;
+    this.overflowPolicy = overflowPolicy;
+    this.frames = new ArrayBlockingQueue<>(capacity);
+  }
+
+  @Override
+  public void accept(OutputFrame frame) {
+    final long count = accepted.incrementAndGet();
+    // the end of the output is always delivered, consumers may wait for it
+    if (frame == OutputFrame.END || overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+      while (!frames.offer(frame)) {
+        if (frames.poll() != null) {
+          dropped.incrementAndGet();
+        }
+      }
+    } else if (overflowPolicy == OverflowPolicy.SAMPLE
+        && frames.size() >= capacity / 2
+        && count % SAMPLE_RATE != 0) {
+      dropped.incrementAndGet();
+    } else if (!frames.offer(frame)) {
+      dropped.incrementAndGet();
+    }
+    startWorker();
+  }
+
+  /** @return how many frames were passed to this consumer */
+  public long getAcceptedFrames() {
+    return accepted.get();
+  }
+
+  /** @return how many frames were passed on to the delegate */
+  public long getDeliveredFrames() {
+    return delivered.get();
+  }
+
+  /** @return how many frames were dropped because the delegate couldn't keep up */
+  public long getDroppedFrames() {
+    return dropped.get();
+  }
+
+  private void startWorker() {
+    if (working.compareAndSet(false, true)) {
+      final Thread thread = new Thread(this::work, "mountebank-log");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  private void work() {
+    try {
+      while (true) {
+        final OutputFrame frame = frames.poll(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+        if (frame == null) {
+          working.set(false);
+          // a frame may have been queued after polling but before the flag was reset
+          if (frames.isEmpty() || !working.compareAndSet(false, true)) {
+            return;
+          }
+          continue;
+        }
+        try {
+          delegate.accept(frame);
+        } catch (RuntimeException e) {
+          // a failing delegate must not stop the delivery of later frames
+        }
+        delivered.incrementAndGet();
+      }
+    } catch (InterruptedException e) {
+      working.set(false);
+      Thread.currentThread().interrupt();
+    }
+  }
+}
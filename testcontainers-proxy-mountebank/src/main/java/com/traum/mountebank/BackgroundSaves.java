@@ -0,0 +1,166 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.extension.ExtensionContext.Store;
+
+/**
+ * Runs saves of imposters in the background, so that tests don't wait for mountebank exports.
+ * Saves of the same path run in the order they are submitted; at most {@code maxPending} saves are
+ * pending at a time, further submissions block. Failures are reported when awaiting the saves, at
+ * the latest when closing.
+ */
+final class BackgroundSaves implements Store.CloseableResource {
+
+  private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+  private final Semaphore permits;
+  private final ExecutorService executor;
+
+  /** Guarded by {@code this}. */
+  private final Map<Path, CompletableFuture<Void>> lastSaves = new HashMap<>();
+
+  /** Saves which are running or failed without being reported yet. */
+  private final Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+
+  BackgroundSaves(int maxPending) {
+    if (maxPending < 1) {
+      throw new IllegalArgumentException("maxPending must be positive, but is " + maxPending);
+    }
+    permits = new Semaphore(maxPending);
+    executor =
+        Executors.newFixedThreadPool(
+            maxPending,
+            runnable -> {
+              final Thread thread =
+                  new Thread(runnable, "mountebank-save-" + THREAD_NUMBER.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * @param paths written by the save, which runs after all previously submitted saves of these
+   *     paths completed (successfully or not)
+   */
+  CompletableFuture<Void> submit(Collection<Path> paths, Runnable save)
+      throws InterruptedException {
+    final List<Path> keys = paths.stream().map(BackgroundSaves::key).collect(Collectors.toList());
+    permits.acquire();
+
+    final CompletableFuture<Void> saved;
+    synchronized (this) {
+      final CompletableFuture<?>[] previous =
+          keys.stream()
+              .map(lastSaves::get)
+              .filter(Objects::nonNull)
+              .toArray(CompletableFuture[]::new);
+      saved =
+          CompletableFuture.allOf(previous)
+              .handle((result, failure) -> null)
+              .thenRunAsync(save, executor);
+      keys.forEach(key -> lastSaves.put(key, saved));
+    }
+    pending.add(saved);
+
+    saved.whenComplete(
+        (result, failure) -> {
+          synchronized (this) {
+            keys.forEach(key -> lastSaves.remove(key, saved));
+          }
+          if (failure == null) {
+            pending.remove(saved);
+          }
+          permits.release();
+        });
+    return saved;
+  }
+
+  /** Waits until pending saves of the given paths completed, ignoring their failures. */
+  void awaitPaths(Collection<Path> paths) {
+    final List<CompletableFuture<Void>> saves;
+    synchronized (this) {
+      saves =
+          paths
+              .stream()
+              .map(path -> lastSaves.get(key(path)))
+              .filter(Objects::nonNull)
+              .collect(Collectors.toList());
+    }
+    saves.forEach(save -> save.handle((result, failure) -> null).join());
+  }
+
+  /**
+   * Waits for the given saves and reports their failures, each at most once.
+   *
+   * @throws RuntimeException the first failure, with all others suppressed
+   */
+  void await(Collection<CompletableFuture<Void>> saves) {
+    final List<Throwable> failures = new ArrayList<>();
+    for (CompletableFuture<Void> save : saves) {
+      try {
+        save.join();
+      } catch (CompletionException e) {
+        if (pending.remove(save)) {
+          failures.add(e.getCause() == null ? e : e.getCause());
+        }
+      }
+    }
+    if (failures.isEmpty()) {
+      return;
+    }
+    final RuntimeException failure =
+        failures.get(0) instanceof RuntimeException
+            ? (RuntimeException) failures.get(0)
+            : new IllegalStateException("Failed to save imposters", failures.get(0));
+    failures.subList(1, failures.size()).forEach(failure::addSuppressed);
+    throw failure;
+  }
+
+  @Override
+  public void close() {
+    try {
+      await(new ArrayList<>(pending));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static Path key(Path path) {
+    return path.toAbsolutePath().normalize();
+  }
+}
@@ -20,11 +20,35 @@ package com.traum.mountebank;
  * #L%
  */
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import org.testcontainers.utility.TestcontainersConfiguration;
 
 public class ContainerMountebankProxy extends MountebankProxy {
 
+  /**
+   * Where fingerprints of the imposters loaded by reused containers are kept, so that later JVMs
+   * can skip importing them again.
+   */
+  static final Path FINGERPRINT_DIRECTORY =
+      Path.of(System.getProperty("java.io.tmpdir"), "testcontainers-proxy");
+
+  /** Background starts by API URL, which external proxies of the same mountebank wait for. */
+  private static final Map<String, CompletableFuture<Void>> BACKGROUND_STARTS =
+      new ConcurrentHashMap<>();
+
   private final MountebankContainer container;
+  private volatile CompletableFuture<Void> backgroundStart;
 
   public ContainerMountebankProxy() {
     this(new Integer[0]);
@@ -42,13 +66,90 @@ public class ContainerMountebankProxy extends MountebankProxy {
     return container;
   }
 
+  /** @return how long the phases of starting the container took, once it started */
+  public Optional<StartupTimings> getStartupTimings() {
+    return container.getStartupTimings();
+  }
+
+  /**
+   * Starts the container on a background thread, binding it to {@link
+   * MountebankContainer#withFixedHostPorts() fixed host ports} so that the API URL and imposter
+   * authorities are known right away. {@link #start()} and {@link ExternalMountebankProxy external
+   * proxies} of the same API URL wait for the start to complete.
+   */
+  public synchronized CompletableFuture<Void> startInBackground() {
+    if (backgroundStart != null) {
+      return backgroundStart;
+    }
+    if (!container.hasFixedHostPorts()) {
+      container.withFixedHostPorts();
+    }
+    final CompletableFuture<Void> started = new CompletableFuture<>();
+    final String apiUrl = getApiUrl();
+    BACKGROUND_STARTS.put(apiUrl, started);
+    backgroundStart = started;
+    final Thread thread =
+        new Thread(
+            () -> {
+              try {
+                startContainer();
+                started.complete(null);
+              } catch (Throwable e) {
+                started.completeExceptionally(e);
+              }
+            },
+            "mountebank-start");
+    thread.setDaemon(true);
+    thread.start();
+    return started;
+  }
+
+  /** Waits for a {@link #startInBackground() background start} of the API URL, if any. */
+  static void awaitBackgroundStart(String apiUrl) {
+    final CompletableFuture<Void> started = BACKGROUND_STARTS.get(apiUrl);
+    if (started != null) {
+      await(started);
+    }
+  }
+
+  private static void await(CompletableFuture<Void> started) {
+    try {
+      started.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
   @Override
   public void start() {
+    final CompletableFuture<Void> started = backgroundStart;
+    if (started != null) {
+      await(started);
+      return;
+    }
+    startContainer();
+  }
+
+  private void startContainer() {
     container.start();
+    super.setImportedFingerprint(readFingerprint());
   }
 
   @Override
   public void stop() {
+    final CompletableFuture<Void> started = backgroundStart;
+    if (started != null) {
+      // a container still starting would be left running
+      started.handle((result, failure) -> null).join();
+      BACKGROUND_STARTS.remove(getApiUrl(), started);
+      synchronized (this) {
+        backgroundStart = null;
+      }
+    }
+    setImportedFingerprint(null);
     container.stop();
   }
 
@@ -76,4 +177,59 @@ public class ContainerMountebankProxy extends MountebankProxy {
     return container.getImposterPorts();
   }
 
+  @Override
+  protected void setImportedFingerprint(String fingerprint) {
+    if (isReused()) {
+      writeFingerprint(fingerprint);
+    }
+    super.setImportedFingerprint(fingerprint);
+  }
+
+  private boolean isReused() {
+    return container.isShouldBeReused()
+        && container.getContainerId() != null
+        && TestcontainersConfiguration.getInstance().environmentSupportsReuse();
+  }
+
+  /**
+   * The fingerprint is only valid as long as mountebank keeps running; it is stored along with the
+   * start time of the container, which changes on restart.
+   */
+  private String readFingerprint() {
+    if (!isReused()) {
+      return null;
+    }
+    try {
+      final List<String> lines = Files.readAllLines(getFingerprintFile());
+      return lines.size() == 2 && lines.get(0).equals(getStartedAt()) ? lines.get(1) : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void writeFingerprint(String fingerprint) {
+    final Path file = getFingerprintFile();
+    try {
+      if (fingerprint == null) {
+        Files.deleteIfExists(file);
+        return;
+      }
+      Files.createDirectories(file.getParent());
+      final Path temporary =
+          Files.createTempFile(file.getParent(), file.getFileName().toString(), null);
+      Files.write(temporary, List.of(getStartedAt(), fingerprint));
+      Files.move(
+          temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to write imposter fingerprint to " + file, e);
+    }
+  }
+
+  private Path getFingerprintFile() {
+    return FINGERPRINT_DIRECTORY.resolve(container.getContainerId() + ".fingerprint");
+  }
+
+  private String getStartedAt() {
+    return container.getContainerInfo().getState().getStartedAt();
+  }
 }
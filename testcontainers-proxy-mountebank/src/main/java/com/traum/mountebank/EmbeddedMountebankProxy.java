@@ -0,0 +1,89 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.mountebank.replay.ReplayServer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Replays recorded imposters inside the JVM, without Docker: it starts in milliseconds but only
+ * serves {@code is} responses of HTTP imposters, matched by the predicates mountebank's proxies
+ * generate. Importing imposters which need mountebank itself, e.g. proxies to record responses,
+ * fails. See {@link ReplayServer}.
+ */
+public class EmbeddedMountebankProxy extends MountebankProxy {
+
+  private final List<Integer> imposterPorts;
+  private final ReplayServer server;
+
+  public EmbeddedMountebankProxy() {
+    this(MountebankContainer.DEFAULT_PROXY_PORT);
+  }
+
+  public EmbeddedMountebankProxy(Integer... imposterPorts) {
+    this.imposterPorts =
+        imposterPorts.length == 0
+            ? List.of(MountebankContainer.DEFAULT_PROXY_PORT)
+            : List.of(imposterPorts);
+    this.server = new ReplayServer(this.imposterPorts);
+  }
+
+  @Override
+  public void start() {
+    try {
+      server.start();
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to start embedded mountebank", e);
+    }
+  }
+
+  @Override
+  public void stop() {
+    invalidateImportedImposters();
+    server.stop();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return server.isRunning();
+  }
+
+  @Override
+  public String getApiUrl() {
+    return "http://" + server.getHost() + ":" + server.getApiPort();
+  }
+
+  @Override
+  public String getImposterAuthority(int imposterPort) throws IllegalArgumentException {
+    if (!imposterPorts.contains(imposterPort)) {
+      throw new IllegalArgumentException("No mapped authority for imposter port " + imposterPort);
+    }
+    return server.getHost() + ":" + server.getImposterPort(imposterPort);
+  }
+
+  @Override
+  public Collection<Integer> getImposterPorts() {
+    return imposterPorts;
+  }
+}
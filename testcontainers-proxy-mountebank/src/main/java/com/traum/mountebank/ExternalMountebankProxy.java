@@ -34,6 +34,15 @@ public class ExternalMountebankProxy extends MountebankProxy {
     this.imposterAuthorities = imposterAuthorities;
   }
 
+  /**
+   * Waits for mountebank if a {@link ContainerMountebankProxy#startInBackground() background start}
+   * of the same JVM is still in progress.
+   */
+  @Override
+  public void start() {
+    ContainerMountebankProxy.awaitBackgroundStart(apiUrl);
+  }
+
   @Override
   public String getApiUrl() {
     return apiUrl;
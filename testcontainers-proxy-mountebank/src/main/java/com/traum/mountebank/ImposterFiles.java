@@ -0,0 +1,162 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads and writes imposter files, which are gzip compressed if their name ends with {@code .gz}.
+ * Files are streamed, never loaded as a whole.
+ */
+public final class ImposterFiles {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private ImposterFiles() {}
+
+  static boolean isCompressed(Path path) {
+    return path.getFileName().toString().endsWith(".gz");
+  }
+
+  /** @return the uncompressed content */
+  public static InputStream newInputStream(Path path) throws IOException {
+    final InputStream input = Files.newInputStream(path);
+    try {
+      return isCompressed(path) ? new GZIPInputStream(input, BUFFER_SIZE) : input;
+    } catch (IOException e) {
+      input.close();
+      throw e;
+    }
+  }
+
+  /** @return a publisher of the uncompressed content */
+  static HttpRequest.BodyPublisher newBodyPublisher(Path path) throws IOException {
+    if (!isCompressed(path)) {
+      return HttpRequest.BodyPublishers.ofFile(path);
+    }
+    return HttpRequest.BodyPublishers.ofInputStream(
+        () -> {
+          try {
+            return newInputStream(path);
+          } catch (IOException e) {
+            throw new UncheckedIOException("failed to read imposters from " + path, e);
+          }
+        });
+  }
+
+  /**
+   * Writes the content to a temporary file next to the path which then replaces the path, so that
+   * a failure never leaves a truncated file behind.
+   */
+  static void write(InputStream content, Path path) throws IOException {
+    try (AtomicFile file = AtomicFile.create(path)) {
+      content.transferTo(file.getOutput());
+      file.commit();
+    }
+  }
+
+  /** @return the file next to the given one which holds a digest of the imposters it stems from */
+  static Path getDigestFile(Path path) {
+    return path.resolveSibling(path.getFileName() + ".sha256");
+  }
+
+  /** @return the digest stored for the given file or null if there is none */
+  static String readDigest(Path path) throws IOException {
+    final Path digestFile = getDigestFile(path);
+    return Files.exists(digestFile) ? Files.readString(digestFile).trim() : null;
+  }
+
+  static void writeDigest(Path path, String digest) throws IOException {
+    write(
+        new ByteArrayInputStream((digest + "\n").getBytes(StandardCharsets.US_ASCII)),
+        getDigestFile(path));
+  }
+
+  /**
+   * Temporary file next to a path which replaces the path on {@link #commit()}; closing it without
+   * committing discards what was written.
+   */
+  static final class AtomicFile implements Closeable {
+
+    private final Path path;
+    private final Path temporary;
+    private final OutputStream output;
+
+    private AtomicFile(Path path, Path temporary, OutputStream output) {
+      this.path = path;
+      this.temporary = temporary;
+      this.output = output;
+    }
+
+    static AtomicFile create(Path path) throws IOException {
+      final Path directory = path.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      final Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+      try {
+        final OutputStream output =
+            isCompressed(path)
+                ? new GZIPOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE)
+                : Files.newOutputStream(temporary);
+        return new AtomicFile(path, temporary, output);
+      } catch (IOException e) {
+        Files.deleteIfExists(temporary);
+        throw e;
+      }
+    }
+
+    /** @return the uncompressed content, compressed on the fly if the path ends with .gz */
+    OutputStream getOutput() {
+      return output;
+    }
+
+    void commit() throws IOException {
+      output.close();
+      try {
+        Files.move(
+            temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        output.close();
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+    }
+  }
+}
@@ -0,0 +1,277 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.json.JsonReader;
+import com.traum.json.JsonSyntaxException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * SHA-256 of an imposters file and the imposter ports of the proxy it is imported into, along with
+ * the ports of imposters which record requests. Only {@link ImposterSet#isReusable() reusable}
+ * imposters, which stay as imported while serving requests, are fingerprinted.
+ */
+final class ImposterFingerprint {
+
+  private final String digest;
+  private final Set<Integer> recordingPorts;
+
+  private ImposterFingerprint(String digest, Set<Integer> recordingPorts) {
+    this.digest = digest;
+    this.recordingPorts = recordingPorts;
+  }
+
+  /** @return hex encoded SHA-256 of the file content and the imposter ports */
+  static String digest(Path impostersInput, Collection<Integer> imposterPorts) throws IOException {
+    final MessageDigest messageDigest = newDigest(impostersInput);
+    messageDigest.update(new TreeSet<>(imposterPorts).toString().getBytes());
+    return hex(messageDigest.digest());
+  }
+
+  /** @return hex encoded SHA-256 of the file content */
+  static String digest(Path file) throws IOException {
+    return hex(newDigest(file).digest());
+  }
+
+  /** @return hex encoded SHA-256 of the given bytes */
+  static String sha256(byte[] bytes) {
+    return hex(newDigest().digest(bytes));
+  }
+
+  /**
+   * @param digest of the file the imposters are read from, see {@link #digest(Path, Collection)}
+   * @return the fingerprint or {@link Optional#empty()} if the imposters aren't reusable
+   */
+  static Optional<ImposterFingerprint> of(ImposterSet imposters, String digest) {
+    return imposters.isReusable()
+        ? Optional.of(new ImposterFingerprint(digest, imposters.getRecordingPorts()))
+        : Optional.empty();
+  }
+
+  /**
+   * Like {@link #of(ImposterSet, String)}, but streams through the file without retaining the
+   * imposters, for imports which don't compare them with the previous import.
+   *
+   * @param impostersInput plain or, if its name ends with {@code .gz}, gzip compressed
+   * @param digest of the file, see {@link #digest(Path, Collection)}
+   * @return the fingerprint or {@link Optional#empty()} if the imposters aren't reusable or the
+   *     file isn't JSON, e.g. an EJS template
+   */
+  static Optional<ImposterFingerprint> analyze(Path impostersInput, String digest)
+      throws IOException {
+    final Analysis analysis = new Analysis();
+    try (JsonReader reader = new JsonReader(ImposterFiles.newInputStream(impostersInput))) {
+      analysis.readDocument(reader);
+    } catch (JsonSyntaxException e) {
+      return Optional.empty();
+    }
+    return analysis.reusable
+        ? Optional.of(
+            new ImposterFingerprint(digest, Collections.unmodifiableSet(analysis.recordingPorts)))
+        : Optional.empty();
+  }
+
+  /** @param value as returned by {@link #toString()} */
+  static ImposterFingerprint parse(String value) {
+    final String[] parts = value.split(":", -1);
+    if (parts.length != 2) {
+      throw new IllegalArgumentException("Malformed fingerprint " + value);
+    }
+    final Set<Integer> recordingPorts = new TreeSet<>();
+    for (String port : parts[1].split(",")) {
+      if (!port.isEmpty()) {
+        recordingPorts.add(Integer.valueOf(port));
+      }
+    }
+    return new ImposterFingerprint(parts[0], Collections.unmodifiableSet(recordingPorts));
+  }
+
+  String getDigest() {
+    return digest;
+  }
+
+  /** @return ports of imposters which record requests */
+  Set<Integer> getRecordingPorts() {
+    return recordingPorts;
+  }
+
+  /** @return the digest followed by the recording ports, suitable for persisting */
+  @Override
+  public String toString() {
+    return digest
+        + ":"
+        + recordingPorts.stream().map(String::valueOf).collect(Collectors.joining(","));
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is supported by every JVM", e);
+    }
+  }
+
+  private static MessageDigest newDigest(Path file) throws IOException {
+    final MessageDigest messageDigest = newDigest();
+    try (InputStream input = Files.newInputStream(file)) {
+      final byte[] buffer = new byte[8192];
+      int count;
+      while ((count = input.read(buffer)) != -1) {
+        messageDigest.update(buffer, 0, count);
+      }
+    }
+    return messageDigest;
+  }
+
+  private static String hex(byte[] bytes) {
+    final StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  /** Applies the rules of {@link ImposterSet#isReusable()} while skipping over the imposters. */
+  private static class Analysis {
+
+    private boolean reusable = true;
+    private final Set<Integer> recordingPorts = new TreeSet<>();
+
+    void readDocument(JsonReader reader) throws IOException {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        if (name.equals("imposters") && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            readImposter(reader);
+          }
+          reader.endArray();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+
+    private void readImposter(JsonReader reader) throws IOException {
+      Integer port = null;
+      boolean recording = false;
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        final JsonReader.Token token = reader.peek();
+        if (name.equals("port") && token == JsonReader.Token.NUMBER) {
+          port = ImposterSet.parsePort(reader.nextNumber());
+        } else if (name.equals("recordRequests") && token == JsonReader.Token.BOOLEAN) {
+          recording |= reader.nextBoolean();
+        } else if (name.equals("protocol") && token == JsonReader.Token.STRING) {
+          // smtp imposters always record
+          recording |= reader.nextString().equals("smtp");
+        } else if (name.equals("stubs") && token == JsonReader.Token.BEGIN_ARRAY) {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            readStub(reader);
+          }
+          reader.endArray();
+        } else {
+          readStateless(reader);
+        }
+      }
+      reader.endObject();
+
+      if (recording) {
+        if (port == null) {
+          // mountebank picks a port we can't clear requests of
+          reusable = false;
+        } else {
+          recordingPorts.add(port);
+        }
+      }
+    }
+
+    private void readStub(JsonReader reader) throws IOException {
+      if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+        readStateless(reader);
+        return;
+      }
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        if (name.equals("responses") && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+          int responses = 0;
+          reader.beginArray();
+          while (reader.hasNext()) {
+            readStateless(reader);
+            responses++;
+          }
+          reader.endArray();
+          reusable &= responses <= 1;
+        } else {
+          readStateless(reader);
+        }
+      }
+      reader.endObject();
+    }
+
+    /** Reads a value, clearing {@link #reusable} if it contains a stateful key. */
+    private void readStateless(JsonReader reader) throws IOException {
+      if (!reusable) {
+        reader.skipValue();
+        return;
+      }
+      final int depth = reader.getDepth();
+      do {
+        switch (reader.peek()) {
+          case BEGIN_OBJECT:
+            reader.beginObject();
+            break;
+          case END_OBJECT:
+            reader.endObject();
+            break;
+          case BEGIN_ARRAY:
+            reader.beginArray();
+            break;
+          case END_ARRAY:
+            reader.endArray();
+            break;
+          case NAME:
+            reusable &= !ImposterSet.STATEFUL_KEYS.contains(reader.nextName());
+            break;
+          default:
+            reader.skipValue();
+        }
+      } while (reader.getDepth() > depth);
+    }
+  }
+}
@@ -0,0 +1,271 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.json.JsonReader;
+import com.traum.json.JsonWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Imposters of a JSON file, each split into its stubs and everything else, so that imposters can
+ * be compared and imported one by one.
+ *
+ * <p>Imposters are reusable unless a stub has several responses (mountebank cycles through them),
+ * proxies (which add stubs) or runs injected JavaScript (which may keep state). Requests recorded
+ * by reusable imposters can be cleared without importing them again.
+ */
+final class ImposterSet {
+
+  static final Set<String> STATEFUL_KEYS =
+      Set.of("proxy", "inject", "decorate", "shellTransform");
+
+  private final List<Imposter> imposters;
+
+  private ImposterSet(List<Imposter> imposters) {
+    this.imposters = imposters;
+  }
+
+  /**
+   * @param impostersInput plain or, if its name ends with {@code .gz}, gzip compressed
+   * @throws com.traum.json.JsonSyntaxException if the file isn't JSON, e.g. an EJS template
+   */
+  static ImposterSet read(Path impostersInput) throws IOException {
+    final List<Imposter> imposters = new ArrayList<>();
+    try (JsonReader reader = new JsonReader(ImposterFiles.newInputStream(impostersInput))) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        if (name.equals("imposters") && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            imposters.add(readImposter(reader));
+          }
+          reader.endArray();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+    return new ImposterSet(Collections.unmodifiableList(imposters));
+  }
+
+  List<Imposter> getImposters() {
+    return imposters;
+  }
+
+  /** @return true if no imposter changes while serving requests */
+  boolean isReusable() {
+    return imposters.stream().allMatch(Imposter::isReusable);
+  }
+
+  /** @return true if every imposter has a port, which mountebank would pick otherwise */
+  boolean hasPorts() {
+    return imposters.stream().allMatch(imposter -> imposter.getPort() != null);
+  }
+
+  /** @return ports of imposters which record requests */
+  Set<Integer> getRecordingPorts() {
+    final Set<Integer> ports = new TreeSet<>();
+    for (Imposter imposter : imposters) {
+      if (imposter.isRecording()) {
+        ports.add(imposter.getPort());
+      }
+    }
+    return Collections.unmodifiableSet(ports);
+  }
+
+  private static Imposter readImposter(JsonReader reader) throws IOException {
+    final StringWriter header = new StringWriter();
+    final JsonWriter headerWriter = new JsonWriter(header);
+    String stubs = null;
+    Integer port = null;
+    boolean recording = false;
+    boolean stateless = true;
+
+    reader.beginObject();
+    headerWriter.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      final JsonReader.Token token = reader.peek();
+      if (name.equals("stubs") && token == JsonReader.Token.BEGIN_ARRAY) {
+        final StringWriter stubsOutput = new StringWriter();
+        stateless &= copyStubs(reader, new JsonWriter(stubsOutput));
+        stubs = stubsOutput.toString();
+        continue;
+      }
+
+      headerWriter.name(name);
+      if (name.equals("port") && token == JsonReader.Token.NUMBER) {
+        final String number = reader.nextNumber();
+        headerWriter.numberValue(number);
+        port = parsePort(number);
+      } else if (name.equals("recordRequests") && token == JsonReader.Token.BOOLEAN) {
+        final boolean recordRequests = reader.nextBoolean();
+        headerWriter.value(recordRequests);
+        recording |= recordRequests;
+      } else if (name.equals("protocol") && token == JsonReader.Token.STRING) {
+        final String protocol = reader.nextString();
+        headerWriter.value(protocol);
+        // smtp imposters always record
+        recording |= protocol.equals("smtp");
+      } else {
+        stateless &= copy(reader, headerWriter);
+      }
+    }
+    reader.endObject();
+    headerWriter.endObject();
+
+    return new Imposter(port, header.toString(), stubs, stateless, recording);
+  }
+
+  static Integer parsePort(String number) {
+    try {
+      return Integer.valueOf(number);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /** @return true if the stubs are stateless */
+  private static boolean copyStubs(JsonReader reader, JsonWriter writer) throws IOException {
+    boolean stateless = true;
+    reader.beginArray();
+    writer.beginArray();
+    while (reader.hasNext()) {
+      if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+        stateless &= copy(reader, writer);
+        continue;
+      }
+      reader.beginObject();
+      writer.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        writer.name(name);
+        if (name.equals("responses") && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+          int responses = 0;
+          reader.beginArray();
+          writer.beginArray();
+          while (reader.hasNext()) {
+            stateless &= copy(reader, writer);
+            responses++;
+          }
+          reader.endArray();
+          writer.endArray();
+          stateless &= responses <= 1;
+        } else {
+          stateless &= copy(reader, writer);
+        }
+      }
+      reader.endObject();
+      writer.endObject();
+    }
+    reader.endArray();
+    writer.endArray();
+    return stateless;
+  }
+
+  /** @return false if the copied value contains a {@link #STATEFUL_KEYS stateful key} */
+  private static boolean copy(JsonReader reader, JsonWriter writer) throws IOException {
+    boolean stateless = true;
+    final int depth = reader.getDepth();
+    do {
+      if (reader.peek() == JsonReader.Token.NAME) {
+        final String name = reader.nextName();
+        stateless &= !STATEFUL_KEYS.contains(name);
+        writer.name(name);
+      } else {
+        writer.copyToken(reader);
+      }
+    } while (reader.getDepth() > depth);
+    return stateless;
+  }
+
+  static final class Imposter {
+
+    private final Integer port;
+    private final String header;
+    private final String stubs;
+    private final boolean stateless;
+    private final boolean recording;
+    private String stubsDigest;
+
+    private Imposter(
+        Integer port, String header, String stubs, boolean stateless, boolean recording) {
+      this.port = port;
+      this.header = header;
+      this.stubs = stubs;
+      this.stateless = stateless;
+      this.recording = recording;
+    }
+
+    /** @return the port or null if mountebank picks it */
+    Integer getPort() {
+      return port;
+    }
+
+    /** @return compact JSON of everything but the stubs */
+    String getHeader() {
+      return header;
+    }
+
+    /** @return compact JSON of the stubs, an empty array if there are none */
+    String getStubs() {
+      return stubs == null ? "[]" : stubs;
+    }
+
+    /** @return hex encoded SHA-256 of {@link #getStubs()} */
+    String getStubsDigest() {
+      if (stubsDigest == null) {
+        stubsDigest = ImposterFingerprint.sha256(getStubs().getBytes(StandardCharsets.UTF_8));
+      }
+      return stubsDigest;
+    }
+
+    boolean isRecording() {
+      return recording;
+    }
+
+    /** @return true if the imposter doesn't change while serving requests */
+    boolean isReusable() {
+      return stateless && (port != null || !recording);
+    }
+
+    /** @return compact JSON of the complete imposter, as imported */
+    String toJson() {
+      if (stubs == null) {
+        return header;
+      }
+      final String stubsMember = "\"stubs\":" + stubs + "}";
+      return header.length() == 2
+          ? "{" + stubsMember
+          : header.substring(0, header.length() - 1) + "," + stubsMember;
+    }
+  }
+}
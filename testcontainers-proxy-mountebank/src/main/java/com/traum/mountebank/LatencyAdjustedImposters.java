@@ -0,0 +1,201 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static com.traum.mountebank.ReplayableImposters.copyArray;
+import static com.traum.mountebank.ReplayableImposters.copyObject;
+
+import com.traum.json.JsonReader;
+import com.traum.json.JsonSyntaxException;
+import com.traum.json.JsonWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Applies a {@link ReplayLatency} to imposters in a single pass: the numeric {@code wait}
+ * behaviors of responses, whether in mountebank's {@code _behaviors} object or its {@code
+ * behaviors} array, are scaled and varied or set to zero. With a {@link ReplayLatency#isRecorded()
+ * recorded} latency proxies get {@code addWaitBehavior}, so that they record the latency of the
+ * upstream. Waits given as JavaScript functions are kept.
+ */
+final class LatencyAdjustedImposters {
+
+  private final ReplayLatency latency;
+  private final Random random;
+  private boolean adjusted;
+
+  private LatencyAdjustedImposters(ReplayLatency latency, long seed) {
+    this.latency = latency;
+    this.random = new Random(seed);
+  }
+
+  /**
+   * @param seed of the jitter, the same seed varies the waits of the same imposters the same way
+   * @return false if neither a wait nor a proxy was adjusted
+   * @throws com.traum.json.JsonSyntaxException if the imposters aren't plain JSON
+   */
+  static boolean write(
+      InputStream imposters, OutputStream output, ReplayLatency latency, long seed)
+      throws IOException {
+    final JsonReader reader = new JsonReader(imposters);
+    final JsonWriter writer =
+        new JsonWriter(
+            new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+    final LatencyAdjustedImposters adjuster = new LatencyAdjustedImposters(latency, seed);
+    copyObject(reader, writer, adjuster::copyImposters);
+    writer.flush();
+    return adjuster.adjusted;
+  }
+
+  /**
+   * @return a temporary copy of the imposters, which the caller deletes, or null if they aren't
+   *     plain JSON, e.g. an EJS template, or nothing needs to be adjusted, without reading them if
+   *     the latency is unchanged; the jitter depends on the path of the imposters
+   */
+  static Path copy(Path imposters, ReplayLatency latency) throws IOException {
+    if (latency.isUnchanged()) {
+      return null;
+    }
+    final Path adjusted = Files.createTempFile("imposters", ".json");
+    try (InputStream input = ImposterFiles.newInputStream(imposters);
+        OutputStream output = Files.newOutputStream(adjusted)) {
+      if (write(input, output, latency, imposters.toAbsolutePath().toString().hashCode())) {
+        return adjusted;
+      }
+      Files.delete(adjusted);
+      return null;
+    } catch (JsonSyntaxException e) {
+      Files.delete(adjusted);
+      return null;
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(adjusted);
+      throw e;
+    }
+  }
+
+  private void copyImposters(String name, JsonReader reader, JsonWriter writer)
+      throws IOException {
+    writer.name(name);
+    if (!"imposters".equals(name)) {
+      writer.copyValue(reader);
+      return;
+    }
+    copyArray(
+        reader,
+        writer,
+        (imposterReader, imposterWriter) ->
+            copyObject(imposterReader, imposterWriter, this::copyImposterField));
+  }
+
+  private void copyImposterField(String name, JsonReader reader, JsonWriter writer)
+      throws IOException {
+    writer.name(name);
+    if (!"stubs".equals(name)) {
+      writer.copyValue(reader);
+      return;
+    }
+    copyArray(
+        reader,
+        writer,
+        (stubReader, stubWriter) -> copyObject(stubReader, stubWriter, this::copyStubField));
+  }
+
+  private void copyStubField(String name, JsonReader reader, JsonWriter writer)
+      throws IOException {
+    writer.name(name);
+    if (!"responses".equals(name)) {
+      writer.copyValue(reader);
+      return;
+    }
+    copyArray(
+        reader,
+        writer,
+        (responseReader, responseWriter) ->
+            copyObject(responseReader, responseWriter, this::copyResponseField));
+  }
+
+  private void copyResponseField(String name, JsonReader reader, JsonWriter writer)
+      throws IOException {
+    writer.name(name);
+    if ("_behaviors".equals(name)) {
+      copyObject(reader, writer, this::copyBehaviorField);
+    } else if ("behaviors".equals(name)) {
+      copyArray(
+          reader,
+          writer,
+          (behaviorReader, behaviorWriter) ->
+              copyObject(behaviorReader, behaviorWriter, this::copyBehaviorField));
+    } else if ("proxy".equals(name)
+        && reader.peek() == JsonReader.Token.BEGIN_OBJECT
+        && latency.isRecorded()) {
+      copyProxy(reader, writer);
+      adjusted = true;
+    } else {
+      writer.copyValue(reader);
+    }
+  }
+
+  private static void copyProxy(JsonReader reader, JsonWriter writer) throws IOException {
+    reader.beginObject();
+    writer.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if ("addWaitBehavior".equals(name)) {
+        reader.skipValue();
+      } else {
+        writer.name(name).copyValue(reader);
+      }
+    }
+    reader.endObject();
+    writer.name("addWaitBehavior").value(true);
+    writer.endObject();
+  }
+
+  private void copyBehaviorField(String name, JsonReader reader, JsonWriter writer)
+      throws IOException {
+    writer.name(name);
+    if ("wait".equals(name)
+        && reader.peek() == JsonReader.Token.NUMBER
+        && !latency.isUnchanged()) {
+      writer.numberValue(String.valueOf(adjust(new BigDecimal(reader.nextNumber()))));
+      adjusted = true;
+    } else {
+      writer.copyValue(reader);
+    }
+  }
+
+  /** @return milliseconds to wait */
+  private long adjust(BigDecimal wait) {
+    if (latency.isOff()) {
+      return 0;
+    }
+    final double variation = latency.getJitter() * (2 * random.nextDouble() - 1);
+    return Math.max(0, Math.round(wait.doubleValue() * latency.getFactor() * (1 + variation)));
+  }
+}
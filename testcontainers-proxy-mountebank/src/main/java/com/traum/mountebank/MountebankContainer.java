@@ -20,34 +20,101 @@ package com.traum.mountebank;
  * #L%
  */
 
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.output.OutputFrame;
 import org.testcontainers.containers.output.Slf4jLogConsumer;
-import org.testcontainers.containers.wait.strategy.Wait;
 
 public class MountebankContainer extends GenericContainer<MountebankContainer> {
 
   static final int MOUNTEBANK_API_PORT = 2525;
   static final int DEFAULT_PROXY_PORT = MOUNTEBANK_API_PORT * 2;
 
+  /**
+   * Label which distinguishes reused containers running at the same time, e.g. the proxies of a
+   * {@link MountebankProxyPool}, since reuse would hand identically configured ones the same
+   * container otherwise.
+   */
+  static final String REUSE_SLOT_LABEL = "com.traum.mountebank.reuse-slot";
+
+  // slots of the reused containers started by this JVM and not stopped yet
+  private static final BitSet REUSE_SLOTS = new BitSet();
+
+  /** Levels of mountebank's {@code --loglevel}. */
+  public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR;
+
+    String getName() {
+      return name().toLowerCase();
+    }
+  }
+
   private final List<Integer> imposterPorts;
+  private final LogLevel logLevel;
+  private final AsyncLogConsumer asyncLogConsumer;
+
+  // host ports by container port, if they were reserved before the start
+  private volatile Map<Integer, Integer> fixedHostPorts = Map.of();
+
+  private int reuseSlot = -1;
+
+  // System.nanoTime() when the phases of the last start ended, 0 if they didn't
+  private volatile long startingAt;
+  private volatile long imageResolvedAt;
+  private volatile long createdAt;
+  private volatile long portsMappedAt;
+  private volatile long readyAt;
 
   public MountebankContainer(Integer... imposterPorts) {
-    this(new Slf4jLogConsumer(LoggerFactory.getLogger(MountebankContainer.class)), imposterPorts);
+    this(LogLevel.INFO, imposterPorts);
+  }
+
+  public MountebankContainer(LogLevel logLevel, Integer... imposterPorts) {
+    this(LoggerFactory.getLogger(MountebankContainer.class), logLevel, imposterPorts);
   }
 
   public MountebankContainer(Logger logger, Integer... imposterPorts) {
-    this(new Slf4jLogConsumer(logger), imposterPorts);
+    this(logger, LogLevel.INFO, imposterPorts);
+  }
+
+  public MountebankContainer(Logger logger, LogLevel logLevel, Integer... imposterPorts) {
+    this(new Slf4jLogConsumer(logger), logLevel, imposterPorts);
   }
 
   public MountebankContainer(Consumer<OutputFrame> logConsumer, Integer... imposterPorts) {
+    this(logConsumer, LogLevel.INFO, imposterPorts);
+  }
+
+  /**
+   * @param logConsumer receives the output of mountebank on the thread streaming it, wrap it in an
+   *     {@link AsyncLogConsumer} unless it is cheap, e.g. {@code new AsyncLogConsumer(new
+   *     Slf4jLogConsumer(logger))}; its counters are available from {@link #getAsyncLogConsumer()}
+   * @param logLevel mountebank logs every request at {@link LogLevel#INFO}, {@link LogLevel#WARN}
+   *     keeps replay-heavy tests quiet
+   */
+  public MountebankContainer(
+      Consumer<OutputFrame> logConsumer, LogLevel logLevel, Integer... imposterPorts) {
     super("andyrbell/mountebank");
     this.imposterPorts = imposterPorts.length == 0 ? List.of(DEFAULT_PROXY_PORT) : List.of(imposterPorts);
+    this.logLevel = logLevel;
+    this.asyncLogConsumer =
+        logConsumer instanceof AsyncLogConsumer ? (AsyncLogConsumer) logConsumer : null;
 
     final List<Integer> arrayList = new ArrayList<>(this.imposterPorts.size() + 1);
     arrayList.add(MOUNTEBANK_API_PORT);
@@ -55,9 +122,143 @@ public class MountebankContainer extends GenericContainer<MountebankContainer> {
 
     withReuse(true);
     withExposedPorts(arrayList.toArray(Integer[]::new));
-    withCommand("mb", "--debug");
+    // --debug adds the matches of stubs to exports; info is mountebank's default log level and
+    // leaving it out keeps reusing containers started with the same command before
+    if (logLevel == LogLevel.INFO) {
+      withCommand("mb", "--debug");
+    } else {
+      withCommand("mb", "--debug", "--loglevel", logLevel.getName());
+    }
     withLogConsumer(logConsumer);
-    waitingFor(Wait.forLogMessage(".*now taking orders.*", 1));
+    waitingFor(new MountebankWaitStrategy());
+  }
+
+  @Override
+  protected void doStart() {
+    startingAt = System.nanoTime();
+    imageResolvedAt = createdAt = portsMappedAt = readyAt = 0;
+    // resolves, and if necessary pulls, the image which starting the container awaits otherwise
+    getDockerImageName();
+    imageResolvedAt = System.nanoTime();
+    if (isShouldBeReused()) {
+      acquireReuseSlot();
+    }
+    super.doStart();
+  }
+
+  @Override
+  public void stop() {
+    try {
+      super.stop();
+    } finally {
+      releaseReuseSlot();
+    }
+  }
+
+  /**
+   * Takes the lowest slot which no running container of this JVM holds, so that consecutive runs
+   * reuse the same containers.
+   */
+  private void acquireReuseSlot() {
+    synchronized (REUSE_SLOTS) {
+      if (reuseSlot < 0) {
+        reuseSlot = REUSE_SLOTS.nextClearBit(0);
+        REUSE_SLOTS.set(reuseSlot);
+      }
+      withLabel(REUSE_SLOT_LABEL, String.valueOf(reuseSlot));
+    }
+  }
+
+  private void releaseReuseSlot() {
+    synchronized (REUSE_SLOTS) {
+      if (reuseSlot >= 0) {
+        REUSE_SLOTS.clear(reuseSlot);
+        reuseSlot = -1;
+      }
+    }
+  }
+
+  @Override
+  protected void containerIsCreated(String containerId) {
+    createdAt = System.nanoTime();
+    super.containerIsCreated(containerId);
+  }
+
+  @Override
+  protected void containerIsStarting(InspectContainerResponse containerInfo) {
+    portsMappedAt = System.nanoTime();
+    super.containerIsStarting(containerInfo);
+  }
+
+  @Override
+  protected void containerIsStarted(InspectContainerResponse containerInfo) {
+    readyAt = System.nanoTime();
+    super.containerIsStarted(containerInfo);
+  }
+
+  /**
+   * Binds the API and imposter ports to free host ports, which are known before the container
+   * starts, e.g. to configure an application while mountebank is still starting. The ports are free
+   * when they are reserved, another process may take one until the container binds it. Disables
+   * reuse, since containers with other ports than the reused one wouldn't be found.
+   */
+  public MountebankContainer withFixedHostPorts() {
+    final Map<Integer, Integer> hostPorts = new HashMap<>();
+    final List<ServerSocket> sockets = new ArrayList<>();
+    try {
+      for (Integer containerPort : getExposedPorts()) {
+        final ServerSocket socket = new ServerSocket(0);
+        sockets.add(socket);
+        hostPorts.put(containerPort, socket.getLocalPort());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to reserve host ports", e);
+    } finally {
+      for (ServerSocket socket : sockets) {
+        try {
+          socket.close();
+        } catch (IOException e) {
+          // the port is released with the socket anyway
+        }
+      }
+    }
+    hostPorts.forEach((containerPort, hostPort) -> addFixedExposedPort(hostPort, containerPort));
+    fixedHostPorts = Map.copyOf(hostPorts);
+    return withReuse(false);
+  }
+
+  public boolean hasFixedHostPorts() {
+    return !fixedHostPorts.isEmpty();
+  }
+
+  /** Fixed host ports are known before the container started. */
+  @Override
+  public Integer getMappedPort(int originalPort) {
+    final Integer hostPort = fixedHostPorts.get(originalPort);
+    return hostPort == null ? super.getMappedPort(originalPort) : hostPort;
+  }
+
+  /** @return the timings of the last start, if it succeeded */
+  public Optional<StartupTimings> getStartupTimings() {
+    if (readyAt == 0) {
+      return Optional.empty();
+    }
+    final long created = createdAt == 0 ? imageResolvedAt : createdAt;
+    return Optional.of(
+        new StartupTimings(
+            Duration.ofNanos(imageResolvedAt - startingAt),
+            Duration.ofNanos(created - imageResolvedAt),
+            Duration.ofNanos(portsMappedAt - created),
+            Duration.ofNanos(readyAt - portsMappedAt)));
+  }
+
+  public LogLevel getLogLevel() {
+    return logLevel;
+  }
+
+  /** @return the consumer the container was created with, if it logs asynchronously */
+  public Optional<AsyncLogConsumer> getAsyncLogConsumer() {
+    return Optional.ofNullable(asyncLogConsumer);
   }
 
   public List<Integer> getImposterPorts() {
@@ -20,7 +20,9 @@ package com.traum.mountebank;
  * #L%
  */
 
+import com.traum.io.Replacements;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -30,15 +32,23 @@ import java.lang.reflect.Method;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.extension.AfterAllCallback;
 import org.junit.jupiter.api.extension.AfterEachCallback;
 import org.junit.jupiter.api.extension.BeforeEachCallback;
 import org.junit.jupiter.api.extension.ExtensionContext;
@@ -47,16 +57,130 @@ import org.junit.jupiter.api.extension.ExtensionContext.Store;
 import org.junit.jupiter.api.extension.ParameterContext;
 import org.junit.jupiter.api.extension.ParameterResolutionException;
 import org.junit.jupiter.api.extension.ParameterResolver;
+import org.slf4j.LoggerFactory;
+import org.testcontainers.containers.output.Slf4jLogConsumer;
 
 public class MountebankExtension
-    implements BeforeEachCallback, AfterEachCallback, ParameterResolver {
+    implements BeforeEachCallback, AfterEachCallback, AfterAllCallback, ParameterResolver {
 
   public static final String EXTERNAL_PROXY_PROPERTY_PREFIX = "mountebank.external.proxy";
   public static final String EXTERNAL_PROXY_API_URL_PROPERTY =
       EXTERNAL_PROXY_PROPERTY_PREFIX + ".api.url";
 
+  /**
+   * System property replacing containers with {@link EmbeddedMountebankProxy embedded proxies},
+   * e.g. {@code -Dmountebank.embedded.proxy=true} to replay recorded imposters without Docker.
+   */
+  public static final String EMBEDDED_PROXY_PROPERTY = "mountebank.embedded.proxy";
+
+  /**
+   * System property setting the {@link MountebankContainer.LogLevel} of containers, e.g. {@code
+   * -Dmountebank.proxy.log-level=warn} to stop mountebank from logging every request.
+   */
+  public static final String PROXY_LOG_LEVEL_PROPERTY = "mountebank.proxy.log-level";
+
+  /**
+   * System property logging the output of containers through an {@link AsyncLogConsumer}, e.g.
+   * {@code -Dmountebank.proxy.log-async=true}, which drops or samples output logging can't keep
+   * up with.
+   */
+  public static final String PROXY_LOG_ASYNC_PROPERTY = "mountebank.proxy.log-async";
+
+  /**
+   * JUnit configuration parameter (or system property) setting the {@link WithProxy.Scope} of
+   * tests which don't specify one, e.g. {@code mountebank.proxy.scope=session}.
+   */
+  public static final String PROXY_SCOPE_PROPERTY = "mountebank.proxy.scope";
+
+  /**
+   * JUnit configuration parameter (or system property) limiting the number of proxies a {@link
+   * WithProxy.Scope#CLASS class} or {@link WithProxy.Scope#SESSION session} runs concurrently,
+   * defaults to {@link MountebankProxyFactory#getMaxConcurrentProxies()}.
+   */
+  public static final String PROXY_POOL_MAX_SIZE_PROPERTY = "mountebank.proxy.pool.max-size";
+
+  /**
+   * JUnit configuration parameter (or system property) enabling {@link
+   * MountebankProxy#setIncrementalImport(boolean) incremental imports} for proxies which outlive a
+   * test, e.g. {@code mountebank.proxy.import.incremental=true}.
+   */
+  public static final String PROXY_IMPORT_INCREMENTAL_PROPERTY =
+      "mountebank.proxy.import.incremental";
+
+  /**
+   * JUnit configuration parameter (or system property) moving saves of imposters after each test to
+   * background threads, e.g. {@code mountebank.proxy.save.async=true}. The proxy is stopped or
+   * returned once its imposters are exported. Failures are reported after all tests of the class.
+   */
+  public static final String SAVE_ASYNC_PROPERTY = "mountebank.proxy.save.async";
+
+  /**
+   * JUnit configuration parameter (or system property) limiting the number of pending background
+   * saves, defaults to {@value #DEFAULT_SAVE_ASYNC_MAX_PENDING}. Tests wait for a save to complete
+   * when the limit is reached.
+   */
+  public static final String SAVE_ASYNC_MAX_PENDING_PROPERTY =
+      "mountebank.proxy.save.async.max-pending";
+
+  static final int DEFAULT_SAVE_ASYNC_MAX_PENDING = 4;
+
+  /**
+   * JUnit configuration parameter (or system property) listing response headers to drop from
+   * replay outputs, separated by commas, e.g. {@code
+   * mountebank.proxy.save.drop-headers=Date,ETag,X-RateLimit-*}. See {@link
+   * ReplayFormat#withoutHeaders(String...)}.
+   */
+  public static final String SAVE_DROP_HEADERS_PROPERTY = "mountebank.proxy.save.drop-headers";
+
+  /**
+   * JUnit configuration parameter (or system property) sorting response headers of replay outputs
+   * by name, e.g. {@code mountebank.proxy.save.sort-headers=true}.
+   */
+  public static final String SAVE_SORT_HEADERS_PROPERTY = "mountebank.proxy.save.sort-headers";
+
+  /**
+   * JUnit configuration parameter (or system property) minifying replay outputs, e.g. {@code
+   * mountebank.proxy.save.minify=true}.
+   */
+  public static final String SAVE_MINIFY_PROPERTY = "mountebank.proxy.save.minify";
+
+  /**
+   * JUnit configuration parameter (or system property) enabling a JSON report of the requests which
+   * the imposters of each test received, e.g. {@code
+   * mountebank.proxy.stats.report=target/mountebank-requests.json}. It is written once all tests
+   * ran.
+   */
+  public static final String REQUEST_STATS_REPORT_PROPERTY = "mountebank.proxy.stats.report";
+
+  /**
+   * JUnit configuration parameter (or system property) setting the latency of replayed responses
+   * for tests which don't set {@link WithProxy#latency()}, e.g. {@code
+   * mountebank.proxy.latency=recorded}. One of {@code unchanged}, {@code off} or {@code recorded}.
+   */
+  public static final String LATENCY_PROPERTY = "mountebank.proxy.latency";
+
+  /**
+   * JUnit configuration parameter (or system property) scaling recorded latency like {@link
+   * WithProxy#latencyFactor()}, e.g. {@code mountebank.proxy.latency.factor=2}.
+   */
+  public static final String LATENCY_FACTOR_PROPERTY = "mountebank.proxy.latency.factor";
+
+  /**
+   * JUnit configuration parameter (or system property) varying recorded latency like {@link
+   * WithProxy#latencyJitter()}, e.g. {@code mountebank.proxy.latency.jitter=0.2}.
+   */
+  public static final String LATENCY_JITTER_PROPERTY = "mountebank.proxy.latency.jitter";
+
+  private static final Namespace NAMESPACE = Namespace.create(MountebankExtension.class);
+
   private static final String STORE_KEY_OUTPUT = "output";
   private static final String STORE_KEY_PROXY = "proxy";
+  private static final String STORE_KEY_POOL = "pool";
+  private static final String STORE_KEY_INITIAL_DIGEST = "initialDigest";
+  private static final String STORE_KEY_SAVES = "saves";
+  private static final String STORE_KEY_PENDING_SAVES = "pendingSaves";
+  private static final String STORE_KEY_REQUEST_STATS = "requestStats";
+  private static final String STORE_KEY_REQUEST_STATS_BASELINE = "requestStatsBaseline";
 
   private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{([^}]+)\\}");
   private static final Pattern EXTERNAL_PROXY_IMPOSTER_AUTHORITIES =
@@ -74,22 +198,52 @@ public class MountebankExtension
                       .orElseThrow());
 
   private final MountebankProxyFactory factory;
+  /** Whether the factory is the default one, which {@link ProxyPrestartListener} uses as well. */
+  private final boolean prestarted;
 
   public MountebankExtension(MountebankProxyFactory factory) {
-    this.factory = factory;
+    this(factory, false);
   }
 
   public MountebankExtension() {
-    this(new MountebankProxyFactory() {});
+    this(new MountebankProxyFactory() {}, true);
+  }
+
+  private MountebankExtension(MountebankProxyFactory factory, boolean prestarted) {
+    this.factory = factory;
+    this.prestarted = prestarted;
   }
 
   @Override
   public void beforeEach(ExtensionContext extensionContext) {
+    if (getAnnotation(extensionContext::getTestMethod).isEmpty()) {
+      return;
+    }
+    final ProxyEvents.Recording recording =
+        ProxyEvents.begin(ProxyOperation.Type.BEFORE_EACH, null)
+            .withTest(extensionContext.getUniqueId());
+    recording.run(
+        () -> {
+          try {
+            initProxy(extensionContext);
+          } finally {
+            getLease(extensionContext).map(ProxyLease::getProxy).ifPresent(recording::withProxy);
+          }
+        });
+  }
+
+  private void initProxy(ExtensionContext extensionContext) {
     getAnnotation(extensionContext::getTestMethod)
         .ifPresent(
             annotation -> {
               final Optional<Path> replayImposters =
                   getPath(extensionContext, WithProxy::replayImposters);
+              awaitBackgroundSaves(
+                  extensionContext,
+                  Stream.concat(
+                          replayImposters.stream(),
+                          getPath(extensionContext, WithProxy::initialImposters).stream())
+                      .collect(Collectors.toList()));
               final Path importImposters =
                   getPath(extensionContext, WithProxy::initialImposters)
                       .filter(Files::exists)
@@ -105,7 +259,19 @@ public class MountebankExtension
                                                     extensionContext, WithProxy::initPolicy);
 
                                             if (initPolicy
-                                                == WithProxy.InitPolicy.IF_REPLAY_OUTDATED) {
+                                                == WithProxy.InitPolicy.IF_INITIAL_CHANGED) {
+                                              final String replayedDigest =
+                                                  ImposterFiles.readDigest(replayPath);
+                                              if (replayedDigest != null) {
+                                                return replayedDigest.equals(
+                                                    getInitialDigest(
+                                                        extensionContext, initialPath));
+                                              }
+                                            }
+                                            if (initPolicy
+                                                    == WithProxy.InitPolicy.IF_REPLAY_OUTDATED
+                                                || initPolicy
+                                                    == WithProxy.InitPolicy.IF_INITIAL_CHANGED) {
                                               return Files.getLastModifiedTime(replayPath)
                                                       .compareTo(
                                                           Files.getLastModifiedTime(initialPath))
@@ -117,7 +283,7 @@ public class MountebankExtension
                                           return false;
                                         } catch (IOException e) {
                                           throw new IllegalArgumentException(
-                                              "Failed to compare modification times", e);
+                                              "Failed to compare replay and initial imposters", e);
                                         }
                                       })
                                   .orElse(initialPath))
@@ -134,13 +300,25 @@ public class MountebankExtension
                         final Store store = getStore(extensionContext);
                         replayImposters
                             .filter(Predicate.not(importImposters::equals))
-                            .ifPresent(outputPath -> store.put(STORE_KEY_OUTPUT, outputPath));
+                            .ifPresent(
+                                outputPath -> {
+                                  store.put(STORE_KEY_OUTPUT, outputPath);
+                                  if (getInitPolicy(extensionContext, WithProxy::initPolicy)
+                                      == WithProxy.InitPolicy.IF_INITIAL_CHANGED) {
+                                    // the replay output is recorded from the initial imposters
+                                    store.put(
+                                        STORE_KEY_INITIAL_DIGEST,
+                                        getInitialDigest(extensionContext, importImposters));
+                                  }
+                                });
 
                         try {
                           if (!proxy.isRunning()) {
-                            proxy.start();
+                            ProxyEvents.start(proxy);
                           }
+                          proxy.setReplayLatency(getReplayLatency(extensionContext));
                           proxy.importImposters(importImposters);
+                          recordRequestStatsBaseline(extensionContext, proxy);
                         } catch (IOException e) {
                           throw new RuntimeException("Failed to inspect file", e);
                         }
@@ -148,26 +326,104 @@ public class MountebankExtension
             });
   }
 
+  /** A shared proxy may keep the request counts of previous tests, which the report leaves out. */
+  private void recordRequestStatsBaseline(
+      ExtensionContext extensionContext, MountebankProxy proxy) {
+    if (getRequestStatsReport(extensionContext).isPresent()
+        && getLease(extensionContext).filter(ProxyLease::isPooled).isPresent()) {
+      getStore(extensionContext).put(STORE_KEY_REQUEST_STATS_BASELINE, proxy.getRequestStats());
+    }
+  }
+
   @Override
   public void afterEach(ExtensionContext extensionContext) {
-    getProxy(extensionContext, false)
-        .ifPresent(
-            proxy -> {
-              final ExtensionContext.Store store = getStore(extensionContext);
-              final Path impostersOutput = (Path) store.get(STORE_KEY_OUTPUT);
+    final Optional<ProxyLease> lease =
+        getAnnotation(extensionContext::getTestMethod)
+            .flatMap(annotation -> getLease(extensionContext));
+    if (lease.isPresent()) {
+      ProxyEvents.begin(ProxyOperation.Type.AFTER_EACH, lease.get().getProxy())
+          .withTest(extensionContext.getUniqueId())
+          .run(() -> saveProxy(extensionContext, lease.get()));
+    }
+  }
 
-              if (impostersOutput != null) {
-                proxy.saveImposters(impostersOutput, true);
+  private void saveProxy(ExtensionContext extensionContext, ProxyLease lease) {
+    final ExtensionContext.Store store = getStore(extensionContext);
+    final Path impostersOutput = (Path) store.get(STORE_KEY_OUTPUT);
+    final String initialDigest = (String) store.get(STORE_KEY_INITIAL_DIGEST);
+    final RequestStats requestStatsBaseline =
+        (RequestStats) store.get(STORE_KEY_REQUEST_STATS_BASELINE);
+    final Optional<Path> recordImposters = getPath(extensionContext, WithProxy::recordImposters);
+    final Replacements replacements = getReplacements(extensionContext);
+    final Optional<RequestStatsReport> requestStats = getRequestStatsReport(extensionContext);
+    final String test = extensionContext.getUniqueId();
+    final String className = extensionContext.getRequiredTestClass().getName();
+    final String methodName = extensionContext.getRequiredTestMethod().getName();
+
+    final Runnable save =
+        () -> {
+          try (lease) {
+            // closing the lease resets the imposters and with them the requests
+            requestStats.ifPresent(
+                report -> {
+                  final RequestStats stats = lease.getProxy().getRequestStats();
+                  report.add(
+                      test,
+                      className,
+                      methodName,
+                      requestStatsBaseline == null ? stats : stats.since(requestStatsBaseline));
+                });
+            lease
+                .getProxy()
+                .saveImposters(impostersOutput, recordImposters.orElse(null), replacements);
+
+            if (impostersOutput != null && initialDigest != null) {
+              try {
+                ImposterFiles.writeDigest(impostersOutput, initialDigest);
+              } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write digest of " + impostersOutput, e);
               }
+            }
+          }
+        };
 
-              getPath(extensionContext, WithProxy::recordImposters)
-                  .ifPresent(
-                      path -> {
-                        proxy.saveImposters(path, false);
-                      });
+    if (!isTrue(extensionContext, SAVE_ASYNC_PROPERTY)) {
+      save.run();
+      return;
+    }
 
-              getProxy(extensionContext, STORE_KEY_PROXY).ifPresent(MountebankProxy::stop);
-            });
+    // the save closes the lease once the proxy is exported, not JUnit after the test
+    store.remove(STORE_KEY_PROXY);
+    final CompletableFuture<Void> saved;
+    try {
+      saved =
+          getBackgroundSaves(extensionContext)
+              .submit(
+                  Stream.concat(
+                          Optional.ofNullable(impostersOutput).stream(),
+                          recordImposters.stream())
+                      .collect(Collectors.toList()),
+                  save);
+    } catch (RuntimeException e) {
+      // the save didn't take over the lease, which is no longer in the store either
+      lease.close();
+      throw e;
+    } catch (InterruptedException e) {
+      lease.close();
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting to save imposters", e);
+    }
+    getPendingSaves(getScopeContext(extensionContext, WithProxy.Scope.CLASS)).add(saved);
+  }
+
+  /** Waits for the background saves of the test class and reports their failures. */
+  @Override
+  public void afterAll(ExtensionContext extensionContext) {
+    final Object pendingSaves = getStore(extensionContext).remove(STORE_KEY_PENDING_SAVES);
+    final Object backgroundSaves = getStore(extensionContext.getRoot()).get(STORE_KEY_SAVES);
+    if (pendingSaves instanceof PendingSaves && backgroundSaves instanceof BackgroundSaves) {
+      ((BackgroundSaves) backgroundSaves).await(((PendingSaves) pendingSaves).saves);
+    }
   }
 
   @Override
@@ -186,28 +442,232 @@ public class MountebankExtension
     return getProxy(extensionContext, false).orElseThrow();
   }
 
+  /** Digests are cached per test, so that a file is hashed at most once. */
+  private String getInitialDigest(ExtensionContext extensionContext, Path initialPath) {
+    return getStore(extensionContext)
+        .getOrComputeIfAbsent(
+            initialPath.toAbsolutePath().normalize().toString() + "#digest",
+            key -> {
+              try {
+                return ImposterFingerprint.digest(initialPath);
+              } catch (IOException e) {
+                throw new UncheckedIOException("Failed to digest " + initialPath, e);
+              }
+            },
+            String.class);
+  }
+
+  private boolean isTrue(ExtensionContext extensionContext, String property) {
+    return extensionContext
+        .getConfigurationParameter(property)
+        .map(value -> Boolean.parseBoolean(value.trim()))
+        .orElse(false);
+  }
+
+  private ReplayFormat getReplayFormat(ExtensionContext extensionContext) {
+    return ReplayFormat.defaults()
+        .withoutHeaders(
+            extensionContext
+                .getConfigurationParameter(SAVE_DROP_HEADERS_PROPERTY)
+                .map(value -> value.split(","))
+                .stream()
+                .flatMap(Arrays::stream)
+                .filter(name -> !name.isBlank())
+                .toArray(String[]::new))
+        .withSortedHeaders(isTrue(extensionContext, SAVE_SORT_HEADERS_PROPERTY))
+        .withMinified(isTrue(extensionContext, SAVE_MINIFY_PROPERTY));
+  }
+
+  private ReplayLatency getReplayLatency(ExtensionContext extensionContext) {
+    return getAnnotation(extensionContext::getTestMethod)
+        .filter(annotation -> annotation.latency() != WithProxy.Latency.DEFAULT)
+        .or(
+            () ->
+                getAnnotation(extensionContext::getTestClass)
+                    .filter(annotation -> annotation.latency() != WithProxy.Latency.DEFAULT))
+        .map(
+            annotation ->
+                toReplayLatency(
+                    annotation.latency(), annotation.latencyFactor(), annotation.latencyJitter()))
+        .or(
+            () ->
+                extensionContext
+                    .getConfigurationParameter(LATENCY_PROPERTY)
+                    .map(value -> WithProxy.Latency.valueOf(value.trim().toUpperCase()))
+                    .map(
+                        latency ->
+                            toReplayLatency(
+                                latency,
+                                getDouble(extensionContext, LATENCY_FACTOR_PROPERTY, 1),
+                                getDouble(extensionContext, LATENCY_JITTER_PROPERTY, 0))))
+        .orElse(ReplayLatency.unchanged());
+  }
+
+  private static ReplayLatency toReplayLatency(
+      WithProxy.Latency latency, double factor, double jitter) {
+    switch (latency) {
+      case OFF:
+        return ReplayLatency.off();
+      case RECORDED:
+        return ReplayLatency.recorded().withFactor(factor).withJitter(jitter);
+      default:
+        return ReplayLatency.unchanged();
+    }
+  }
+
+  private double getDouble(ExtensionContext extensionContext, String property, double orElse) {
+    return extensionContext
+        .getConfigurationParameter(property)
+        .map(value -> Double.parseDouble(value.trim()))
+        .orElse(orElse);
+  }
+
+  /** Shared by all tests of the session, so that saves of the same file are ordered. */
+  private BackgroundSaves getBackgroundSaves(ExtensionContext extensionContext) {
+    final int maxPending =
+        extensionContext
+            .getConfigurationParameter(SAVE_ASYNC_MAX_PENDING_PROPERTY)
+            .map(value -> Integer.parseInt(value.trim()))
+            .orElse(DEFAULT_SAVE_ASYNC_MAX_PENDING);
+    return getStore(extensionContext.getRoot())
+        .getOrComputeIfAbsent(
+            STORE_KEY_SAVES, key -> new BackgroundSaves(maxPending), BackgroundSaves.class);
+  }
+
+  private Optional<RequestStatsReport> getRequestStatsReport(ExtensionContext extensionContext) {
+    return extensionContext
+        .getConfigurationParameter(REQUEST_STATS_REPORT_PROPERTY)
+        .map(String::trim)
+        .filter(Predicate.not(String::isEmpty))
+        .map(
+            output ->
+                getStore(extensionContext.getRoot())
+                    .getOrComputeIfAbsent(
+                        STORE_KEY_REQUEST_STATS,
+                        key -> new RequestStatsReport(Path.of(output)),
+                        RequestStatsReport.class));
+  }
+
+  private Queue<CompletableFuture<Void>> getPendingSaves(ExtensionContext classContext) {
+    return getStore(classContext)
+        .getOrComputeIfAbsent(
+            STORE_KEY_PENDING_SAVES, key -> new PendingSaves(), PendingSaves.class)
+        .saves;
+  }
+
+  /** Waits until files which are about to be read are written by pending background saves. */
+  private void awaitBackgroundSaves(ExtensionContext extensionContext, Collection<Path> paths) {
+    final Object backgroundSaves = getStore(extensionContext.getRoot()).get(STORE_KEY_SAVES);
+    if (backgroundSaves instanceof BackgroundSaves) {
+      ((BackgroundSaves) backgroundSaves).awaitPaths(paths);
+    }
+  }
+
   private Optional<MountebankProxy> getProxy(ExtensionContext extensionContext, boolean create) {
-    return getProxy(extensionContext, STORE_KEY_PROXY)
+    return getLease(extensionContext)
+        .map(ProxyLease::getProxy)
         .or(
             () -> {
               if (create) {
-                final MountebankProxy proxy = factory.create();
-                getStore(extensionContext).put(STORE_KEY_PROXY, proxy);
-                return Optional.of(proxy);
+                final ProxyLease lease = lease(extensionContext, getScope(extensionContext));
+                getStore(extensionContext).put(STORE_KEY_PROXY, lease);
+                return Optional.of(lease.getProxy());
               }
               return Optional.empty();
             });
   }
 
-  private Optional<MountebankProxy> getProxy(ExtensionContext context, String key) {
-    final Store store = getStore(context);
+  private Optional<ProxyLease> getLease(ExtensionContext context) {
+    final Object value = getStore(context).get(STORE_KEY_PROXY);
+    return value instanceof ProxyLease ? Optional.of((ProxyLease) value) : Optional.empty();
+  }
+
+  /**
+   * Method-scoped proxies are created per test, all others are leased from a pool stored in the
+   * context of the respective scope, so that concurrently running tests never share a proxy.
+   */
+  private ProxyLease lease(ExtensionContext extensionContext, WithProxy.Scope scope) {
+    final ReplayFormat replayFormat = getReplayFormat(extensionContext);
+    if (scope == WithProxy.Scope.METHOD) {
+      final MountebankProxy proxy = createProxy();
+      proxy.setReplayFormat(replayFormat);
+      return new ProxyLease(proxy, null);
+    }
 
-    return Optional.ofNullable((MountebankProxy) store.get(key))
-        .or(() -> context.getParent().flatMap(parentContext -> getProxy(parentContext, key)));
+    final int maxSize =
+        extensionContext
+            .getConfigurationParameter(PROXY_POOL_MAX_SIZE_PROPERTY)
+            .map(value -> Integer.parseInt(value.trim()))
+            .orElseGet(factory::getMaxConcurrentProxies);
+    final boolean incrementalImport = isTrue(extensionContext, PROXY_IMPORT_INCREMENTAL_PROPERTY);
+    final Supplier<MountebankProxy> proxyFactory =
+        () -> {
+          final MountebankProxy proxy = createProxy();
+          proxy.setIncrementalImport(incrementalImport);
+          proxy.setReplayFormat(replayFormat);
+          return proxy;
+        };
+    final MountebankProxyPool pool =
+        getStore(getScopeContext(extensionContext, scope))
+            .getOrComputeIfAbsent(
+                STORE_KEY_POOL,
+                key -> new ScopedPool(new MountebankProxyPool(proxyFactory, maxSize)),
+                ScopedPool.class)
+            .getPool();
+
+    try {
+      return new ProxyLease(pool.lease(), pool);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a proxy", e);
+    }
+  }
+
+  private MountebankProxy createProxy() {
+    // an external proxy may have been configured after the session started
+    if (prestarted && !System.getProperties().containsKey(EXTERNAL_PROXY_API_URL_PROPERTY)) {
+      final Optional<MountebankProxy> proxy = ProxyPrestart.claim();
+      if (proxy.isPresent()) {
+        return proxy.get();
+      }
+    }
+    return factory.create();
+  }
+
+  private WithProxy.Scope getScope(ExtensionContext extensionContext) {
+    return getAnnotation(extensionContext::getTestMethod)
+        .map(WithProxy::scope)
+        .filter(scope -> scope != WithProxy.Scope.DEFAULT)
+        .or(
+            () ->
+                getAnnotation(extensionContext::getTestClass)
+                    .map(WithProxy::scope)
+                    .filter(scope -> scope != WithProxy.Scope.DEFAULT))
+        .or(
+            () ->
+                extensionContext
+                    .getConfigurationParameter(PROXY_SCOPE_PROPERTY)
+                    .map(value -> WithProxy.Scope.valueOf(value.trim().toUpperCase())))
+        .orElse(WithProxy.Scope.METHOD);
+  }
+
+  private ExtensionContext getScopeContext(ExtensionContext context, WithProxy.Scope scope) {
+    switch (scope) {
+      case SESSION:
+        return context.getRoot();
+      case CLASS:
+        ExtensionContext classContext = context;
+        while (classContext.getTestMethod().isPresent() && classContext.getParent().isPresent()) {
+          classContext = classContext.getParent().get();
+        }
+        return classContext;
+      default:
+        return context;
+    }
   }
 
   private Store getStore(ExtensionContext context) {
-    return context.getStore(Namespace.GLOBAL);
+    return context.getStore(NAMESPACE);
   }
 
   private String replacePlaceholders(ExtensionContext extensionContext, String path) {
@@ -232,6 +692,19 @@ public class MountebankExtension
         .orElseThrow();
   }
 
+  /** Class-level replacements apply first, so that method-level ones can override them. */
+  private Replacements getReplacements(ExtensionContext extensionContext) {
+    return Stream.of(
+            getAnnotation(extensionContext::getTestClass),
+            getAnnotation(extensionContext::getTestMethod))
+        .flatMap(Optional::stream)
+        .flatMap(annotation -> Stream.of(annotation.replacements()))
+        .reduce(
+            Replacements.none(),
+            (replacements, replace) -> replacements.with(replace.search(), replace.replacement()),
+            Replacements::with);
+  }
+
   private Optional<Path> getPath(
       ExtensionContext extensionContext, Function<WithProxy, String> annotationProperty) {
     return getAnnotation(extensionContext::getTestMethod)
@@ -276,6 +749,44 @@ public class MountebankExtension
     /** Determines if {@link #replayImposters()} is used. */
     InitPolicy initPolicy() default InitPolicy.IF_REPLAY_NONEXISTENT;
 
+    /**
+     * Determines how long a proxy lives. Proxies which outlive a test are reset after it and
+     * re-initialized by the next one instead of being restarted. Imposters which the next test
+     * imports unchanged are not imported again.
+     */
+    Scope scope() default Scope.DEFAULT;
+
+    /**
+     * Literal replacements applied in a single pass to {@link #replayImposters()} and {@link
+     * #recordImposters()} when they are saved, e.g. to mask API keys. Class-level and method-level
+     * replacements are combined.
+     */
+    Replace[] replacements() default {};
+
+    /**
+     * Determines how long replayed responses take. Method-level settings override class-level
+     * ones, including {@link #latencyFactor()} and {@link #latencyJitter()}.
+     */
+    Latency latency() default Latency.DEFAULT;
+
+    /** Multiplies recorded waits if {@link #latency()} is {@link Latency#RECORDED}. */
+    double latencyFactor() default 1;
+
+    /**
+     * Varies recorded waits randomly by up to this fraction if {@link #latency()} is {@link
+     * Latency#RECORDED}, e.g. 0.2 for ±20%.
+     */
+    double latencyJitter() default 0;
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({})
+    @interface Replace {
+
+      String search();
+
+      String replacement() default "";
+    }
+
     enum InitPolicy {
       /** Always use {@link #initialImposters()}. */
       ALWAYS,
@@ -284,12 +795,151 @@ public class MountebankExtension
       IF_REPLAY_NONEXISTENT,
 
       /** Only use if {@link #replayImposters()} is older than {@link #initialImposters()}. */
-      IF_REPLAY_OUTDATED;
+      IF_REPLAY_OUTDATED,
+
+      /**
+       * Only use if the content of {@link #initialImposters()} changed since {@link
+       * #replayImposters()} was recorded from it, no matter the modification times. The SHA-256 of
+       * the initial imposters is stored next to the replay file, in {@code <replay file>.sha256};
+       * files included by templates are not covered. Without that file this policy behaves like
+       * {@link #IF_REPLAY_OUTDATED}.
+       *
+       * <p>The SHA-256 of gzip compressed initial imposters covers the compressed bytes, whose
+       * header contains a modification time, so compressing unchanged imposters again initializes
+       * the proxy again as well.
+       */
+      IF_INITIAL_CHANGED;
+    }
+
+    enum Latency {
+      /**
+       * Use the class-level latency, falling back to the configuration parameter {@value
+       * MountebankExtension#LATENCY_PROPERTY} and eventually to {@link #UNCHANGED}.
+       */
+      DEFAULT,
+
+      /** Import imposters as they are. */
+      UNCHANGED,
+
+      /** Replay responses without waiting, e.g. for fast unit tests. */
+      OFF,
+
+      /**
+       * Record the latency of the upstream and replay responses as slowly, see {@link
+       * ReplayLatency#recorded()}.
+       */
+      RECORDED;
+    }
+
+    enum Scope {
+      /**
+       * Use the class-level scope, falling back to the configuration parameter {@value
+       * MountebankExtension#PROXY_SCOPE_PROPERTY} and eventually to {@link #METHOD}.
+       */
+      DEFAULT,
+
+      /** Start a proxy for each test and stop it afterwards. */
+      METHOD,
+
+      /**
+       * Share proxies between the tests of a test class. Tests running concurrently lease distinct
+       * proxies from a pool, see {@link MountebankExtension#PROXY_POOL_MAX_SIZE_PROPERTY}.
+       */
+      CLASS,
+
+      /** Like {@link #CLASS}, but share the proxies between all tests of the launcher session. */
+      SESSION;
+    }
+  }
+
+  /**
+   * A proxy exclusively used by one test. Closing the lease stops a method-scoped proxy or resets
+   * (unless its imposters are reusable) and returns a pooled one. It is closed after the test or,
+   * at the latest, with its extension context.
+   */
+  private static class ProxyLease implements Store.CloseableResource, AutoCloseable {
+
+    private final MountebankProxy proxy;
+    private final MountebankProxyPool pool;
+    private boolean closed;
+
+    ProxyLease(MountebankProxy proxy, MountebankProxyPool pool) {
+      this.proxy = proxy;
+      this.pool = pool;
+    }
+
+    MountebankProxy getProxy() {
+      return proxy;
+    }
+
+    /** @return true if the proxy is shared with other tests, which may leave requests behind */
+    boolean isPooled() {
+      return pool != null;
+    }
+
+    @Override
+    public synchronized void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+
+      if (pool == null) {
+        if (proxy.isRunning()) {
+          ProxyEvents.stop(proxy);
+        }
+        return;
+      }
+
+      try {
+        // reusable imposters are kept, the next test likely imports them again
+        if (!proxy.hasReusableImposters()) {
+          proxy.resetImposters();
+        }
+      } catch (RuntimeException e) {
+        pool.discard(proxy);
+        throw e;
+      }
+      pool.release(proxy);
+    }
+  }
+
+  /** Background saves of the tests of a class. */
+  private static class PendingSaves {
+
+    private final Queue<CompletableFuture<Void>> saves = new ConcurrentLinkedQueue<>();
+  }
+
+  private static class ScopedPool implements Store.CloseableResource {
+
+    private final MountebankProxyPool pool;
+
+    ScopedPool(MountebankProxyPool pool) {
+      this.pool = pool;
+    }
+
+    MountebankProxyPool getPool() {
+      return pool;
+    }
+
+    @Override
+    public void close() {
+      pool.close();
     }
   }
 
   public interface MountebankProxyFactory {
 
+    /**
+     * @return how many proxies may run at the same time; an external proxy is a single instance
+     *     whose imposters can't be shared by concurrently running tests
+     */
+    default int getMaxConcurrentProxies() {
+      return System.getProperties().containsKey(EXTERNAL_PROXY_API_URL_PROPERTY)
+          ? 1
+          : Integer.MAX_VALUE;
+    }
+
     default MountebankProxy create() {
       if (System.getProperties().containsKey(EXTERNAL_PROXY_API_URL_PROPERTY)) {
         final HashMap<Integer, String> imposterAuthorities =
@@ -316,7 +966,20 @@ public class MountebankExtension
         return new ExternalMountebankProxy(
             System.getProperty(EXTERNAL_PROXY_API_URL_PROPERTY), imposterAuthorities);
       }
-      return new ContainerMountebankProxy();
+      if (Boolean.getBoolean(EMBEDDED_PROXY_PROPERTY)) {
+        return new EmbeddedMountebankProxy();
+      }
+      final MountebankContainer.LogLevel logLevel =
+          MountebankContainer.LogLevel.valueOf(
+              System.getProperty(PROXY_LOG_LEVEL_PROPERTY, "info").trim().toUpperCase());
+      if (Boolean.getBoolean(PROXY_LOG_ASYNC_PROPERTY)) {
+        return new ContainerMountebankProxy(
+            new MountebankContainer(
+                new AsyncLogConsumer(
+                    new Slf4jLogConsumer(LoggerFactory.getLogger(MountebankContainer.class))),
+                logLevel));
+      }
+      return new ContainerMountebankProxy(new MountebankContainer(logLevel));
     }
   }
 }
@@ -22,20 +22,47 @@ package com.traum.mountebank;
 
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
-import com.traum.io.ReplacingInputStream;
+import com.traum.io.MultiReplacingInputStream;
+import com.traum.io.Replacements;
+import com.traum.json.JsonSyntaxException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class MountebankProxy {
 
-  private final HttpClient client = HttpClient.newBuilder().build();
+  private static final Replacements RECORD_REQUESTS =
+      Replacements.of("\"recordRequests\": false", "\"recordRequests\": true");
+
+  private final HttpClient client = AdminClient.get();
+
+  private volatile Replacements replacements = Replacements.none();
+  private volatile ReplayFormat replayFormat = ReplayFormat.defaults();
+  private volatile ReplayLatency replayLatency = ReplayLatency.unchanged();
+
+  private volatile String importedFingerprint;
+  private volatile boolean savedRequestsDeletable = true;
+
+  private volatile boolean incrementalImport;
+  private volatile Map<Integer, ImportedImposter> importedImposters;
 
   public void start() {}
 
@@ -45,18 +72,108 @@ public abstract class MountebankProxy {
     return false;
   }
 
+  /**
+   * Imports the given imposters, replacing all existing ones. The import is skipped if the very
+   * same imposters were imported last and are {@link ImposterSet reusable}; only their recorded
+   * requests are cleared then. With {@link #setIncrementalImport(boolean) incremental import} only
+   * changed imposters are replaced.
+   */
   public void importImposters(Path impostersInput) throws IOException {
-    final String mountebankUri = getApiUrl();
+    ProxyEvents.begin(ProxyOperation.Type.IMPORT, this)
+        .withPaths(impostersInput)
+        .run(() -> importImpostersWithLatency(impostersInput));
+  }
 
-    HttpRequest postRequest =
+  /**
+   * Like {@link #importImposters(Path)}, but on the {@link #setAdminExecutor(Executor) executor},
+   * e.g. to prepare several proxies concurrently.
+   */
+  public CompletableFuture<Void> importImpostersAsync(Path impostersInput) {
+    return AdminClient.supplyAsync(
+        () -> {
+          importImposters(impostersInput);
+          return null;
+        });
+  }
+
+  /** The latency is applied to a temporary copy, which is imported like any other file. */
+  private void importImpostersWithLatency(Path impostersInput) throws IOException {
+    final Path adjusted = LatencyAdjustedImposters.copy(impostersInput, replayLatency);
+    if (adjusted == null) {
+      importImpostersIfChanged(impostersInput);
+      return;
+    }
+    try {
+      importImpostersIfChanged(adjusted);
+    } finally {
+      Files.deleteIfExists(adjusted);
+    }
+  }
+
+  private void importImpostersIfChanged(Path impostersInput) throws IOException {
+    final String digest = ImposterFingerprint.digest(impostersInput, getImposterPorts());
+    final String importedFingerprint = getImportedFingerprint();
+    if (importedFingerprint != null) {
+      final ImposterFingerprint imported = ImposterFingerprint.parse(importedFingerprint);
+      if (imported.getDigest().equals(digest)
+          && deleteSavedRequests(imported.getRecordingPorts())) {
+        return;
+      }
+    }
+
+    // until the import succeeded nothing is known about the imposters
+    setImportedFingerprint(null);
+    final Map<Integer, ImportedImposter> previousImposters = importedImposters;
+    importedImposters = null;
+
+    if (!incrementalImport) {
+      final CompletableFuture<Void> imported = putImposters(impostersInput);
+      // analyze while mountebank is busy importing, nothing needs to be compared with this import
+      final Optional<ImposterFingerprint> fingerprint =
+          ImposterFingerprint.analyze(impostersInput, digest);
+      imported.join();
+      fingerprint.map(ImposterFingerprint::toString).ifPresent(this::setImportedFingerprint);
+      return;
+    }
+
+    final ImposterSet imposters;
+    if (previousImposters != null) {
+      imposters = readImposters(impostersInput);
+      if (imposters == null
+          || !imposters.hasPorts()
+          || !importIncrementally(previousImposters, imposters)) {
+        putImposters(impostersInput).join();
+      }
+    } else {
+      final CompletableFuture<Void> imported = putImposters(impostersInput);
+      // read while mountebank is busy importing
+      imposters = readImposters(impostersInput);
+      imported.join();
+    }
+
+    if (imposters != null) {
+      if (imposters.hasPorts()) {
+        importedImposters = ImportedImposter.of(imposters);
+      }
+      ImposterFingerprint.of(imposters, digest)
+          .map(ImposterFingerprint::toString)
+          .ifPresent(this::setImportedFingerprint);
+    }
+  }
+
+  /** Removes all imposters, e.g. to reuse the proxy for another test. */
+  public void resetImposters() {
+    invalidateImportedImposters();
+
+    HttpRequest putRequest =
         HttpRequest.newBuilder()
-            .uri(URI.create(mountebankUri + "/imposters"))
+            .uri(URI.create(getApiUrl() + "/imposters"))
             .header("Content-Type", "application/json")
-            .PUT(HttpRequest.BodyPublishers.ofFile(impostersInput))
+            .PUT(HttpRequest.BodyPublishers.ofString("{\"imposters\": []}"))
             .build();
 
     client
-        .sendAsync(postRequest, HttpResponse.BodyHandlers.ofString())
+        .sendAsync(putRequest, HttpResponse.BodyHandlers.ofString())
         .thenAccept(
             response ->
                 assertTrue(
@@ -64,34 +181,376 @@ public abstract class MountebankProxy {
         .join();
   }
 
+  /** Like {@link #resetImposters()}, but on the {@link #setAdminExecutor(Executor) executor}. */
+  public CompletableFuture<Void> resetImpostersAsync() {
+    return AdminClient.supplyAsync(
+        () -> {
+          resetImposters();
+          return null;
+        });
+  }
+
+  /** Removes the imposter on the port, e.g. to free it for another proxy. */
+  public void deleteImposter(int imposterPort) {
+    invalidateImportedImposters();
+    send(imposterRequest(imposterPort, "").DELETE())
+        .thenAccept(
+            response ->
+                assertTrue(
+                    response.statusCode() >= 200 && response.statusCode() < 300,
+                    response.body()))
+        .join();
+  }
+
+  /** Like {@link #deleteImposter(int)}, but on the {@link #setAdminExecutor(Executor) executor}. */
+  public CompletableFuture<Void> deleteImposterAsync(int imposterPort) {
+    return AdminClient.supplyAsync(
+        () -> {
+          deleteImposter(imposterPort);
+          return null;
+        });
+  }
+
+  public boolean isIncrementalImport() {
+    return incrementalImport;
+  }
+
+  /**
+   * Enables comparing imports with the previous one, so that only imposters which were added,
+   * removed or changed are updated through the per-imposter endpoints of mountebank; unchanged
+   * imposters keep their sockets. Imposters which may have changed while serving requests get
+   * their stubs replaced. Files which aren't plain JSON, e.g. EJS templates, are always imported
+   * as a whole.
+   */
+  public void setIncrementalImport(boolean incrementalImport) {
+    this.incrementalImport = incrementalImport;
+  }
+
+  /**
+   * @return true if the last {@link #importImposters(Path) imported} imposters are known to be
+   *     loaded and either reusable or updated {@link #setIncrementalImport(boolean) incrementally},
+   *     so that they don't need to be reset before the next import
+   */
+  public boolean hasReusableImposters() {
+    return getImportedFingerprint() != null || importedImposters != null;
+  }
+
+  /**
+   * Forces the next {@link #importImposters(Path)} to import all imposters, e.g. after imposters
+   * have been changed through the mountebank API directly.
+   */
+  public void invalidateImportedImposters() {
+    setImportedFingerprint(null);
+    importedImposters = null;
+  }
+
+  /**
+   * @return {@link ImposterFingerprint#toString()} of the loaded imposters or null if they are
+   *     unknown or not reusable
+   */
+  protected String getImportedFingerprint() {
+    return importedFingerprint;
+  }
+
+  protected void setImportedFingerprint(String fingerprint) {
+    this.importedFingerprint = fingerprint;
+  }
+
+  private CompletableFuture<Void> putImposters(Path impostersInput) throws IOException {
+    HttpRequest postRequest =
+        HttpRequest.newBuilder()
+            .uri(URI.create(getApiUrl() + "/imposters"))
+            .header("Content-Type", "application/json")
+            .PUT(ImposterFiles.newBodyPublisher(impostersInput))
+            .build();
+
+    return client
+        .sendAsync(postRequest, HttpResponse.BodyHandlers.ofString())
+        .thenAccept(
+            response ->
+                assertTrue(
+                    response.statusCode() >= 200 && response.statusCode() < 300,
+                    response.body()));
+  }
+
+  /** @return null if the file isn't plain JSON */
+  private static ImposterSet readImposters(Path impostersInput) throws IOException {
+    try {
+      return ImposterSet.read(impostersInput);
+    } catch (JsonSyntaxException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Removes imposters which are gone or changed apart from their stubs first, to free their ports,
+   * then creates new imposters and replaces changed stubs.
+   *
+   * @return false if an update failed, leaving mountebank in an unknown state
+   */
+  private boolean importIncrementally(
+      Map<Integer, ImportedImposter> previousImposters, ImposterSet imposters) {
+    final Map<Integer, ImposterSet.Imposter> nextImposters = new HashMap<>();
+    imposters.getImposters().forEach(imposter -> nextImposters.put(imposter.getPort(), imposter));
+
+    final Set<Integer> removedPorts = new HashSet<>();
+    previousImposters.forEach(
+        (port, previous) -> {
+          final ImposterSet.Imposter next = nextImposters.get(port);
+          if (next == null
+              || !next.getHeader().equals(previous.header)
+              || (next.isRecording() && !savedRequestsDeletable)) {
+            removedPorts.add(port);
+          }
+        });
+    if (!isSuccessful(
+        removedPorts.stream().map(port -> send(imposterRequest(port, "").DELETE())))) {
+      return false;
+    }
+
+    final List<CompletableFuture<HttpResponse<String>>> updates = new ArrayList<>();
+    final List<CompletableFuture<HttpResponse<String>>> deletedRequests = new ArrayList<>();
+    for (ImposterSet.Imposter imposter : imposters.getImposters()) {
+      final Integer port = imposter.getPort();
+      final ImportedImposter previous =
+          removedPorts.contains(port) ? null : previousImposters.get(port);
+      if (previous == null) {
+        updates.add(
+            send(
+                HttpRequest.newBuilder()
+                    .uri(URI.create(getApiUrl() + "/imposters"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(imposter.toJson()))));
+        continue;
+      }
+      if (!imposter.isReusable() || !imposter.getStubsDigest().equals(previous.stubsDigest)) {
+        updates.add(
+            send(
+                imposterRequest(port, "/stubs")
+                    .header("Content-Type", "application/json")
+                    .PUT(
+                        HttpRequest.BodyPublishers.ofString(
+                            "{\"stubs\":" + imposter.getStubs() + "}"))));
+      }
+      if (imposter.isRecording()) {
+        deletedRequests.add(send(imposterRequest(port, "/savedRequests").DELETE()));
+      }
+    }
+
+    final boolean updated = isSuccessful(updates.stream());
+    if (!isSuccessful(deletedRequests.stream())) {
+      // older mountebank versions lack the endpoint, re-create recording imposters from now on
+      savedRequestsDeletable = false;
+      return false;
+    }
+    return updated;
+  }
+
+  /** @return false if mountebank doesn't support deleting saved requests */
+  private boolean deleteSavedRequests(Collection<Integer> imposterPorts) {
+    if (imposterPorts.isEmpty()) {
+      return true;
+    }
+    if (!savedRequestsDeletable) {
+      return false;
+    }
+
+    final boolean deleted =
+        isSuccessful(
+            imposterPorts
+                .stream()
+                .map(port -> send(imposterRequest(port, "/savedRequests").DELETE())));
+    // older mountebank versions lack the endpoint, fall back to importing from now on
+    savedRequestsDeletable = deleted;
+    return deleted;
+  }
+
+  private HttpRequest.Builder imposterRequest(int port, String path) {
+    return HttpRequest.newBuilder().uri(URI.create(getApiUrl() + "/imposters/" + port + path));
+  }
+
+  private CompletableFuture<HttpResponse<String>> send(HttpRequest.Builder request) {
+    return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  /** Waits for all responses, which are sent concurrently. */
+  private static boolean isSuccessful(Stream<CompletableFuture<HttpResponse<String>>> responses) {
+    return responses
+        .collect(Collectors.toList())
+        .stream()
+        .map(CompletableFuture::join)
+        .allMatch(response -> response.statusCode() >= 200 && response.statusCode() < 300);
+  }
+
+  /**
+   * Replacements applied to every output of {@link #saveImposters(Path, Path, Replacements)}, e.g.
+   * to rewrite upstream hosts or to mask credentials.
+   */
+  public Replacements getReplacements() {
+    return replacements;
+  }
+
+  public void setReplacements(Replacements replacements) {
+    this.replacements = replacements;
+  }
+
+  /** Latency applied to imposters on {@link #importImposters(Path) import}. */
+  public ReplayLatency getReplayLatency() {
+    return replayLatency;
+  }
+
+  public void setReplayLatency(ReplayLatency replayLatency) {
+    this.replayLatency = replayLatency;
+  }
+
+  /** Format of the replay outputs of {@link #saveImposters(Path, Path, Replacements)}. */
+  public ReplayFormat getReplayFormat() {
+    return replayFormat;
+  }
+
+  public void setReplayFormat(ReplayFormat replayFormat) {
+    this.replayFormat = replayFormat;
+  }
+
   public void saveImposters(Path impostersOutput, boolean forReplay) {
-    if (impostersOutput != null) {
-      final String query = forReplay ? "?removeProxies=true&replayabe=true" : "?removeProxies=true";
-      HttpRequest getRequest =
-          HttpRequest.newBuilder()
-              .uri(URI.create(getApiUrl() + "/imposters" + query))
-              .header("Accept", "application/json")
-              .GET()
-              .build();
-
-      client
-          .sendAsync(getRequest, HttpResponse.BodyHandlers.ofInputStream())
-          .thenApply(HttpResponse::body)
-          .thenApply(
-              body ->
-                  new ReplacingInputStream(
-                      body, "\"recordRequests\": false", "\"recordRequests\": true"))
-          .thenAccept(
-              body -> {
-                try (body) {
-                  Files.createDirectories(impostersOutput.getParent());
-                  Files.copy(body, impostersOutput, StandardCopyOption.REPLACE_EXISTING);
-                } catch (IOException e) {
-                  throw new RuntimeException(
-                      "failed to write imposters output to " + impostersOutput, e);
+    saveImposters(impostersOutput, forReplay, Replacements.none());
+  }
+
+  /**
+   * @param replacements applied in addition to (and taking precedence over) {@link
+   *     #getReplacements()}
+   */
+  public void saveImposters(Path impostersOutput, boolean forReplay, Replacements replacements) {
+    if (forReplay) {
+      saveImposters(impostersOutput, null, replacements);
+    } else {
+      saveImposters(null, impostersOutput, replacements);
+    }
+  }
+
+  /**
+   * Saves the imposters to both outputs from a single export.
+   *
+   * @param replayOutput receives the imposters without recorded requests in the {@link
+   *     #getReplayFormat() replay format}, may be null
+   * @param recordOutput receives the imposters including recorded requests, may be null
+   * @param replacements applied in addition to (and taking precedence over) {@link
+   *     #getReplacements()}
+   */
+  public void saveImposters(Path replayOutput, Path recordOutput, Replacements replacements) {
+    if (replayOutput == null && recordOutput == null) {
+      return;
+    }
+    ProxyEvents.begin(ProxyOperation.Type.SAVE, this)
+        .withPaths(replayOutput, recordOutput)
+        .run(() -> exportImposters(replayOutput, recordOutput, replacements));
+  }
+
+  /**
+   * Like {@link #saveImposters(Path, Path, Replacements)}, but on the {@link
+   * #setAdminExecutor(Executor) executor}.
+   */
+  public CompletableFuture<Void> saveImpostersAsync(
+      Path replayOutput, Path recordOutput, Replacements replacements) {
+    return AdminClient.supplyAsync(
+        () -> {
+          saveImposters(replayOutput, recordOutput, replacements);
+          return null;
+        });
+  }
+
+  private void exportImposters(Path replayOutput, Path recordOutput, Replacements replacements) {
+    final Replacements allReplacements =
+        RECORD_REQUESTS.with(this.replacements).with(replacements);
+    // the replayable variant is derived locally, so that one export serves both outputs
+    HttpRequest getRequest =
+        HttpRequest.newBuilder()
+            .uri(URI.create(getApiUrl() + "/imposters?removeProxies=true"))
+            .header("Accept", "application/json")
+            .GET()
+            .build();
+
+    client
+        .sendAsync(getRequest, HttpResponse.BodyHandlers.ofInputStream())
+        .thenApply(HttpResponse::body)
+        .thenApply(body -> new MultiReplacingInputStream(body, allReplacements))
+        .thenAccept(
+            body -> {
+              try (body) {
+                if (replayOutput == null) {
+                  ImposterFiles.write(body, recordOutput);
+                } else {
+                  writeReplayable(body, replayOutput, recordOutput);
                 }
-              })
-          .join();
+              } catch (IOException e) {
+                throw new RuntimeException(
+                    "failed to write imposters output to "
+                        + (replayOutput == null ? recordOutput : replayOutput),
+                    e);
+              }
+            })
+        .join();
+  }
+
+  /**
+   * @return the requests which the imposters received since they were imported or their recorded
+   *     requests were cleared
+   */
+  public RequestStats getRequestStats() {
+    // without any option mountebank merely lists the imposters, without their requests
+    HttpRequest getRequest =
+        HttpRequest.newBuilder()
+            .uri(URI.create(getApiUrl() + "/imposters?removeProxies=true"))
+            .header("Accept", "application/json")
+            .GET()
+            .build();
+
+    return client
+        .sendAsync(getRequest, HttpResponse.BodyHandlers.ofInputStream())
+        .thenApply(
+            response -> {
+              try (InputStream body = response.body()) {
+                assertTrue(
+                    response.statusCode() >= 200 && response.statusCode() < 300,
+                    "failed to get imposters: " + response.statusCode());
+                return RequestStats.read(body);
+              } catch (IOException e) {
+                throw new UncheckedIOException("failed to read imposters", e);
+              }
+            })
+        .join();
+  }
+
+  /** Like {@link #getRequestStats()}, but on the {@link #setAdminExecutor(Executor) executor}. */
+  public CompletableFuture<RequestStats> getRequestStatsAsync() {
+    return AdminClient.supplyAsync(this::getRequestStats);
+  }
+
+  /**
+   * Sets the executor of the asynchronous operations of all proxies, which block it while they
+   * wait for mountebank. By default each operation runs on a virtual thread if the runtime has
+   * them, and on a pooled daemon thread otherwise. Operations of different proxies may run
+   * concurrently, those of the same proxy must not overlap. The shards of a {@link
+   * ShardedMountebankProxy} always run on the default, so that its operations may wait for them on
+   * a bounded executor.
+   *
+   * @param executor null restores the default
+   */
+  public static void setAdminExecutor(Executor executor) {
+    AdminClient.setExecutor(executor);
+  }
+
+  private void writeReplayable(InputStream export, Path replayOutput, Path recordOutput)
+      throws IOException {
+    try (ImposterFiles.AtomicFile replay = ImposterFiles.AtomicFile.create(replayOutput);
+        ImposterFiles.AtomicFile record =
+            recordOutput == null ? null : ImposterFiles.AtomicFile.create(recordOutput)) {
+      ReplayableImposters.write(
+          export, replay.getOutput(), record == null ? null : record.getOutput(), replayFormat);
+      replay.commit();
+      if (record != null) {
+        record.commit();
+      }
     }
   }
 
@@ -100,4 +559,26 @@ public abstract class MountebankProxy {
   public abstract String getImposterAuthority(int imposterPort) throws IllegalArgumentException;
 
   public abstract Collection<Integer> getImposterPorts();
+
+  /** What is known about an imposter after importing it. */
+  private static final class ImportedImposter {
+
+    private final String header;
+    private final String stubsDigest;
+
+    private ImportedImposter(String header, String stubsDigest) {
+      this.header = header;
+      this.stubsDigest = stubsDigest;
+    }
+
+    static Map<Integer, ImportedImposter> of(ImposterSet imposters) {
+      final Map<Integer, ImportedImposter> importedImposters = new HashMap<>();
+      for (ImposterSet.Imposter imposter : imposters.getImposters()) {
+        importedImposters.put(
+            imposter.getPort(),
+            new ImportedImposter(imposter.getHeader(), imposter.getStubsDigest()));
+      }
+      return importedImposters;
+    }
+  }
 }
@@ -0,0 +1,143 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe pool of proxies which concurrently running tests lease exclusively. Proxies are
+ * created on demand up to {@code maxSize}; beyond that {@link #lease()} blocks until a proxy is
+ * released. Every {@link ContainerMountebankProxy} runs its own container, even with container
+ * reuse enabled, so each lease maps the imposter ports to distinct host ports.
+ */
+public class MountebankProxyPool implements AutoCloseable {
+
+  private final Supplier<? extends MountebankProxy> factory;
+  private final int maxSize;
+
+  private final Deque<MountebankProxy> idle = new ArrayDeque<>();
+  private final List<MountebankProxy> all = new ArrayList<>();
+
+  private boolean closed;
+
+  public MountebankProxyPool(Supplier<? extends MountebankProxy> factory, int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be positive, but is " + maxSize);
+    }
+    this.factory = factory;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return a proxy exclusively owned by the caller until it is {@link #release(MountebankProxy)
+   *     released}; it is not necessarily started yet
+   */
+  public MountebankProxy lease() throws InterruptedException {
+    synchronized (this) {
+      while (true) {
+        if (closed) {
+          throw new IllegalStateException("pool is closed");
+        }
+        if (!idle.isEmpty()) {
+          // most recently used first, it is the one most likely to be warm
+          return idle.pop();
+        }
+        if (all.size() < maxSize) {
+          break;
+        }
+        wait();
+      }
+      // reserve the slot, the proxy itself is created outside the lock
+      all.add(null);
+    }
+
+    MountebankProxy proxy = null;
+    try {
+      proxy = factory.get();
+      return proxy;
+    } finally {
+      synchronized (this) {
+        all.remove(null);
+        if (proxy != null) {
+          all.add(proxy);
+        }
+        notifyAll();
+      }
+    }
+  }
+
+  public void release(MountebankProxy proxy) {
+    synchronized (this) {
+      if (!all.contains(proxy) || idle.contains(proxy)) {
+        throw new IllegalArgumentException("proxy is not leased from this pool");
+      }
+      if (!closed) {
+        idle.push(proxy);
+        notifyAll();
+        return;
+      }
+    }
+    stop(proxy);
+  }
+
+  /** Removes a leased proxy whose state is unknown (e.g. after a failed reset) and stops it. */
+  public void discard(MountebankProxy proxy) {
+    synchronized (this) {
+      if (!all.remove(proxy)) {
+        throw new IllegalArgumentException("proxy is not leased from this pool");
+      }
+      idle.remove(proxy);
+      notifyAll();
+    }
+    stop(proxy);
+  }
+
+  public synchronized int size() {
+    return all.size();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /** Stops all idle proxies; leased ones are stopped as soon as they are released. */
+  @Override
+  public void close() {
+    final List<MountebankProxy> stopped;
+    synchronized (this) {
+      closed = true;
+      stopped = new ArrayList<>(idle);
+      idle.clear();
+      notifyAll();
+    }
+    stopped.forEach(MountebankProxyPool::stop);
+  }
+
+  private static void stop(MountebankProxy proxy) {
+    if (proxy.isRunning()) {
+      ProxyEvents.stop(proxy);
+    }
+  }
+}
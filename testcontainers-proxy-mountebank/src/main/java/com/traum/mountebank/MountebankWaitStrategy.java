@@ -0,0 +1,96 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.testcontainers.containers.ContainerLaunchException;
+import org.testcontainers.containers.wait.strategy.AbstractWaitStrategy;
+
+/**
+ * Waits until the admin API of mountebank answers {@code GET /imposters}. Unlike waiting for a log
+ * message it neither depends on log streaming nor on the log level. The API is polled with a short
+ * delay which doubles up to {@link #MAX_DELAY}, since mountebank is usually ready within a second.
+ */
+public class MountebankWaitStrategy extends AbstractWaitStrategy {
+
+  static final Duration INITIAL_DELAY = Duration.ofMillis(10);
+  static final Duration MAX_DELAY = Duration.ofMillis(250);
+
+  private final HttpClient client =
+      HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+  @Override
+  protected void waitUntilReady() {
+    final URI uri =
+        URI.create(
+            "http://"
+                + waitStrategyTarget.getContainerIpAddress()
+                + ":"
+                + waitStrategyTarget.getMappedPort(MountebankContainer.MOUNTEBANK_API_PORT)
+                + "/imposters");
+    waitUntilReady(uri, startupTimeout, waitStrategyTarget::isRunning);
+  }
+
+  void waitUntilReady(URI uri, Duration timeout, BooleanSupplier running) {
+    final HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(1)).build();
+    final long deadline = System.nanoTime() + timeout.toNanos();
+    long delay = INITIAL_DELAY.toMillis();
+    String lastFailure = "no response";
+    while (true) {
+      try {
+        final int statusCode =
+            client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (statusCode == 200) {
+          return;
+        }
+        lastFailure = "status code " + statusCode;
+      } catch (IOException e) {
+        lastFailure = e.toString();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ContainerLaunchException("Interrupted while waiting for " + uri, e);
+      }
+
+      if (!running.getAsBoolean()) {
+        throw new ContainerLaunchException(
+            "Container stopped before " + uri + " was available (" + lastFailure + ")");
+      }
+      if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) - deadline > 0) {
+        throw new ContainerLaunchException(
+            "Timed out after " + timeout + " waiting for " + uri + " (" + lastFailure + ")");
+      }
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ContainerLaunchException("Interrupted while waiting for " + uri, e);
+      }
+      delay = Math.min(delay * 2, MAX_DELAY.toMillis());
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Times {@link ProxyOperation proxy operations} for {@link ProxyLifecycleListener listeners} and
+ * JDK Flight Recorder. Unless a listener is registered or a recording enables {@link
+ * ProxyOperationEvent}, operations run without being timed.
+ */
+final class ProxyEvents {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProxyEvents.class);
+
+  private static final List<ProxyLifecycleListener> LISTENERS = loadListeners();
+
+  private static final Recording DISABLED = new Recording(null, null, null);
+
+  private ProxyEvents() {}
+
+  static Recording begin(ProxyOperation.Type type, MountebankProxy proxy) {
+    final ProxyOperationEvent event = new ProxyOperationEvent();
+    if (!event.isEnabled()) {
+      if (LISTENERS.isEmpty()) {
+        return DISABLED;
+      }
+      return new Recording(type, proxy, null);
+    }
+    event.begin();
+    return new Recording(type, proxy, event);
+  }
+
+  static void start(MountebankProxy proxy) {
+    begin(ProxyOperation.Type.START, proxy).run(proxy::start);
+  }
+
+  static void stop(MountebankProxy proxy) {
+    begin(ProxyOperation.Type.STOP, proxy).run(proxy::stop);
+  }
+
+  static void addListener(ProxyLifecycleListener listener) {
+    LISTENERS.add(listener);
+  }
+
+  static void removeListener(ProxyLifecycleListener listener) {
+    LISTENERS.remove(listener);
+  }
+
+  private static List<ProxyLifecycleListener> loadListeners() {
+    final List<ProxyLifecycleListener> listeners = new CopyOnWriteArrayList<>();
+    try {
+      ServiceLoader.load(ProxyLifecycleListener.class).forEach(listeners::add);
+    } catch (ServiceConfigurationError e) {
+      LOGGER.warn("Failed to load proxy lifecycle listeners", e);
+    }
+    return listeners;
+  }
+
+  /** An operation in progress. */
+  static final class Recording {
+
+    private final ProxyOperation.Type type;
+    private final ProxyOperationEvent event;
+    private final long startedAt;
+
+    private MountebankProxy proxy;
+    private String test;
+    private List<Path> paths = Collections.emptyList();
+
+    private Recording(ProxyOperation.Type type, MountebankProxy proxy, ProxyOperationEvent event) {
+      this.type = type;
+      this.proxy = proxy;
+      this.event = event;
+      this.startedAt = type == null ? 0 : System.nanoTime();
+    }
+
+    Recording withProxy(MountebankProxy proxy) {
+      if (this != DISABLED) {
+        this.proxy = proxy;
+      }
+      return this;
+    }
+
+    Recording withTest(String test) {
+      if (this != DISABLED) {
+        this.test = test;
+      }
+      return this;
+    }
+
+    /** @param paths files whose total size is reported once the operation ends, may be null */
+    Recording withPaths(Path... paths) {
+      if (this != DISABLED) {
+        this.paths =
+            Stream.of(paths).filter(Objects::nonNull).collect(Collectors.toUnmodifiableList());
+      }
+      return this;
+    }
+
+    <E extends Exception> void run(Action<E> action) throws E {
+      if (this == DISABLED) {
+        action.run();
+        return;
+      }
+      Throwable failure = null;
+      try {
+        action.run();
+      } catch (Throwable e) {
+        failure = e;
+        throw e;
+      } finally {
+        end(failure);
+      }
+    }
+
+    private void end(Throwable failure) {
+      final Duration duration = Duration.ofNanos(System.nanoTime() - startedAt);
+      final long bytes = paths.stream().mapToLong(Recording::size).sum();
+
+      if (event != null) {
+        event.end();
+        if (event.shouldCommit()) {
+          event.operation = type.name();
+          event.proxy = proxy == null ? null : proxy.getClass();
+          event.test = test;
+          event.paths = paths.isEmpty() ? null : paths.toString();
+          event.bytes = bytes;
+          event.failure = failure == null ? null : failure.toString();
+          event.commit();
+        }
+      }
+
+      if (LISTENERS.isEmpty()) {
+        return;
+      }
+      final ProxyOperation operation =
+          new ProxyOperation(type, proxy, test, paths, bytes, duration, failure);
+      for (ProxyLifecycleListener listener : LISTENERS) {
+        try {
+          listener.operationFinished(operation);
+        } catch (RuntimeException e) {
+          LOGGER.warn("Proxy lifecycle listener {} failed", listener, e);
+        }
+      }
+    }
+
+    private static long size(Path path) {
+      try {
+        return Files.size(path);
+      } catch (IOException e) {
+        return 0;
+      }
+    }
+  }
+
+  @FunctionalInterface
+  interface Action<E extends Exception> {
+
+    void run() throws E;
+  }
+}
@@ -0,0 +1,35 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Receives the timings of proxy operations, e.g. to export them as metrics. Implementations are
+ * found via {@code META-INF/services/com.traum.mountebank.ProxyLifecycleListener}; without any,
+ * operations aren't timed at all.
+ */
+public interface ProxyLifecycleListener {
+
+  /**
+   * Called on the thread which performed the operation once it finished, successfully or not. Must
+   * not block; exceptions are logged and otherwise ignored.
+   */
+  void operationFinished(ProxyOperation operation);
+}
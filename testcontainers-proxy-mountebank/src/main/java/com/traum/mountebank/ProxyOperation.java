@@ -0,0 +1,111 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/** A finished operation on a proxy, see {@link ProxyLifecycleListener}. */
+public final class ProxyOperation {
+
+  public enum Type {
+    /** {@link MountebankExtension} preparing the proxy of a test, including start and import. */
+    BEFORE_EACH,
+    /** {@link MountebankExtension} saving the imposters of a test or scheduling the save. */
+    AFTER_EACH,
+    START,
+    IMPORT,
+    SAVE,
+    STOP
+  }
+
+  private final Type type;
+  private final MountebankProxy proxy;
+  private final String test;
+  private final List<Path> paths;
+  private final long bytes;
+  private final Duration duration;
+  private final Throwable failure;
+
+  ProxyOperation(
+      Type type,
+      MountebankProxy proxy,
+      String test,
+      List<Path> paths,
+      long bytes,
+      Duration duration,
+      Throwable failure) {
+    this.type = type;
+    this.proxy = proxy;
+    this.test = test;
+    this.paths = paths;
+    this.bytes = bytes;
+    this.duration = duration;
+    this.failure = failure;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /** @return the proxy, empty if the operation failed before a proxy was leased */
+  public Optional<MountebankProxy> getProxy() {
+    return Optional.ofNullable(proxy);
+  }
+
+  /** @return the unique id of the test for {@link Type#BEFORE_EACH} and {@link Type#AFTER_EACH} */
+  public Optional<String> getTest() {
+    return Optional.ofNullable(test);
+  }
+
+  /** @return the imposter files imported or saved */
+  public List<Path> getPaths() {
+    return paths;
+  }
+
+  /** @return the total size of {@link #getPaths()} after the operation */
+  public long getBytes() {
+    return bytes;
+  }
+
+  public Duration getDuration() {
+    return duration;
+  }
+
+  public Optional<Throwable> getFailure() {
+    return Optional.ofNullable(failure);
+  }
+
+  @Override
+  public String toString() {
+    return type
+        + (test == null ? "" : " " + test)
+        + (paths.isEmpty() ? "" : " " + paths)
+        + " "
+        + bytes
+        + " bytes in "
+        + duration.toMillis()
+        + " ms"
+        + (failure == null ? "" : " failed: " + failure);
+  }
+}
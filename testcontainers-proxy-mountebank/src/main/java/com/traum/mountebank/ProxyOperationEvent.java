@@ -0,0 +1,56 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JDK Flight Recorder event of a {@link ProxyOperation}. */
+@Name("com.traum.mountebank.ProxyOperation")
+@Label("Proxy Operation")
+@Description("Starting, stopping, importing to or saving from a mountebank proxy")
+@Category({"Testcontainers Proxy"})
+@StackTrace(false)
+class ProxyOperationEvent extends jdk.jfr.Event {
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Proxy")
+  Class<?> proxy;
+
+  @Label("Test")
+  String test;
+
+  @Label("Paths")
+  String paths;
+
+  @Label("Bytes")
+  @DataAmount
+  long bytes;
+
+  @Label("Failure")
+  String failure;
+}
@@ -0,0 +1,88 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The proxy {@link ProxyPrestartListener} starts in the background. Kept apart from the listener,
+ * so that {@link MountebankExtension} doesn't depend on the JUnit launcher.
+ */
+class ProxyPrestart {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProxyPrestart.class);
+
+  private static final AtomicReference<CompletableFuture<MountebankProxy>> PRESTARTED =
+      new AtomicReference<>();
+
+  private ProxyPrestart() {}
+
+  /** Creates and starts a proxy on a daemon thread, unless one is prestarted already. */
+  static void start(MountebankExtension.MountebankProxyFactory factory) {
+    final CompletableFuture<MountebankProxy> future = new CompletableFuture<>();
+    if (!PRESTARTED.compareAndSet(null, future)) {
+      return;
+    }
+    final Thread thread =
+        new Thread(
+            () -> {
+              try {
+                final MountebankProxy proxy = factory.create();
+                ProxyEvents.start(proxy);
+                future.complete(proxy);
+              } catch (Throwable e) {
+                future.completeExceptionally(e);
+              }
+            },
+            "mountebank-prestart");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Hands the prestarted proxy over to the caller, waiting for it to start if necessary.
+   *
+   * @return empty if no proxy was prestarted, it is claimed already or failed to start
+   */
+  static Optional<MountebankProxy> claim() {
+    return Optional.ofNullable(PRESTARTED.getAndSet(null)).flatMap(ProxyPrestart::await);
+  }
+
+  /** Stops the prestarted proxy if nobody claimed it. */
+  static void stop() {
+    claim().filter(MountebankProxy::isRunning).ifPresent(ProxyEvents::stop);
+  }
+
+  private static Optional<MountebankProxy> await(CompletableFuture<MountebankProxy> future) {
+    try {
+      return Optional.of(future.join());
+    } catch (CompletionException e) {
+      // the caller creates a proxy of its own, which most likely fails the same way
+      LOGGER.warn("Prestarting a proxy failed", e.getCause());
+      return Optional.empty();
+    }
+  }
+}
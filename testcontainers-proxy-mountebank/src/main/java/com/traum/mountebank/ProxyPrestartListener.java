@@ -0,0 +1,53 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestPlan;
+
+/**
+ * Starts a proxy in the background as soon as the test plan executes, if the system property
+ * {@value #PRESTART_PROPERTY} is {@code true}. The test plan is discovered completely by then, so
+ * starting the container overlaps with the initialization of test classes and the tests which run
+ * before the first proxy is needed; {@link MountebankExtension} waits for it only when the first
+ * test actually needs a proxy. A prestarted proxy nobody claimed is stopped with the test plan.
+ *
+ * <p>Registered via {@code META-INF/services/org.junit.platform.launcher.TestExecutionListener}.
+ */
+public class ProxyPrestartListener implements TestExecutionListener {
+
+  public static final String PRESTART_PROPERTY = "mountebank.proxy.prestart";
+
+  @Override
+  public void testPlanExecutionStarted(TestPlan testPlan) {
+    // external proxies run already, there is nothing to overlap
+    if (Boolean.getBoolean(PRESTART_PROPERTY)
+        && !System.getProperties()
+            .containsKey(MountebankExtension.EXTERNAL_PROXY_API_URL_PROPERTY)) {
+      ProxyPrestart.start(new MountebankExtension.MountebankProxyFactory() {});
+    }
+  }
+
+  @Override
+  public void testPlanExecutionFinished(TestPlan testPlan) {
+    ProxyPrestart.stop();
+  }
+}
@@ -0,0 +1,134 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Immutable format of the replay outputs of {@link MountebankProxy#saveImposters(Path, Path,
+ * com.traum.io.Replacements)}. Volatile headers of recorded responses (e.g. {@code Date}) can be
+ * dropped and the remaining ones sorted, so that recording unchanged upstream responses again
+ * yields the same file. Minified files are considerably smaller than mountebank's pretty-printed
+ * exports. The format is applied while streaming, only header maps are held in memory.
+ */
+public final class ReplayFormat {
+
+  private static final ReplayFormat DEFAULTS =
+      new ReplayFormat(Collections.emptyList(), false, false);
+
+  private final List<String> droppedHeaders;
+  private final boolean sortedHeaders;
+  private final boolean minified;
+
+  private ReplayFormat(List<String> droppedHeaders, boolean sortedHeaders, boolean minified) {
+    this.droppedHeaders = droppedHeaders;
+    this.sortedHeaders = sortedHeaders;
+    this.minified = minified;
+  }
+
+  /** @return the format of mountebank: pretty-printed, with all headers in recorded order */
+  public static ReplayFormat defaults() {
+    return DEFAULTS;
+  }
+
+  /**
+   * @param names of response headers to drop, case-insensitive; a trailing {@code *} matches all
+   *     headers starting with the name, e.g. {@code X-RateLimit-*}
+   */
+  public ReplayFormat withoutHeaders(String... names) {
+    final List<String> droppedHeaders = new ArrayList<>(this.droppedHeaders);
+    for (String name : names) {
+      final String trimmed = name.trim();
+      if (trimmed.isEmpty() || trimmed.equals("*")) {
+        throw new IllegalArgumentException("header name must not be empty, but is '" + name + "'");
+      }
+      droppedHeaders.add(trimmed.toLowerCase(Locale.ROOT));
+    }
+    return new ReplayFormat(Collections.unmodifiableList(droppedHeaders), sortedHeaders, minified);
+  }
+
+  /** @param sortedHeaders whether response headers are sorted by their name, ignoring case */
+  public ReplayFormat withSortedHeaders(boolean sortedHeaders) {
+    return new ReplayFormat(droppedHeaders, sortedHeaders, minified);
+  }
+
+  /** @param minified whether the output lacks any whitespace between tokens */
+  public ReplayFormat withMinified(boolean minified) {
+    return new ReplayFormat(droppedHeaders, sortedHeaders, minified);
+  }
+
+  public boolean isDroppedHeader(String name) {
+    final String lowerCaseName = name.toLowerCase(Locale.ROOT);
+    for (String droppedHeader : droppedHeaders) {
+      if (droppedHeader.endsWith("*")
+          ? lowerCaseName.startsWith(droppedHeader.substring(0, droppedHeader.length() - 1))
+          : lowerCaseName.equals(droppedHeader)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean isSortedHeaders() {
+    return sortedHeaders;
+  }
+
+  public boolean isMinified() {
+    return minified;
+  }
+
+  /** @return whether response headers are rewritten at all */
+  boolean isFilteringHeaders() {
+    return sortedHeaders || !droppedHeaders.isEmpty();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof ReplayFormat)) {
+      return false;
+    }
+    final ReplayFormat other = (ReplayFormat) o;
+    return droppedHeaders.equals(other.droppedHeaders)
+        && sortedHeaders == other.sortedHeaders
+        && minified == other.minified;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(droppedHeaders, sortedHeaders, minified);
+  }
+
+  @Override
+  public String toString() {
+    return "ReplayFormat{droppedHeaders="
+        + droppedHeaders
+        + ", sortedHeaders="
+        + sortedHeaders
+        + ", minified="
+        + minified
+        + "}";
+  }
+}
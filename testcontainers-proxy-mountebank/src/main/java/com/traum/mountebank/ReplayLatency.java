@@ -0,0 +1,132 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Immutable setting of how long replayed responses take, applied by {@link
+ * MountebankProxy#importImposters(Path)}. Mountebank proxies with {@code addWaitBehavior} record
+ * how long the upstream took to respond as {@code wait} behavior of the generated responses;
+ * replaying them waits as long. Recorded waits can be turned off, scaled and randomly varied, so
+ * that timeouts, pool sizes and retries are exercised against realistic latency offline.
+ */
+public final class ReplayLatency {
+
+  private enum Mode {
+    UNCHANGED,
+    OFF,
+    RECORDED
+  }
+
+  private static final ReplayLatency UNCHANGED = new ReplayLatency(Mode.UNCHANGED, 1, 0);
+  private static final ReplayLatency OFF = new ReplayLatency(Mode.OFF, 1, 0);
+  private static final ReplayLatency RECORDED = new ReplayLatency(Mode.RECORDED, 1, 0);
+
+  private final Mode mode;
+  private final double factor;
+  private final double jitter;
+
+  private ReplayLatency(Mode mode, double factor, double jitter) {
+    this.mode = mode;
+    this.factor = factor;
+    this.jitter = jitter;
+  }
+
+  /** @return imposters are imported as they are */
+  public static ReplayLatency unchanged() {
+    return UNCHANGED;
+  }
+
+  /** @return recorded responses are replayed without waiting */
+  public static ReplayLatency off() {
+    return OFF;
+  }
+
+  /**
+   * @return proxies record the latency of the upstream and recorded responses wait as long as the
+   *     upstream took when they were recorded
+   */
+  public static ReplayLatency recorded() {
+    return RECORDED;
+  }
+
+  /** @param factor multiplies recorded waits, e.g. 0.5 to halve them */
+  public ReplayLatency withFactor(double factor) {
+    if (!(factor >= 0) || Double.isInfinite(factor)) {
+      throw new IllegalArgumentException("factor must not be negative, but is " + factor);
+    }
+    return new ReplayLatency(Mode.RECORDED, factor, jitter);
+  }
+
+  /**
+   * @param jitter varies each recorded wait randomly by up to this fraction, e.g. 0.2 for ±20%;
+   *     the variation is the same whenever the same file is imported
+   */
+  public ReplayLatency withJitter(double jitter) {
+    if (!(jitter >= 0 && jitter <= 1)) {
+      throw new IllegalArgumentException("jitter must be between 0 and 1, but is " + jitter);
+    }
+    return new ReplayLatency(Mode.RECORDED, factor, jitter);
+  }
+
+  public boolean isUnchanged() {
+    return mode == Mode.UNCHANGED;
+  }
+
+  public boolean isOff() {
+    return mode == Mode.OFF;
+  }
+
+  public boolean isRecorded() {
+    return mode == Mode.RECORDED;
+  }
+
+  public double getFactor() {
+    return factor;
+  }
+
+  public double getJitter() {
+    return jitter;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof ReplayLatency)) {
+      return false;
+    }
+    final ReplayLatency other = (ReplayLatency) o;
+    return mode == other.mode
+        && Double.compare(factor, other.factor) == 0
+        && Double.compare(jitter, other.jitter) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(mode, factor, jitter);
+  }
+
+  @Override
+  public String toString() {
+    return "ReplayLatency{mode=" + mode + ", factor=" + factor + ", jitter=" + jitter + "}";
+  }
+}
@@ -0,0 +1,258 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.json.JsonReader;
+import com.traum.json.JsonWriter;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Derives the replayable variant of an imposters export in a single pass, like mountebank's {@code
+ * replayable} option does: recorded requests, request counts, matches and links are dropped. The
+ * export itself can be passed through unchanged at the same time, so that one export serves both
+ * replay and record outputs. The replayable variant is written in a {@link ReplayFormat}.
+ */
+final class ReplayableImposters {
+
+  private static final Set<String> IMPOSTER_FIELDS =
+      Set.of("requests", "numberOfRequests", "_links");
+  private static final Set<String> STUB_FIELDS = Set.of("matches", "_links");
+
+  /** Same as the {@code json spaces} setting of mountebank's API. */
+  static final String INDENT = "  ";
+
+  private final ReplayFormat format;
+
+  private ReplayableImposters(ReplayFormat format) {
+    this.format = format;
+  }
+
+  /**
+   * @param export consumed up to its end, but not closed
+   * @param replay receives the replayable variant
+   * @param record receives the export as is, may be null
+   */
+  static void write(
+      InputStream export, OutputStream replay, OutputStream record, ReplayFormat format)
+      throws IOException {
+    final InputStream input = record == null ? export : new TeeInputStream(export, record);
+    final JsonReader reader = new JsonReader(input);
+    final JsonWriter writer =
+        new JsonWriter(
+                new BufferedWriter(new OutputStreamWriter(replay, StandardCharsets.UTF_8)))
+            .setIndent(format.isMinified() ? "" : INDENT);
+
+    copyObject(reader, writer, new ReplayableImposters(format)::copyImposters);
+    writer.flush();
+    // the record output also gets whatever follows the document
+    input.transferTo(OutputStream.nullOutputStream());
+  }
+
+  private void copyImposters(String name, JsonReader reader, JsonWriter writer)
+      throws IOException {
+    if (!"imposters".equals(name)) {
+      writer.name(name).copyValue(reader);
+      return;
+    }
+    writer.name(name);
+    copyArray(
+        reader,
+        writer,
+        (imposterReader, imposterWriter) ->
+            copyObject(imposterReader, imposterWriter, this::copyImposterField));
+  }
+
+  private void copyImposterField(String name, JsonReader reader, JsonWriter writer)
+      throws IOException {
+    if (IMPOSTER_FIELDS.contains(name)) {
+      reader.skipValue();
+    } else if ("stubs".equals(name)) {
+      writer.name(name);
+      copyArray(
+          reader,
+          writer,
+          (stubReader, stubWriter) ->
+              copyObject(stubReader, stubWriter, this::copyStubField));
+    } else {
+      writer.name(name).copyValue(reader);
+    }
+  }
+
+  private void copyStubField(String name, JsonReader reader, JsonWriter writer)
+      throws IOException {
+    if (STUB_FIELDS.contains(name)) {
+      reader.skipValue();
+    } else if ("responses".equals(name) && format.isFilteringHeaders()) {
+      writer.name(name);
+      copyArray(
+          reader,
+          writer,
+          (responseReader, responseWriter) ->
+              copyObject(responseReader, responseWriter, this::copyResponseField));
+    } else {
+      writer.name(name).copyValue(reader);
+    }
+  }
+
+  private void copyResponseField(String name, JsonReader reader, JsonWriter writer)
+      throws IOException {
+    writer.name(name);
+    if ("is".equals(name)) {
+      copyObject(reader, writer, this::copyIsField);
+    } else {
+      writer.copyValue(reader);
+    }
+  }
+
+  private void copyIsField(String name, JsonReader reader, JsonWriter writer) throws IOException {
+    writer.name(name);
+    if ("headers".equals(name) && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+      copyHeaders(reader, writer);
+    } else {
+      writer.copyValue(reader);
+    }
+  }
+
+  /** Sorting buffers the headers of a single response, each value in its compact form. */
+  private void copyHeaders(JsonReader reader, JsonWriter writer) throws IOException {
+    final Map<String, String> sorted =
+        format.isSortedHeaders()
+            ? new TreeMap<>(
+                Comparator.comparing((String name) -> name, String.CASE_INSENSITIVE_ORDER)
+                    .thenComparing(Comparator.naturalOrder()))
+            : null;
+    reader.beginObject();
+    writer.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if (format.isDroppedHeader(name)) {
+        reader.skipValue();
+      } else if (sorted == null) {
+        writer.name(name).copyValue(reader);
+      } else {
+        final StringWriter value = new StringWriter();
+        new JsonWriter(value).copyValue(reader).flush();
+        sorted.put(name, value.toString());
+      }
+    }
+    reader.endObject();
+    if (sorted != null) {
+      for (Map.Entry<String, String> header : sorted.entrySet()) {
+        writer.name(header.getKey()).copyValue(new JsonReader(new StringReader(header.getValue())));
+      }
+    }
+    writer.endObject();
+  }
+
+  /** Copies an object field by field, or any other value as is. */
+  static void copyObject(JsonReader reader, JsonWriter writer, FieldCopier fieldCopier)
+      throws IOException {
+    if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+      writer.copyValue(reader);
+      return;
+    }
+    reader.beginObject();
+    writer.beginObject();
+    while (reader.hasNext()) {
+      fieldCopier.copy(reader.nextName(), reader, writer);
+    }
+    reader.endObject();
+    writer.endObject();
+  }
+
+  /** Copies an array element by element, or any other value as is. */
+  static void copyArray(JsonReader reader, JsonWriter writer, ValueCopier elementCopier)
+      throws IOException {
+    if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+      writer.copyValue(reader);
+      return;
+    }
+    reader.beginArray();
+    writer.beginArray();
+    while (reader.hasNext()) {
+      elementCopier.copy(reader, writer);
+    }
+    reader.endArray();
+    writer.endArray();
+  }
+
+  interface FieldCopier {
+
+    void copy(String name, JsonReader reader, JsonWriter writer) throws IOException;
+  }
+
+  interface ValueCopier {
+
+    void copy(JsonReader reader, JsonWriter writer) throws IOException;
+  }
+
+  /** Writes everything read from the input to an output. */
+  private static final class TeeInputStream extends FilterInputStream {
+
+    private final OutputStream output;
+
+    TeeInputStream(InputStream input, OutputStream output) {
+      super(input);
+      this.output = output;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int b = super.read();
+      if (b != -1) {
+        output.write(b);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      final int read = super.read(buffer, offset, length);
+      if (read > 0) {
+        output.write(buffer, offset, read);
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      final int read = read(new byte[(int) Math.max(0, Math.min(n, 8192))]);
+      return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
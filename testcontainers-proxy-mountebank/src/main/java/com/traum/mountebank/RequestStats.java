@@ -0,0 +1,226 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.json.JsonReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Requests which the imposters of a proxy received, by imposter and endpoint. Endpoints are only
+ * known for recorded requests, i.e. of imposters with {@code recordRequests} or proxies.
+ */
+public final class RequestStats {
+
+  private final List<Imposter> imposters;
+
+  private RequestStats(List<Imposter> imposters) {
+    this.imposters = Collections.unmodifiableList(imposters);
+  }
+
+  /**
+   * Streams an export of imposters including their requests, only method and path of each request
+   * are kept.
+   */
+  public static RequestStats read(InputStream export) throws IOException {
+    final List<Imposter> imposters = new ArrayList<>();
+    final JsonReader reader = new JsonReader(export);
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (!"imposters".equals(reader.nextName())) {
+        reader.skipValue();
+        continue;
+      }
+      reader.beginArray();
+      while (reader.hasNext()) {
+        imposters.add(readImposter(reader));
+      }
+      reader.endArray();
+    }
+    reader.endObject();
+    imposters.sort(Comparator.comparingInt(Imposter::getPort));
+    return new RequestStats(imposters);
+  }
+
+  /** @return the requests of all stats, e.g. of proxies with distinct imposter ports */
+  static RequestStats merge(List<RequestStats> stats) {
+    final List<Imposter> imposters = new ArrayList<>();
+    stats.forEach(each -> imposters.addAll(each.imposters));
+    imposters.sort(Comparator.comparingInt(Imposter::getPort));
+    return new RequestStats(imposters);
+  }
+
+  /**
+   * @param earlier stats of the same proxy, e.g. taken when a shared proxy was leased to a test
+   * @return the requests received since; imposters with fewer requests than before were imported
+   *     again in the meantime and count all of their requests
+   */
+  public RequestStats since(RequestStats earlier) {
+    final Map<Integer, Imposter> earlierImposters = new HashMap<>();
+    earlier.imposters.forEach(imposter -> earlierImposters.put(imposter.port, imposter));
+    final List<Imposter> imposters = new ArrayList<>(this.imposters.size());
+    for (Imposter imposter : this.imposters) {
+      final Imposter before = earlierImposters.get(imposter.port);
+      imposters.add(
+          before == null
+                  || before.requests > imposter.requests
+                  || before.recordedRequests > imposter.recordedRequests
+              ? imposter
+              : imposter.minus(before));
+    }
+    return new RequestStats(imposters);
+  }
+
+  private static Imposter readImposter(JsonReader reader) throws IOException {
+    int port = 0;
+    int numberOfRequests = -1;
+    int recordedRequests = 0;
+    final Map<String, Integer> endpoints = new HashMap<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if (name.equals("port") && reader.peek() == JsonReader.Token.NUMBER) {
+        port = Integer.parseInt(reader.nextNumber());
+      } else if (name.equals("numberOfRequests") && reader.peek() == JsonReader.Token.NUMBER) {
+        numberOfRequests = Integer.parseInt(reader.nextNumber());
+      } else if (name.equals("requests") && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          endpoints.merge(readEndpoint(reader), 1, Integer::sum);
+          recordedRequests++;
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new Imposter(
+        port, Math.max(numberOfRequests, recordedRequests), recordedRequests, endpoints);
+  }
+
+  /** @return e.g. {@code GET /users} */
+  private static String readEndpoint(JsonReader reader) throws IOException {
+    if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+      reader.skipValue();
+      return "?";
+    }
+    String method = "?";
+    String path = "?";
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if (name.equals("method") && reader.peek() == JsonReader.Token.STRING) {
+        method = reader.nextString();
+      } else if (name.equals("path") && reader.peek() == JsonReader.Token.STRING) {
+        path = reader.nextString();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return method + " " + path;
+  }
+
+  /** @return imposters by ascending port */
+  public List<Imposter> getImposters() {
+    return imposters;
+  }
+
+  public int getRequests() {
+    return imposters.stream().mapToInt(Imposter::getRequests).sum();
+  }
+
+  @Override
+  public String toString() {
+    return getRequests() + " requests to " + imposters;
+  }
+
+  public static final class Imposter {
+
+    private final int port;
+    private final int requests;
+    private final int recordedRequests;
+    private final Map<String, Integer> endpoints;
+
+    private Imposter(
+        int port, int requests, int recordedRequests, Map<String, Integer> endpoints) {
+      this.port = port;
+      this.requests = requests;
+      this.recordedRequests = recordedRequests;
+      final Map<String, Integer> sorted = new LinkedHashMap<>();
+      endpoints
+          .entrySet()
+          .stream()
+          .sorted(
+              Map.Entry.<String, Integer>comparingByValue()
+                  .reversed()
+                  .thenComparing(Map.Entry.comparingByKey()))
+          .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+      this.endpoints = Collections.unmodifiableMap(sorted);
+    }
+
+    private Imposter minus(Imposter before) {
+      final Map<String, Integer> endpoints = new HashMap<>(this.endpoints);
+      before.endpoints.forEach(
+          (endpoint, count) ->
+              endpoints.computeIfPresent(
+                  endpoint, (key, current) -> current > count ? current - count : null));
+      return new Imposter(
+          port,
+          requests - before.requests,
+          recordedRequests - before.recordedRequests,
+          endpoints);
+    }
+
+    public int getPort() {
+      return port;
+    }
+
+    /** @return how many requests mountebank counted, including unrecorded ones */
+    public int getRequests() {
+      return requests;
+    }
+
+    public int getRecordedRequests() {
+      return recordedRequests;
+    }
+
+    /**
+     * @return recorded requests by method and path, e.g. {@code GET /users}, most frequent first
+     */
+    public Map<String, Integer> getEndpoints() {
+      return endpoints;
+    }
+
+    @Override
+    public String toString() {
+      return port + " " + requests + " " + endpoints;
+    }
+  }
+}
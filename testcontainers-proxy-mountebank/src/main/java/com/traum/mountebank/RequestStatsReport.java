@@ -0,0 +1,156 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.json.JsonWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.extension.ExtensionContext.Store;
+
+/**
+ * Collects the {@link RequestStats} of tests and writes them as JSON once the test run ends: per
+ * test class and per test, each sorted by descending number of requests, so that tests which are
+ * chatty towards third parties stand out.
+ */
+class RequestStatsReport implements Store.CloseableResource {
+
+  private final Path output;
+  private final List<Entry> entries = new ArrayList<>();
+
+  RequestStatsReport(Path output) {
+    this.output = output;
+  }
+
+  synchronized void add(String test, String className, String methodName, RequestStats stats) {
+    entries.add(new Entry(test, className, methodName, stats));
+  }
+
+  @Override
+  public void close() {
+    try {
+      write();
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to write request stats to " + output, e);
+    }
+  }
+
+  void write() throws IOException {
+    final List<Entry> tests;
+    synchronized (this) {
+      tests = new ArrayList<>(entries);
+    }
+    tests.sort(Comparator.comparingInt((Entry entry) -> entry.requests).reversed());
+
+    final Map<String, int[]> classes = new LinkedHashMap<>();
+    tests.forEach(
+        entry -> {
+          final int[] totals = classes.computeIfAbsent(entry.className, key -> new int[2]);
+          totals[0] += entry.requests;
+          totals[1]++;
+        });
+    final List<Map.Entry<String, int[]>> sortedClasses = new ArrayList<>(classes.entrySet());
+    sortedClasses.sort(
+        Comparator.comparingInt((Map.Entry<String, int[]> entry) -> entry.getValue()[0])
+            .reversed());
+
+    try (ImposterFiles.AtomicFile file = ImposterFiles.AtomicFile.create(output)) {
+      final Writer out = new OutputStreamWriter(file.getOutput(), StandardCharsets.UTF_8);
+      final JsonWriter writer = new JsonWriter(out).setIndent("  ");
+      writer.beginObject();
+      writer.name("requests").numberValue(String.valueOf(total(tests)));
+
+      writer.name("classes").beginArray();
+      for (Map.Entry<String, int[]> entry : sortedClasses) {
+        writer.beginObject();
+        writer.name("class").value(entry.getKey());
+        writer.name("requests").numberValue(String.valueOf(entry.getValue()[0]));
+        writer.name("tests").numberValue(String.valueOf(entry.getValue()[1]));
+        writer.endObject();
+      }
+      writer.endArray();
+
+      writer.name("tests").beginArray();
+      for (Entry entry : tests) {
+        writeTest(writer, entry);
+      }
+      writer.endArray();
+      writer.endObject();
+      writer.flush();
+      file.commit();
+    }
+  }
+
+  private static void writeTest(JsonWriter writer, Entry entry) throws IOException {
+    writer.beginObject();
+    writer.name("test").value(entry.test);
+    writer.name("class").value(entry.className);
+    writer.name("method").value(entry.methodName);
+    writer.name("requests").numberValue(String.valueOf(entry.requests));
+    writer.name("imposters").beginArray();
+    for (RequestStats.Imposter imposter : entry.stats.getImposters()) {
+      writer.beginObject();
+      writer.name("port").numberValue(String.valueOf(imposter.getPort()));
+      writer.name("requests").numberValue(String.valueOf(imposter.getRequests()));
+      writer.name("recordedRequests").numberValue(String.valueOf(imposter.getRecordedRequests()));
+      writer.name("endpoints").beginArray();
+      for (Map.Entry<String, Integer> endpoint : imposter.getEndpoints().entrySet()) {
+        writer.beginObject();
+        writer.name("endpoint").value(endpoint.getKey());
+        writer.name("requests").numberValue(String.valueOf(endpoint.getValue()));
+        writer.endObject();
+      }
+      writer.endArray();
+      writer.endObject();
+    }
+    writer.endArray();
+    writer.endObject();
+  }
+
+  private static int total(List<Entry> tests) {
+    return tests.stream().mapToInt(entry -> entry.requests).sum();
+  }
+
+  private static final class Entry {
+
+    private final String test;
+    private final String className;
+    private final String methodName;
+    private final RequestStats stats;
+    private final int requests;
+
+    Entry(String test, String className, String methodName, RequestStats stats) {
+      this.test = test;
+      this.className = className;
+      this.methodName = methodName;
+      this.stats = stats;
+      this.requests = stats.getRequests();
+    }
+  }
+}
@@ -0,0 +1,416 @@
+package com.traum.mountebank;
+
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.io.Replacements;
+import com.traum.json.JsonReader;
+import com.traum.json.JsonSyntaxException;
+import com.traum.json.JsonWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Spreads imposters across several proxies by port, e.g. containers, since mountebank serves all
+ * imposters of an instance on a single thread. Each port is served by exactly one shard. Imports
+ * split the imposter file by port and saves merge the exports of all shards, sorted by port; the
+ * shards import and export in parallel. Settings of this proxy, e.g. {@link
+ * #setReplayFormat(ReplayFormat)}, apply to all shards.
+ *
+ * <p>Files which aren't plain JSON, e.g. EJS templates, can't be split and are imported by every
+ * shard as a whole.
+ */
+public class ShardedMountebankProxy extends MountebankProxy {
+
+  private final List<MountebankProxy> shards;
+  private final Map<Integer, MountebankProxy> shardsByPort = new TreeMap<>();
+
+  /** @param shards with distinct imposter ports */
+  public ShardedMountebankProxy(List<? extends MountebankProxy> shards) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("shards must not be empty");
+    }
+    this.shards = List.copyOf(shards);
+    for (MountebankProxy shard : shards) {
+      for (Integer port : shard.getImposterPorts()) {
+        if (shardsByPort.putIfAbsent(port, shard) != null) {
+          throw new IllegalArgumentException("imposter port " + port + " is served by two shards");
+        }
+      }
+    }
+  }
+
+  /**
+   * @param shards number of containers, at most one per imposter port
+   * @param imposterPorts assigned to the containers in turn, by ascending port
+   */
+  public static ShardedMountebankProxy ofContainers(int shards, Integer... imposterPorts) {
+    if (shards < 1 || imposterPorts.length == 0) {
+      throw new IllegalArgumentException(
+          "shards and imposter ports are required, but are "
+              + shards
+              + " and "
+              + Arrays.toString(imposterPorts));
+    }
+    final Integer[] ports = imposterPorts.clone();
+    Arrays.sort(ports);
+    final List<List<Integer>> portsOfShards = new ArrayList<>();
+    for (int i = 0; i < ports.length; i++) {
+      if (i < shards) {
+        portsOfShards.add(new ArrayList<>());
+      }
+      portsOfShards.get(i % shards).add(ports[i]);
+    }
+    final List<MountebankProxy> containers = new ArrayList<>();
+    for (List<Integer> portsOfShard : portsOfShards) {
+      containers.add(new ContainerMountebankProxy(portsOfShard.toArray(Integer[]::new)));
+    }
+    return new ShardedMountebankProxy(containers);
+  }
+
+  public List<MountebankProxy> getShards() {
+    return shards;
+  }
+
+  @Override
+  public void start() {
+    inParallelUnchecked(
+        shard -> {
+          shard.start();
+          return null;
+        });
+  }
+
+  @Override
+  public void stop() {
+    inParallelUnchecked(
+        shard -> {
+          shard.stop();
+          return null;
+        });
+  }
+
+  @Override
+  public boolean isRunning() {
+    return shards.stream().allMatch(MountebankProxy::isRunning);
+  }
+
+  /** The latency is applied before the imposters are split, so that it doesn't vary by shard. */
+  @Override
+  public void importImposters(Path impostersInput) throws IOException {
+    final Path adjusted = LatencyAdjustedImposters.copy(impostersInput, getReplayLatency());
+    try {
+      importSplit(adjusted == null ? impostersInput : adjusted);
+    } finally {
+      if (adjusted != null) {
+        Files.deleteIfExists(adjusted);
+      }
+    }
+  }
+
+  private void importSplit(Path impostersInput) throws IOException {
+    configureShards();
+    final ImposterSet imposters;
+    try {
+      imposters = ImposterSet.read(impostersInput);
+    } catch (JsonSyntaxException e) {
+      inParallel(
+          shard -> {
+            shard.importImposters(impostersInput);
+            return null;
+          });
+      return;
+    }
+
+    final Map<MountebankProxy, List<String>> impostersOfShards = new LinkedHashMap<>();
+    shards.forEach(shard -> impostersOfShards.put(shard, new ArrayList<>()));
+    for (ImposterSet.Imposter imposter : imposters.getImposters()) {
+      final MountebankProxy shard =
+          imposter.getPort() == null ? null : shardsByPort.get(imposter.getPort());
+      if (shard == null) {
+        throw new IllegalArgumentException("No shard serves imposter port " + imposter.getPort());
+      }
+      impostersOfShards.get(shard).add(imposter.toJson());
+    }
+
+    final Map<MountebankProxy, Path> inputs = new LinkedHashMap<>();
+    try {
+      for (Map.Entry<MountebankProxy, List<String>> entry : impostersOfShards.entrySet()) {
+        final Path input = Files.createTempFile("imposters", ".json");
+        inputs.put(entry.getKey(), input);
+        Files.writeString(input, "{\"imposters\":[" + String.join(",", entry.getValue()) + "]}");
+      }
+      inParallel(
+          shard -> {
+            shard.importImposters(inputs.get(shard));
+            return null;
+          });
+    } finally {
+      for (Path input : inputs.values()) {
+        Files.deleteIfExists(input);
+      }
+    }
+  }
+
+  @Override
+  public void saveImposters(Path replayOutput, Path recordOutput, Replacements replacements) {
+    if (replayOutput == null && recordOutput == null) {
+      return;
+    }
+    configureShards();
+    final Map<MountebankProxy, Path> replayOutputs = new LinkedHashMap<>();
+    final Map<MountebankProxy, Path> recordOutputs = new LinkedHashMap<>();
+    try {
+      try {
+        for (MountebankProxy shard : shards) {
+          if (replayOutput != null) {
+            replayOutputs.put(shard, Files.createTempFile("replay", ".json"));
+          }
+          if (recordOutput != null) {
+            recordOutputs.put(shard, Files.createTempFile("record", ".json"));
+          }
+        }
+        inParallel(
+            shard -> {
+              shard.saveImposters(replayOutputs.get(shard), recordOutputs.get(shard), replacements);
+              return null;
+            });
+        if (replayOutput != null) {
+          merge(
+              replayOutputs.values(),
+              replayOutput,
+              getReplayFormat().isMinified() ? "" : ReplayableImposters.INDENT);
+        }
+        if (recordOutput != null) {
+          merge(recordOutputs.values(), recordOutput, ReplayableImposters.INDENT);
+        }
+      } finally {
+        for (Path output : replayOutputs.values()) {
+          Files.deleteIfExists(output);
+        }
+        for (Path output : recordOutputs.values()) {
+          Files.deleteIfExists(output);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to save imposters of shards", e);
+    }
+  }
+
+  /** Imposters of the shards are merged in memory, ordered by port. */
+  private static void merge(Collection<Path> shardOutputs, Path output, String indent)
+      throws IOException {
+    final List<Map.Entry<Integer, String>> imposters = new ArrayList<>();
+    for (Path shardOutput : shardOutputs) {
+      try (JsonReader reader = new JsonReader(ImposterFiles.newInputStream(shardOutput))) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          if (!"imposters".equals(reader.nextName())) {
+            reader.skipValue();
+            continue;
+          }
+          reader.beginArray();
+          while (reader.hasNext()) {
+            imposters.add(readImposter(reader));
+          }
+          reader.endArray();
+        }
+        reader.endObject();
+      }
+    }
+    imposters.sort(Map.Entry.comparingByKey());
+
+    try (ImposterFiles.AtomicFile file = ImposterFiles.AtomicFile.create(output)) {
+      final JsonWriter writer =
+          new JsonWriter(
+                  new BufferedWriter(
+                      new OutputStreamWriter(file.getOutput(), StandardCharsets.UTF_8)))
+              .setIndent(indent);
+      writer.beginObject().name("imposters").beginArray();
+      for (Map.Entry<Integer, String> imposter : imposters) {
+        writer.copyValue(new JsonReader(new StringReader(imposter.getValue())));
+      }
+      writer.endArray().endObject();
+      writer.flush();
+      file.commit();
+    }
+  }
+
+  /** @return the port, or the largest one if there is none, and the compact imposter */
+  private static Map.Entry<Integer, String> readImposter(JsonReader reader) throws IOException {
+    final StringWriter imposter = new StringWriter();
+    final JsonWriter writer = new JsonWriter(imposter);
+    int port = Integer.MAX_VALUE;
+    reader.beginObject();
+    writer.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      writer.name(name);
+      if (name.equals("port") && reader.peek() == JsonReader.Token.NUMBER) {
+        final String number = reader.nextNumber();
+        writer.numberValue(number);
+        port = Integer.parseInt(number);
+      } else {
+        writer.copyValue(reader);
+      }
+    }
+    reader.endObject();
+    writer.endObject();
+    writer.flush();
+    return new AbstractMap.SimpleImmutableEntry<>(port, imposter.toString());
+  }
+
+  @Override
+  public void resetImposters() {
+    inParallelUnchecked(
+        shard -> {
+          shard.resetImposters();
+          return null;
+        });
+  }
+
+  @Override
+  public void deleteImposter(int imposterPort) {
+    getShard(imposterPort).deleteImposter(imposterPort);
+  }
+
+  @Override
+  public boolean hasReusableImposters() {
+    return shards.stream().allMatch(MountebankProxy::hasReusableImposters);
+  }
+
+  @Override
+  public void invalidateImportedImposters() {
+    shards.forEach(MountebankProxy::invalidateImportedImposters);
+  }
+
+  @Override
+  public RequestStats getRequestStats() {
+    return RequestStats.merge(inParallelUnchecked(MountebankProxy::getRequestStats));
+  }
+
+  /** @return the API of the first shard, see {@link #getShards()} for the others */
+  @Override
+  public String getApiUrl() {
+    return shards.get(0).getApiUrl();
+  }
+
+  @Override
+  public String getImposterAuthority(int imposterPort) throws IllegalArgumentException {
+    return getShard(imposterPort).getImposterAuthority(imposterPort);
+  }
+
+  @Override
+  public Collection<Integer> getImposterPorts() {
+    return Collections.unmodifiableSet(shardsByPort.keySet());
+  }
+
+  private MountebankProxy getShard(int imposterPort) {
+    final MountebankProxy shard = shardsByPort.get(imposterPort);
+    if (shard == null) {
+      throw new IllegalArgumentException("No shard serves imposter port " + imposterPort);
+    }
+    return shard;
+  }
+
+  /** Latency is applied by this proxy, everything else by the shards. */
+  private void configureShards() {
+    for (MountebankProxy shard : shards) {
+      shard.setReplacements(getReplacements());
+      shard.setReplayFormat(getReplayFormat());
+      shard.setReplayLatency(ReplayLatency.unchanged());
+      shard.setIncrementalImport(isIncrementalImport());
+    }
+  }
+
+  private <T> List<T> inParallelUnchecked(ShardOperation<T> operation) {
+    try {
+      return inParallel(operation);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Runs the operation for all shards in parallel and waits for all of them, so that no shard is
+   * left in the middle of an operation. The shards don't run on the {@link
+   * #setAdminExecutor(Executor) executor}, since the asynchronous variants wait for them on it.
+   *
+   * @return the results in the order of the shards
+   */
+  private <T> List<T> inParallel(ShardOperation<T> operation) throws IOException {
+    final List<CompletableFuture<T>> operations = new ArrayList<>();
+    for (MountebankProxy shard : shards) {
+      operations.add(AdminClient.supplyUnbounded(() -> operation.apply(shard)));
+    }
+    final List<T> results = new ArrayList<>();
+    Throwable failure = null;
+    for (CompletableFuture<T> shardOperation : operations) {
+      try {
+        results.add(shardOperation.join());
+      } catch (CompletionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        } else {
+          failure.addSuppressed(e.getCause());
+        }
+      }
+    }
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    if (failure != null) {
+      throw new IllegalStateException(failure);
+    }
+    return results;
+  }
+
+  @FunctionalInterface
+  private interface ShardOperation<T> {
+
+    T apply(MountebankProxy shard) throws Exception;
+  }
+}
@@ -0,0 +1,85 @@
+package com.traum.mountebank;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.time.Duration;
+
+/** How long the phases of starting a {@link MountebankContainer} took. */
+public final class StartupTimings {
+
+  private final Duration imageResolution;
+  private final Duration containerCreation;
+  private final Duration portMapping;
+  private final Duration readiness;
+
+  StartupTimings(
+      Duration imageResolution,
+      Duration containerCreation,
+      Duration portMapping,
+      Duration readiness) {
+    this.imageResolution = imageResolution;
+    this.containerCreation = containerCreation;
+    this.portMapping = portMapping;
+    this.readiness = readiness;
+  }
+
+  /** @return how long resolving, and if necessary pulling, the image took */
+  public Duration getImageResolution() {
+    return imageResolution;
+  }
+
+  /** @return how long creating the container took, zero if an existing one is reused */
+  public Duration getContainerCreation() {
+    return containerCreation;
+  }
+
+  /**
+   * @return how long starting the container, or finding the one to reuse, and inspecting its mapped
+   *     ports took
+   */
+  public Duration getPortMapping() {
+    return portMapping;
+  }
+
+  /** @return how long mountebank took to accept requests once the container ran */
+  public Duration getReadiness() {
+    return readiness;
+  }
+
+  public Duration getTotal() {
+    return imageResolution.plus(containerCreation).plus(portMapping).plus(readiness);
+  }
+
+  @Override
+  public String toString() {
+    return "image resolution "
+        + imageResolution.toMillis()
+        + " ms, container creation "
+        + containerCreation.toMillis()
+        + " ms, port mapping "
+        + portMapping.toMillis()
+        + " ms, readiness "
+        + readiness.toMillis()
+        + " ms, total "
+        + getTotal().toMillis()
+        + " ms";
+  }
+}
@@ -0,0 +1,132 @@
+package com.traum.mountebank.load;
+
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram of non-negative values with a fixed relative precision, recorded like
+ * HdrHistogram does: values below 128 are counted exactly, larger ones in 64 linear buckets per
+ * power of two, so that any value is reported within 1.6% of what was recorded. Recording neither
+ * allocates nor locks, the buckets of all {@code long} values take about 30 KB.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+  private final AtomicLongArray counts = new AtomicLongArray(indexOf(Long.MAX_VALUE) + 1);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong max = new AtomicLong();
+
+  /** @throws IllegalArgumentException if the value is negative */
+  public void record(long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("value must not be negative, but is " + value);
+    }
+    counts.incrementAndGet(indexOf(value));
+    count.increment();
+    sum.add(value);
+    min.accumulateAndGet(value, Math::min);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  /** @return the smallest recorded value, 0 if none was recorded */
+  public long getMin() {
+    return getCount() == 0 ? 0 : min.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /** @return the mean of the recorded values, 0 if none was recorded */
+  public double getMean() {
+    final long count = getCount();
+    return count == 0 ? 0 : (double) sum.sum() / count;
+  }
+
+  /**
+   * @param percentile between 0 and 100, e.g. 99.9
+   * @return the highest value equivalent to the one below which the percentage of recorded values
+   *     falls, at most {@link #getMax()}; 0 if none was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (!(percentile >= 0 && percentile <= 100)) {
+      throw new IllegalArgumentException(
+          "percentile must be between 0 and 100, but is " + percentile);
+    }
+    long total = 0;
+    for (int index = 0; index < counts.length(); index++) {
+      total += counts.get(index);
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int index = 0; index < counts.length(); index++) {
+      seen += counts.get(index);
+      if (seen >= rank) {
+        return Math.min(highestEquivalentValue(index), getMax());
+      }
+    }
+    return 0;
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+    return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  static long highestEquivalentValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = index / HALF_SUB_BUCKETS - 1;
+    final long lowest = (long) (index % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS) << shift;
+    return lowest + ((1L << shift) - 1);
+  }
+
+  @Override
+  public String toString() {
+    return "p50="
+        + getValueAtPercentile(50)
+        + " p90="
+        + getValueAtPercentile(90)
+        + " p99="
+        + getValueAtPercentile(99)
+        + " p99.9="
+        + getValueAtPercentile(99.9)
+        + " max="
+        + getMax();
+  }
+}
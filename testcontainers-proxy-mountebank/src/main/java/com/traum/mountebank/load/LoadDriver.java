@@ -0,0 +1,271 @@
+package com.traum.mountebank.load;
+
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.mountebank.ImposterFiles;
+import com.traum.mountebank.MountebankProxy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Immutable load test against the imposters of a proxy, e.g. to find out whether mountebank or the
+ * code under test limits the throughput of replayed third-party APIs. Each client sends the
+ * requests recorded by the imposters in turn, the next one as soon as the previous got its
+ * response; clients start at different positions of the mix. Requests are sent asynchronously
+ * through a shared {@link HttpClient}, so that many clients need few threads.
+ *
+ * <pre>
+ * LoadResult result =
+ *     LoadDriver.replaying(Path.of("src/test/resources/imposters/record.json"))
+ *         .withClients(32)
+ *         .withWarmup(Duration.ofSeconds(2))
+ *         .withDuration(Duration.ofSeconds(10))
+ *         .run(proxy);
+ * </pre>
+ */
+public final class LoadDriver {
+
+  private final List<RecordedRequest> requests;
+  private final int clients;
+  private final Duration warmup;
+  private final Duration duration;
+  private final long maxRequests;
+  private final Duration timeout;
+
+  private LoadDriver(
+      List<RecordedRequest> requests,
+      int clients,
+      Duration warmup,
+      Duration duration,
+      long maxRequests,
+      Duration timeout) {
+    this.requests = requests;
+    this.clients = clients;
+    this.warmup = warmup;
+    this.duration = duration;
+    this.maxRequests = maxRequests;
+    this.timeout = timeout;
+  }
+
+  /**
+   * @param recordedImposters imposters including the requests they recorded, e.g. the {@code
+   *     recordImposters} of a test; gzip compressed if the name ends with {@code .gz}
+   * @throws IllegalArgumentException if no HTTP imposter recorded a request
+   */
+  public static LoadDriver replaying(Path recordedImposters) throws IOException {
+    try (InputStream input = ImposterFiles.newInputStream(recordedImposters)) {
+      return replaying(input);
+    }
+  }
+
+  /** @throws IllegalArgumentException if no HTTP imposter recorded a request */
+  public static LoadDriver replaying(InputStream recordedImposters) throws IOException {
+    final List<RecordedRequest> requests = RecordedRequest.read(recordedImposters);
+    if (requests.isEmpty()) {
+      throw new IllegalArgumentException("No HTTP imposter recorded a request");
+    }
+    return new LoadDriver(
+        requests, 1, Duration.ZERO, Duration.ofSeconds(10), 0, Duration.ofSeconds(10));
+  }
+
+  /** @param clients sending requests concurrently, 1 by default */
+  public LoadDriver withClients(int clients) {
+    if (clients < 1) {
+      throw new IllegalArgumentException("clients must be positive, but is " + clients);
+    }
+    return new LoadDriver(requests, clients, warmup, duration, maxRequests, timeout);
+  }
+
+  /** @param warmup during which responses aren't measured, none by default */
+  public LoadDriver withWarmup(Duration warmup) {
+    return new LoadDriver(
+        requests, clients, requireNotNegative("warmup", warmup), duration, maxRequests, timeout);
+  }
+
+  /** @param duration of the measurement after the warmup, 10 seconds by default */
+  public LoadDriver withDuration(Duration duration) {
+    return new LoadDriver(
+        requests, clients, warmup, requireNotNegative("duration", duration), maxRequests, timeout);
+  }
+
+  /** @param maxRequests ends the measurement early after as many requests, 0 for no limit */
+  public LoadDriver withMaxRequests(long maxRequests) {
+    if (maxRequests < 0) {
+      throw new IllegalArgumentException("maxRequests must not be negative, but is " + maxRequests);
+    }
+    return new LoadDriver(requests, clients, warmup, duration, maxRequests, timeout);
+  }
+
+  /** @param timeout after which a request counts as error, 10 seconds by default */
+  public LoadDriver withTimeout(Duration timeout) {
+    if (timeout.isNegative() || timeout.isZero()) {
+      throw new IllegalArgumentException("timeout must be positive, but is " + timeout);
+    }
+    return new LoadDriver(requests, clients, warmup, duration, maxRequests, timeout);
+  }
+
+  /** @return the number of recorded requests in the mix */
+  public int getRecordedRequests() {
+    return requests.size();
+  }
+
+  /**
+   * Sends the recorded requests to the imposters of the proxy on the same ports until the warmup
+   * and the duration passed or the maximum number of requests was sent, and waits for the
+   * outstanding responses.
+   *
+   * @throws IllegalArgumentException if the proxy has no imposter on a port of the requests
+   */
+  public LoadResult run(MountebankProxy proxy) throws InterruptedException {
+    final List<HttpRequest> mix = new ArrayList<>(requests.size());
+    for (RecordedRequest request : requests) {
+      mix.add(toHttpRequest(request, proxy.getImposterAuthority(request.getPort())));
+    }
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.min(clients, Runtime.getRuntime().availableProcessors()),
+            runnable -> {
+              final Thread thread = new Thread(runnable, "mountebank-load");
+              thread.setDaemon(true);
+              return thread;
+            });
+    try {
+      final HttpClient client =
+          HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(executor).build();
+      return new Run(client, executor, mix).await();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private HttpRequest toHttpRequest(RecordedRequest request, String authority) {
+    final HttpRequest.Builder builder =
+        HttpRequest.newBuilder(URI.create("http://" + authority + request.getPathAndQuery()))
+            .timeout(timeout)
+            .method(
+                request.getMethod(),
+                request.getBody().isEmpty()
+                    ? HttpRequest.BodyPublishers.noBody()
+                    : HttpRequest.BodyPublishers.ofString(request.getBody()));
+    if (!request.getHeaders().isEmpty()) {
+      builder.headers(request.getHeaders().toArray(String[]::new));
+    }
+    return builder.build();
+  }
+
+  private static Duration requireNotNegative(String name, Duration duration) {
+    if (duration.isNegative()) {
+      throw new IllegalArgumentException(name + " must not be negative, but is " + duration);
+    }
+    return duration;
+  }
+
+  /** The state of one {@link #run(MountebankProxy)}, shared by its clients. */
+  private final class Run {
+
+    private final HttpClient client;
+    private final ExecutorService executor;
+    private final List<HttpRequest> mix;
+    private final long measuredFrom;
+    private final long measuredUntil;
+    private final AtomicLong remainingRequests;
+    private final CountDownLatch finishedClients = new CountDownLatch(clients);
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final AtomicLong lastResponse;
+
+    Run(HttpClient client, ExecutorService executor, List<HttpRequest> mix) {
+      this.client = client;
+      this.executor = executor;
+      this.mix = mix;
+      this.measuredFrom = System.nanoTime() + warmup.toNanos();
+      this.measuredUntil = measuredFrom + duration.toNanos();
+      this.remainingRequests = new AtomicLong(maxRequests == 0 ? Long.MAX_VALUE : maxRequests);
+      this.lastResponse = new AtomicLong(measuredFrom);
+    }
+
+    LoadResult await() throws InterruptedException {
+      for (int client = 0; client < clients; client++) {
+        final int position = (int) ((long) client * mix.size() / clients);
+        executor.execute(() -> send(position));
+      }
+      finishedClients.await();
+      final Map<Integer, Long> counts = new HashMap<>();
+      statusCodes.forEach((statusCode, count) -> counts.put(statusCode, count.sum()));
+      return new LoadResult(
+          latency.getCount(),
+          errors.sum(),
+          counts,
+          Duration.ofNanos(Math.max(0, lastResponse.get() - measuredFrom)),
+          latency);
+    }
+
+    private void send(int position) {
+      final long start = System.nanoTime();
+      final boolean measured = start - measuredFrom >= 0;
+      if (start - measuredUntil >= 0 || measured && remainingRequests.getAndDecrement() <= 0) {
+        finishedClients.countDown();
+        return;
+      }
+      try {
+        client
+            .sendAsync(mix.get(position), HttpResponse.BodyHandlers.discarding())
+            .whenComplete(
+                (response, failure) -> {
+                  if (measured) {
+                    final long end = System.nanoTime();
+                    if (failure != null) {
+                      errors.increment();
+                    } else {
+                      latency.record((end - start) / 1000);
+                      statusCodes
+                          .computeIfAbsent(response.statusCode(), key -> new LongAdder())
+                          .increment();
+                    }
+                    lastResponse.accumulateAndGet(end, Math::max);
+                  }
+                  executor.execute(() -> send((position + 1) % mix.size()));
+                });
+      } catch (RuntimeException e) {
+        errors.increment();
+        finishedClients.countDown();
+      }
+    }
+  }
+}
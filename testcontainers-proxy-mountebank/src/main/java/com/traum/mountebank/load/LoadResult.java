@@ -0,0 +1,87 @@
+package com.traum.mountebank.load;
+
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Throughput and latency measured by a {@link LoadDriver}, excluding its warmup. */
+public final class LoadResult {
+
+  private final long requests;
+  private final long errors;
+  private final Map<Integer, Long> statusCodes;
+  private final Duration duration;
+  private final LatencyHistogram latency;
+
+  LoadResult(
+      long requests,
+      long errors,
+      Map<Integer, Long> statusCodes,
+      Duration duration,
+      LatencyHistogram latency) {
+    this.requests = requests;
+    this.errors = errors;
+    this.statusCodes = Collections.unmodifiableMap(new TreeMap<>(statusCodes));
+    this.duration = duration;
+    this.latency = latency;
+  }
+
+  /** @return how many requests got a response */
+  public long getRequests() {
+    return requests;
+  }
+
+  /** @return how many requests failed without a response, e.g. because they timed out */
+  public long getErrors() {
+    return errors;
+  }
+
+  /** @return the number of responses by status code, ascending */
+  public Map<Integer, Long> getStatusCodes() {
+    return statusCodes;
+  }
+
+  /** @return from the end of the warmup until the last response */
+  public Duration getDuration() {
+    return duration;
+  }
+
+  /** @return responses per second */
+  public double getThroughput() {
+    return duration.isZero() ? 0 : requests * 1_000_000_000.0 / duration.toNanos();
+  }
+
+  /** @return of the responses, in microseconds */
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d requests in %d ms (%.1f/s), %d errors, %s, latency µs %s",
+        requests, duration.toMillis(), getThroughput(), errors, statusCodes, latency);
+  }
+}
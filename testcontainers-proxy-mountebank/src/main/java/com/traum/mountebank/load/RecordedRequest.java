@@ -0,0 +1,221 @@
+package com.traum.mountebank.load;
+
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.json.JsonReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/** A request which an HTTP imposter recorded, without the authority it was sent to. */
+final class RecordedRequest {
+
+  /** Headers which the HTTP client sets itself. */
+  private static final Set<String> RESTRICTED_HEADERS =
+      Set.of(
+          "connection",
+          "content-length",
+          "date",
+          "expect",
+          "from",
+          "host",
+          "keep-alive",
+          "proxy-connection",
+          "transfer-encoding",
+          "upgrade",
+          "via",
+          "warning");
+
+  private final int port;
+  private final String method;
+  private final String pathAndQuery;
+  private final List<String> headers;
+  private final String body;
+
+  private RecordedRequest(
+      int port, String method, String pathAndQuery, List<String> headers, String body) {
+    this.port = port;
+    this.method = method;
+    this.pathAndQuery = pathAndQuery;
+    this.headers = headers;
+    this.body = body;
+  }
+
+  /**
+   * Streams imposters including their requests, e.g. saved with {@code recordRequests}. Requests
+   * of imposters with other protocols than {@code http} are left out.
+   */
+  static List<RecordedRequest> read(InputStream imposters) throws IOException {
+    final List<RecordedRequest> requests = new ArrayList<>();
+    final JsonReader reader = new JsonReader(imposters);
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (!"imposters".equals(reader.nextName())) {
+        reader.skipValue();
+        continue;
+      }
+      reader.beginArray();
+      while (reader.hasNext()) {
+        readImposter(reader, requests);
+      }
+      reader.endArray();
+    }
+    reader.endObject();
+    return requests;
+  }
+
+  private static void readImposter(JsonReader reader, List<RecordedRequest> requests)
+      throws IOException {
+    int port = 0;
+    String protocol = "http";
+    final List<RecordedRequest> imposterRequests = new ArrayList<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if (name.equals("port") && reader.peek() == JsonReader.Token.NUMBER) {
+        port = Integer.parseInt(reader.nextNumber());
+      } else if (name.equals("protocol") && reader.peek() == JsonReader.Token.STRING) {
+        protocol = reader.nextString();
+      } else if (name.equals("requests") && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          imposterRequests.add(readRequest(reader));
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (protocol.equals("http")) {
+      for (RecordedRequest request : imposterRequests) {
+        requests.add(
+            new RecordedRequest(
+                port, request.method, request.pathAndQuery, request.headers, request.body));
+      }
+    }
+  }
+
+  private static RecordedRequest readRequest(JsonReader reader) throws IOException {
+    String method = "GET";
+    String path = "/";
+    final StringBuilder query = new StringBuilder();
+    final List<String> headers = new ArrayList<>();
+    String body = "";
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if (name.equals("method") && reader.peek() == JsonReader.Token.STRING) {
+        method = reader.nextString();
+      } else if (name.equals("path") && reader.peek() == JsonReader.Token.STRING) {
+        path = reader.nextString();
+      } else if (name.equals("body") && reader.peek() == JsonReader.Token.STRING) {
+        body = reader.nextString();
+      } else if (name.equals("query") && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          final String parameter = reader.nextName();
+          for (String value : readValues(reader)) {
+            query
+                .append(query.length() == 0 ? '?' : '&')
+                .append(URLEncoder.encode(parameter, StandardCharsets.UTF_8))
+                .append('=')
+                .append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+          }
+        }
+        reader.endObject();
+      } else if (name.equals("headers") && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          final String header = reader.nextName();
+          final List<String> values = readValues(reader);
+          if (!RESTRICTED_HEADERS.contains(header.toLowerCase(Locale.ROOT))) {
+            for (String value : values) {
+              headers.add(header);
+              headers.add(value);
+            }
+          }
+        }
+        reader.endObject();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new RecordedRequest(
+        0, method, path + query, Collections.unmodifiableList(headers), body);
+  }
+
+  /** @return the string or strings of an array, e.g. of repeated query parameters */
+  private static List<String> readValues(JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+      case STRING:
+        return List.of(reader.nextString());
+      case NUMBER:
+        return List.of(reader.nextNumber());
+      case BEGIN_ARRAY:
+        final List<String> values = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          values.addAll(readValues(reader));
+        }
+        reader.endArray();
+        return values;
+      default:
+        reader.skipValue();
+        return List.of();
+    }
+  }
+
+  int getPort() {
+    return port;
+  }
+
+  String getMethod() {
+    return method;
+  }
+
+  /** @return e.g. {@code /users?page=2}, with the query encoded */
+  String getPathAndQuery() {
+    return pathAndQuery;
+  }
+
+  /** @return alternating names and values, as taken by {@code HttpRequest.Builder#headers} */
+  List<String> getHeaders() {
+    return headers;
+  }
+
+  String getBody() {
+    return body;
+  }
+
+  @Override
+  public String toString() {
+    return port + " " + method + " " + pathAndQuery;
+  }
+}
@@ -0,0 +1,379 @@
+package com.traum.mountebank.replay;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP imposter which answers with the {@code is} responses of the first stub whose predicates all
+ * match, cycling through its responses like mountebank does. Stubs are validated on creation and
+ * indexed by the method and path their predicates require, so that most requests only evaluate the
+ * predicates of few stubs instead of all of them.
+ */
+final class Imposter {
+
+  private static final Set<String> RESPONSE_FIELDS =
+      Set.of("is", "repeat", "behaviors", "_behaviors");
+
+  private final int port;
+  private final Map<String, Object> definition;
+  private final Map<String, Object> defaultResponse;
+  private final boolean recordRequests;
+
+  private final AtomicInteger numberOfRequests = new AtomicInteger();
+  private final List<Map<String, Object>> requests =
+      Collections.synchronizedList(new ArrayList<>());
+
+  private volatile StubIndex stubs;
+
+  private Imposter(int port, Map<String, Object> definition) {
+    this.port = port;
+    this.definition = definition;
+    final Map<String, Object> defaultResponse =
+        JsonTree.asObject(definition.get("defaultResponse"));
+    this.defaultResponse = defaultResponse == null ? Map.of() : defaultResponse;
+    this.recordRequests = Boolean.TRUE.equals(definition.get("recordRequests"));
+  }
+
+  /** @throws IllegalArgumentException if the imposter uses features which aren't supported */
+  static Imposter of(Object json) {
+    final Map<String, Object> definition = JsonTree.asObject(json);
+    if (definition == null) {
+      throw new IllegalArgumentException("imposter must be an object, but is " + json);
+    }
+    final String protocol = JsonTree.asString(definition.get("protocol"));
+    if (!"http".equals(protocol)) {
+      throw new IllegalArgumentException("protocol " + protocol + " is not supported");
+    }
+    final String port = JsonTree.asString(definition.get("port"));
+    if (port == null || !port.matches("\\d+")) {
+      throw new IllegalArgumentException("imposter requires a port, but has " + port);
+    }
+
+    final Map<String, Object> header = new LinkedHashMap<>(definition);
+    header.remove("stubs");
+    header.remove("requests");
+    header.remove("numberOfRequests");
+    header.remove("_links");
+    final Imposter imposter = new Imposter(Integer.parseInt(port), header);
+    imposter.setStubs(definition.getOrDefault("stubs", List.of()));
+    return imposter;
+  }
+
+  int getPort() {
+    return port;
+  }
+
+  /** @throws IllegalArgumentException if a stub uses features which aren't supported */
+  void setStubs(Object json) {
+    final List<Object> definitions = JsonTree.asArray(json);
+    if (definitions == null) {
+      throw new IllegalArgumentException("stubs must be an array, but are " + json);
+    }
+    final List<Stub> stubs = new ArrayList<>(definitions.size());
+    for (Object definition : definitions) {
+      stubs.add(new Stub(definition));
+    }
+    this.stubs = new StubIndex(stubs);
+  }
+
+  /** @return the position of the first stub matching the request, -1 if none does */
+  int findStub(Map<String, Object> request) {
+    return stubs.find(request);
+  }
+
+  /** @return whether stubs require the method and path of the request, even if they don't match */
+  boolean hasRoute(Map<String, Object> request) {
+    return stubs.byRoute.containsKey(route(request));
+  }
+
+  /** @return the stub as defined */
+  Map<String, Object> getStub(int position) {
+    return stubs.stubs.get(position).definition;
+  }
+
+  /** @return the {@code is} response to the request, including defaults */
+  Response respond(Map<String, Object> request) {
+    numberOfRequests.incrementAndGet();
+    if (recordRequests) {
+      requests.add(request);
+    }
+
+    final StubIndex stubs = this.stubs;
+    final int position = stubs.find(request);
+    return position < 0
+        ? new Response(defaultResponse, 0)
+        : stubs.stubs.get(position).nextResponse(defaultResponse);
+  }
+
+  void clearRequests() {
+    requests.clear();
+  }
+
+  /** @return the imposter as exported by mountebank, including recorded requests */
+  Map<String, Object> toJson() {
+    final Map<String, Object> json = new LinkedHashMap<>(definition);
+    json.put("numberOfRequests", new JsonTree.NumberText(String.valueOf(numberOfRequests.get())));
+    synchronized (requests) {
+      json.put("requests", new ArrayList<>(requests));
+    }
+    final List<Object> stubs = new ArrayList<>();
+    this.stubs.stubs.forEach(stub -> stubs.add(stub.definition));
+    json.put("stubs", stubs);
+    return json;
+  }
+
+  /** Response of a stub merged with the default response of the imposter. */
+  static final class Response {
+
+    private final Map<String, Object> is;
+    private final long wait;
+
+    private Response(Map<String, Object> is, long wait) {
+      this.is = is;
+      this.wait = wait;
+    }
+
+    int getStatusCode() {
+      final String statusCode = JsonTree.asString(is.get("statusCode"));
+      return statusCode == null ? 200 : Integer.parseInt(statusCode);
+    }
+
+    /** @return names and values of headers, which are strings or arrays of strings */
+    Map<String, Object> getHeaders() {
+      final Map<String, Object> headers = JsonTree.asObject(is.get("headers"));
+      return headers == null ? Map.of() : headers;
+    }
+
+    /** @return the body as text, a JSON value or base64 in {@link #isBinary() binary} mode */
+    Object getBody() {
+      return is.get("body");
+    }
+
+    boolean isBinary() {
+      return "binary".equals(is.get("_mode"));
+    }
+
+    /** @return milliseconds to wait before responding */
+    long getWait() {
+      return wait;
+    }
+  }
+
+  /**
+   * Stubs by the lower case method and path which their predicates require, and the stubs which
+   * don't require any. Candidates are evaluated in the order of the stubs, so that the first
+   * matching stub wins as in mountebank.
+   */
+  private static final class StubIndex {
+
+    private static final int[] NONE = new int[0];
+
+    private final List<Stub> stubs;
+    private final Map<String, int[]> byRoute = new HashMap<>();
+    private final int[] unrouted;
+
+    StubIndex(List<Stub> stubs) {
+      this.stubs = stubs;
+      final Map<String, List<Integer>> byRoute = new HashMap<>();
+      final List<Integer> unrouted = new ArrayList<>();
+      for (int i = 0; i < stubs.size(); i++) {
+        final String route = stubs.get(i).getRoute();
+        if (route == null) {
+          unrouted.add(i);
+        } else {
+          byRoute.computeIfAbsent(route, key -> new ArrayList<>()).add(i);
+        }
+      }
+      byRoute.forEach((route, positions) -> this.byRoute.put(route, toArray(positions)));
+      this.unrouted = toArray(unrouted);
+    }
+
+    int find(Map<String, Object> request) {
+      final String route = route(request);
+      final int[] routed = route == null ? NONE : byRoute.getOrDefault(route, NONE);
+      int r = 0;
+      int u = 0;
+      while (r < routed.length || u < unrouted.length) {
+        final int position =
+            u == unrouted.length || (r < routed.length && routed[r] < unrouted[u])
+                ? routed[r++]
+                : unrouted[u++];
+        if (stubs.get(position).matches(request)) {
+          return position;
+        }
+      }
+      return -1;
+    }
+
+    private static int[] toArray(List<Integer> positions) {
+      return positions.stream().mapToInt(Integer::intValue).toArray();
+    }
+  }
+
+  private static String route(Map<String, Object> request) {
+    return route(JsonTree.asString(request.get("method")), JsonTree.asString(request.get("path")));
+  }
+
+  private static String route(String method, String path) {
+    return method == null || path == null
+        ? null
+        : method.toLowerCase(Locale.ROOT) + " " + path.toLowerCase(Locale.ROOT);
+  }
+
+  private static final class Stub {
+
+    private final Map<String, Object> definition;
+    private final List<Map<String, Object>> predicates = new ArrayList<>();
+
+    /** Every response is repeated as often as it is meant to be returned in a row. */
+    private final List<Map<String, Object>> responses = new ArrayList<>();
+
+    private int nextResponse;
+
+    Stub(Object json) {
+      definition = JsonTree.asObject(json);
+      if (definition == null) {
+        throw new IllegalArgumentException("stub must be an object, but is " + json);
+      }
+
+      final List<Object> predicates =
+          JsonTree.asArray(definition.getOrDefault("predicates", List.of()));
+      if (predicates == null) {
+        throw new IllegalArgumentException("predicates must be an array");
+      }
+      for (Object predicate : predicates) {
+        Predicates.validate(predicate);
+        this.predicates.add(JsonTree.asObject(predicate));
+      }
+
+      final List<Object> responses =
+          JsonTree.asArray(definition.getOrDefault("responses", List.of()));
+      if (responses == null) {
+        throw new IllegalArgumentException("responses must be an array");
+      }
+      for (Object response : responses) {
+        final Map<String, Object> fields = JsonTree.asObject(response);
+        if (fields == null) {
+          throw new IllegalArgumentException("response must be an object, but is " + response);
+        }
+        for (String field : fields.keySet()) {
+          if (!RESPONSE_FIELDS.contains(field)) {
+            throw new IllegalArgumentException("response type '" + field + "' is not supported");
+          }
+        }
+        getWait(fields);
+        final String repeat = JsonTree.asString(fields.get("repeat"));
+        final int times = repeat == null ? 1 : Math.max(1, Integer.parseInt(repeat));
+        for (int i = 0; i < times; i++) {
+          this.responses.add(fields);
+        }
+      }
+    }
+
+    /**
+     * @return the lower case method and path every matching request has, null if the predicates
+     *     don't require a specific one
+     */
+    String getRoute() {
+      String method = null;
+      String path = null;
+      for (Map<String, Object> predicate : predicates) {
+        if (predicate.containsKey("except")) {
+          continue;
+        }
+        final Map<String, Object> fields =
+            JsonTree.asObject(predicate.getOrDefault("equals", predicate.get("deepEquals")));
+        if (fields != null) {
+          method = method == null ? JsonTree.asString(fields.get("method")) : method;
+          path = path == null ? JsonTree.asString(fields.get("path")) : path;
+        }
+      }
+      return route(method, path);
+    }
+
+    boolean matches(Map<String, Object> request) {
+      for (Map<String, Object> predicate : predicates) {
+        if (!Predicates.matches(predicate, request)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    Response nextResponse(Map<String, Object> defaultResponse) {
+      final Map<String, Object> response;
+      synchronized (this) {
+        if (responses.isEmpty()) {
+          return new Response(defaultResponse, 0);
+        }
+        response = responses.get(nextResponse);
+        nextResponse = (nextResponse + 1) % responses.size();
+      }
+      final Map<String, Object> is = new LinkedHashMap<>(defaultResponse);
+      final Map<String, Object> fields = JsonTree.asObject(response.get("is"));
+      if (fields != null) {
+        is.putAll(fields);
+      }
+      return new Response(is, getWait(response));
+    }
+
+    /** Only the {@code wait} behavior with a fixed number of milliseconds is supported. */
+    private static long getWait(Map<String, Object> response) {
+      final List<Object> behaviors = new ArrayList<>();
+      final Object legacyBehaviors = response.get("_behaviors");
+      if (legacyBehaviors != null) {
+        behaviors.add(legacyBehaviors);
+      }
+      final List<Object> behaviorList = JsonTree.asArray(response.get("behaviors"));
+      if (behaviorList != null) {
+        behaviors.addAll(behaviorList);
+      }
+
+      long wait = 0;
+      for (Object behavior : behaviors) {
+        final Map<String, Object> fields = JsonTree.asObject(behavior);
+        if (fields == null) {
+          throw new IllegalArgumentException("behavior must be an object, but is " + behavior);
+        }
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+          final String milliseconds = JsonTree.asString(field.getValue());
+          if (!field.getKey().equals("wait")
+              || milliseconds == null
+              || !milliseconds.matches("\\d+")) {
+            throw new IllegalArgumentException(
+                "behavior '" + field.getKey() + "' is not supported: " + field.getValue());
+          }
+          wait += Long.parseLong(milliseconds);
+        }
+      }
+      return wait;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package com.traum.mountebank.replay;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.json.JsonReader;
+import com.traum.mountebank.ImposterFiles;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+
+/**
+ * Replay imposters loaded for offline lookups of the stub which would serve a request, without
+ * starting a proxy. Stubs are indexed by the method and path their predicates require, so that a
+ * lookup only evaluates the predicates of stubs for the same method and path and of stubs which
+ * don't require any; the first matching stub wins as in mountebank.
+ *
+ * <p>Only imposters which an {@link ReplayServer} can serve are supported.
+ */
+public final class ImposterIndex {
+
+  private final Map<Integer, Imposter> imposters;
+
+  private ImposterIndex(Map<Integer, Imposter> imposters) {
+    this.imposters = imposters;
+  }
+
+  /** @param replayImposters gzip compressed if the name ends with {@code .gz} */
+  public static ImposterIndex read(Path replayImposters) throws IOException {
+    try (InputStream input = ImposterFiles.newInputStream(replayImposters)) {
+      return read(input);
+    }
+  }
+
+  /** @throws IllegalArgumentException if an imposter isn't supported */
+  public static ImposterIndex read(InputStream replayImposters) throws IOException {
+    final Map<Integer, Imposter> imposters = new LinkedHashMap<>();
+    final JsonReader reader = new JsonReader(replayImposters);
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (!"imposters".equals(reader.nextName())) {
+        reader.skipValue();
+        continue;
+      }
+      reader.beginArray();
+      while (reader.hasNext()) {
+        final Imposter imposter = Imposter.of(JsonTree.read(reader));
+        imposters.put(imposter.getPort(), imposter);
+      }
+      reader.endArray();
+    }
+    reader.endObject();
+    return new ImposterIndex(imposters);
+  }
+
+  public Set<Integer> getPorts() {
+    return Collections.unmodifiableSet(imposters.keySet());
+  }
+
+  /**
+   * @param request with the fields of mountebank's HTTP requests: method, path, query and headers
+   *     as objects, and body
+   * @return the position of the stub of the imposter on the port which would serve the request,
+   *     empty if none would and mountebank answered with the default response
+   */
+  public OptionalInt findStub(int port, Map<String, Object> request) {
+    final Imposter imposter = imposters.get(port);
+    final int position = imposter == null ? -1 : imposter.findStub(request);
+    return position < 0 ? OptionalInt.empty() : OptionalInt.of(position);
+  }
+
+  /**
+   * @return whether stubs of the imposter on the port require the method and path of the request,
+   *     i.e. a miss is caused by other fields like the query
+   */
+  public boolean hasStubsForPath(int port, Map<String, Object> request) {
+    final Imposter imposter = imposters.get(port);
+    return imposter != null && imposter.hasRoute(request);
+  }
+
+  /** @return the stub at the position as compact JSON */
+  public String getStub(int port, int position) {
+    final Imposter imposter = imposters.get(port);
+    if (imposter == null) {
+      throw new IllegalArgumentException("No imposter on port " + port);
+    }
+    return JsonTree.toJson(imposter.getStub(position), "");
+  }
+}
@@ -0,0 +1,181 @@
+package com.traum.mountebank.replay;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.json.JsonReader;
+import com.traum.json.JsonSyntaxException;
+import com.traum.json.JsonWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Materializes JSON documents as plain Java values: {@link Map}s with insertion order, {@link
+ * List}s, {@link String}s, {@link Boolean}s, {@link NumberText numbers} which keep their text,
+ * and null. Only used for single imposters and requests, which are small.
+ */
+final class JsonTree {
+
+  private JsonTree() {}
+
+  static Object read(JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+      case BEGIN_OBJECT:
+        final Map<String, Object> object = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+          object.put(reader.nextName(), read(reader));
+        }
+        reader.endObject();
+        return object;
+      case BEGIN_ARRAY:
+        final List<Object> array = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          array.add(read(reader));
+        }
+        reader.endArray();
+        return array;
+      case STRING:
+        return reader.nextString();
+      case NUMBER:
+        return new NumberText(reader.nextNumber());
+      case BOOLEAN:
+        return reader.nextBoolean();
+      case NULL:
+        reader.nextNull();
+        return null;
+      default:
+        throw new JsonSyntaxException("Expected a value, but got " + reader.peek());
+    }
+  }
+
+  static Object parse(String json) throws IOException {
+    return read(new JsonReader(new StringReader(json)));
+  }
+
+  static void write(JsonWriter writer, Object value) throws IOException {
+    if (value instanceof Map) {
+      writer.beginObject();
+      for (Map.Entry<?, ?> field : ((Map<?, ?>) value).entrySet()) {
+        writer.name(String.valueOf(field.getKey()));
+        write(writer, field.getValue());
+      }
+      writer.endObject();
+    } else if (value instanceof List) {
+      writer.beginArray();
+      for (Object element : (List<?>) value) {
+        write(writer, element);
+      }
+      writer.endArray();
+    } else if (value instanceof Boolean) {
+      writer.value((Boolean) value);
+    } else if (value instanceof Number) {
+      writer.numberValue(value.toString());
+    } else if (value == null) {
+      writer.nullValue();
+    } else {
+      writer.value(value.toString());
+    }
+  }
+
+  static String toJson(Object value, String indent) {
+    final StringWriter json = new StringWriter();
+    try {
+      write(new JsonWriter(json).setIndent(indent), value);
+    } catch (IOException e) {
+      throw new IllegalStateException("StringWriter never fails", e);
+    }
+    return json.toString();
+  }
+
+  /**
+   * Mountebank compares all values as strings, so that e.g. {@code 1} equals {@code "1"}.
+   *
+   * @return the value of a string, number or boolean as string, null for anything else
+   */
+  static String asString(Object value) {
+    return value instanceof String || value instanceof Number || value instanceof Boolean
+        ? value.toString()
+        : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  static Map<String, Object> asObject(Object value) {
+    return value instanceof Map ? (Map<String, Object>) value : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  static List<Object> asArray(Object value) {
+    return value instanceof List ? (List<Object>) value : null;
+  }
+
+  /** Number in its original notation. */
+  static final class NumberText extends Number {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String text;
+
+    NumberText(String text) {
+      this.text = text;
+    }
+
+    @Override
+    public int intValue() {
+      return (int) doubleValue();
+    }
+
+    @Override
+    public long longValue() {
+      return (long) doubleValue();
+    }
+
+    @Override
+    public float floatValue() {
+      return (float) doubleValue();
+    }
+
+    @Override
+    public double doubleValue() {
+      return Double.parseDouble(text);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof NumberText && text.equals(((NumberText) o).text);
+    }
+
+    @Override
+    public int hashCode() {
+      return text.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return text;
+    }
+  }
+}
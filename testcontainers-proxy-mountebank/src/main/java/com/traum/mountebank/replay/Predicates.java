@@ -0,0 +1,259 @@
+package com.traum.mountebank.replay;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates the predicates which mountebank's proxies generate from {@code predicateGenerators}:
+ * {@code equals} and {@code deepEquals} on request fields, optionally with {@code caseSensitive}
+ * and {@code except}, combined by {@code and}, {@code or} and {@code not}. As in mountebank, values
+ * are compared as strings and ignoring case by default. Other predicates are rejected by {@link
+ * #validate(Object)}, so that a replay never silently answers differently than mountebank.
+ */
+final class Predicates {
+
+  private static final Set<String> OPERATORS = Set.of("equals", "deepEquals", "and", "or", "not");
+  private static final Set<String> OPTIONS = Set.of("caseSensitive", "except");
+
+  private Predicates() {}
+
+  /** @throws IllegalArgumentException if the predicate isn't supported */
+  static void validate(Object predicate) {
+    final Map<String, Object> fields = JsonTree.asObject(predicate);
+    if (fields == null) {
+      throw new IllegalArgumentException("predicate must be an object, but is " + predicate);
+    }
+    int operators = 0;
+    for (Map.Entry<String, Object> field : fields.entrySet()) {
+      final String key = field.getKey();
+      if (OPTIONS.contains(key)) {
+        continue;
+      }
+      if (!OPERATORS.contains(key)) {
+        throw new IllegalArgumentException("predicate '" + key + "' is not supported");
+      }
+      operators++;
+      switch (key) {
+        case "and":
+        case "or":
+          final List<Object> predicates = JsonTree.asArray(field.getValue());
+          if (predicates == null) {
+            throw new IllegalArgumentException("predicate '" + key + "' requires an array");
+          }
+          predicates.forEach(Predicates::validate);
+          break;
+        case "not":
+          validate(field.getValue());
+          break;
+        default:
+          if (JsonTree.asObject(field.getValue()) == null) {
+            throw new IllegalArgumentException("predicate '" + key + "' requires an object");
+          }
+      }
+    }
+    if (operators != 1) {
+      throw new IllegalArgumentException("predicate requires exactly one operator: " + predicate);
+    }
+  }
+
+  /** @param request with the fields of mountebank's HTTP requests, e.g. method, path and query */
+  static boolean matches(Map<String, Object> predicate, Map<String, Object> request) {
+    final boolean caseSensitive = Boolean.TRUE.equals(predicate.get("caseSensitive"));
+    final String except = JsonTree.asString(predicate.get("except"));
+    final Pattern exceptPattern =
+        except == null || except.isEmpty()
+            ? null
+            : Pattern.compile(except, caseSensitive ? 0 : Pattern.CASE_INSENSITIVE);
+
+    for (Map.Entry<String, Object> field : predicate.entrySet()) {
+      switch (field.getKey()) {
+        case "equals":
+          return matchesFields(field.getValue(), request, caseSensitive, exceptPattern, false);
+        case "deepEquals":
+          return matchesFields(field.getValue(), request, caseSensitive, exceptPattern, true);
+        case "and":
+          return JsonTree.asArray(field.getValue())
+              .stream()
+              .allMatch(operand -> matches(JsonTree.asObject(operand), request));
+        case "or":
+          return JsonTree.asArray(field.getValue())
+              .stream()
+              .anyMatch(operand -> matches(JsonTree.asObject(operand), request));
+        case "not":
+          return !matches(JsonTree.asObject(field.getValue()), request);
+        default:
+          // an option
+      }
+    }
+    return false;
+  }
+
+  /** Only the fields named by the predicate are compared. */
+  private static boolean matchesFields(
+      Object expectedFields,
+      Map<String, Object> request,
+      boolean caseSensitive,
+      Pattern except,
+      boolean deep) {
+    final Map<String, Object> expected =
+        JsonTree.asObject(normalize(expectedFields, caseSensitive, null));
+    for (Map.Entry<String, Object> field : expected.entrySet()) {
+      // request fields are named in lower case
+      final Object actualValue =
+          normalize(
+              request.get(field.getKey().toLowerCase(Locale.ROOT)), caseSensitive, except);
+      if (deep
+          ? !deepEquals(field.getValue(), actualValue)
+          : !equals(field.getValue(), actualValue)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Objects and arrays match if they contain the expected fields and elements. */
+  private static boolean equals(Object expected, Object actual) {
+    final Map<String, Object> expectedObject = JsonTree.asObject(expected);
+    if (expectedObject != null) {
+      final Map<String, Object> actualObject = JsonTree.asObject(parseIfJson(actual));
+      return actualObject != null
+          && expectedObject
+              .entrySet()
+              .stream()
+              .allMatch(field -> equals(field.getValue(), actualObject.get(field.getKey())));
+    }
+    final List<Object> expectedArray = JsonTree.asArray(expected);
+    if (expectedArray != null) {
+      final List<Object> actualArray = asArray(parseIfJson(actual));
+      return expectedArray
+          .stream()
+          .allMatch(element -> actualArray.stream().anyMatch(other -> equals(element, other)));
+    }
+    final List<Object> actualArray = JsonTree.asArray(actual);
+    if (actualArray != null) {
+      // e.g. a repeated query parameter
+      return actualArray.stream().anyMatch(element -> equals(expected, element));
+    }
+    return expected == null ? actual == null : expected.equals(actual);
+  }
+
+  /** Objects match if they have the same fields, arrays if they have the same elements. */
+  private static boolean deepEquals(Object expected, Object actual) {
+    final Map<String, Object> expectedObject = JsonTree.asObject(expected);
+    if (expectedObject != null) {
+      final Map<String, Object> actualObject = JsonTree.asObject(parseIfJson(actual));
+      return actualObject != null
+          && expectedObject.keySet().equals(actualObject.keySet())
+          && expectedObject
+              .entrySet()
+              .stream()
+              .allMatch(field -> deepEquals(field.getValue(), actualObject.get(field.getKey())));
+    }
+    final List<Object> expectedArray = JsonTree.asArray(expected);
+    if (expectedArray != null) {
+      final List<Object> unmatched = new ArrayList<>(asArray(parseIfJson(actual)));
+      if (unmatched.size() != expectedArray.size()) {
+        return false;
+      }
+      for (Object element : expectedArray) {
+        if (!removeFirstMatch(unmatched, element)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return expected == null ? actual == null : expected.equals(actual);
+  }
+
+  private static List<Object> asArray(Object value) {
+    final List<Object> array = JsonTree.asArray(value);
+    return array != null ? array : value == null ? List.of() : List.of(value);
+  }
+
+  /**
+   * Predicates on objects also apply to JSON in strings, e.g. bodies. The string is normalized
+   * already, only its scalars are turned into strings.
+   */
+  private static Object parseIfJson(Object value) {
+    if (value instanceof String) {
+      final String text = ((String) value).trim();
+      if (text.startsWith("{") || text.startsWith("[")) {
+        try {
+          return normalize(JsonTree.parse(text), true, null);
+        } catch (IOException e) {
+          return value;
+        }
+      }
+    }
+    return value;
+  }
+
+  /**
+   * @return a copy with all scalars as strings, with {@code except} removed and, unless case
+   *     sensitive, names and values in lower case
+   */
+  private static Object normalize(Object value, boolean caseSensitive, Pattern except) {
+    final Map<String, Object> object = JsonTree.asObject(value);
+    if (object != null) {
+      final Map<String, Object> normalized = new LinkedHashMap<>();
+      object.forEach(
+          (name, fieldValue) ->
+              normalized.put(
+                  caseSensitive ? name : name.toLowerCase(Locale.ROOT),
+                  normalize(fieldValue, caseSensitive, except)));
+      return normalized;
+    }
+    final List<Object> array = JsonTree.asArray(value);
+    if (array != null) {
+      final List<Object> normalized = new ArrayList<>(array.size());
+      array.forEach(element -> normalized.add(normalize(element, caseSensitive, except)));
+      return normalized;
+    }
+    String text = JsonTree.asString(value);
+    if (text == null) {
+      return null;
+    }
+    if (except != null) {
+      text = except.matcher(text).replaceAll("");
+    }
+    return caseSensitive ? text : text.toLowerCase(Locale.ROOT);
+  }
+
+  /** Removes the first element which deep-equals the expected one. */
+  private static boolean removeFirstMatch(List<Object> elements, Object expected) {
+    for (Iterator<Object> iterator = elements.iterator(); iterator.hasNext(); ) {
+      if (deepEquals(expected, iterator.next())) {
+        iterator.remove();
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,202 @@
+package com.traum.mountebank.replay;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.json.JsonReader;
+import com.traum.mountebank.ImposterFiles;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Checks requests captured by mountebank, e.g. in a {@code recordImposters} file, against replay
+ * imposters without starting a proxy. A request which no stub would serve is a miss: a test
+ * replaying the imposters would get the default response instead of a recorded one.
+ *
+ * <p>Usage: {@code java com.traum.mountebank.replay.ReplayMissReport <replay imposters> <captured
+ * imposters>}, which prints the misses and exits with status 1 if there are any.
+ */
+public final class ReplayMissReport {
+
+  private final int requests;
+  private final List<Miss> misses;
+
+  private ReplayMissReport(int requests, List<Miss> misses) {
+    this.requests = requests;
+    this.misses = Collections.unmodifiableList(misses);
+  }
+
+  /** @param capturedImposters gzip compressed if the name ends with {@code .gz} */
+  public static ReplayMissReport check(ImposterIndex index, Path capturedImposters)
+      throws IOException {
+    try (InputStream input = ImposterFiles.newInputStream(capturedImposters)) {
+      return check(index, input);
+    }
+  }
+
+  /**
+   * Streams the captured imposters, only the requests of a single imposter are held in memory.
+   */
+  public static ReplayMissReport check(ImposterIndex index, InputStream capturedImposters)
+      throws IOException {
+    final List<Miss> misses = new ArrayList<>();
+    int requests = 0;
+
+    final JsonReader reader = new JsonReader(capturedImposters);
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (!"imposters".equals(reader.nextName())) {
+        reader.skipValue();
+        continue;
+      }
+      reader.beginArray();
+      while (reader.hasNext()) {
+        String port = null;
+        List<Object> captured = List.of();
+        reader.beginObject();
+        while (reader.hasNext()) {
+          final String name = reader.nextName();
+          if (name.equals("port")) {
+            port = JsonTree.asString(JsonTree.read(reader));
+          } else if (name.equals("requests")) {
+            captured = JsonTree.asArray(JsonTree.read(reader));
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+        if (port == null || captured == null) {
+          continue;
+        }
+
+        for (Object element : captured) {
+          final Map<String, Object> request = JsonTree.asObject(element);
+          if (request == null) {
+            continue;
+          }
+          requests++;
+          final int imposterPort = Integer.parseInt(port);
+          if (index.findStub(imposterPort, request).isEmpty()) {
+            misses.add(
+                new Miss(imposterPort, request, index.hasStubsForPath(imposterPort, request)));
+          }
+        }
+      }
+      reader.endArray();
+    }
+    reader.endObject();
+    return new ReplayMissReport(requests, misses);
+  }
+
+  /** @return number of captured requests */
+  public int getRequests() {
+    return requests;
+  }
+
+  public List<Miss> getMisses() {
+    return misses;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder report = new StringBuilder();
+    misses.forEach(miss -> report.append("MISS ").append(miss).append('\n'));
+    return report
+        .append(misses.size())
+        .append(" of ")
+        .append(requests)
+        .append(" captured requests miss the replay imposters")
+        .toString();
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println(
+          "Usage: java "
+              + ReplayMissReport.class.getName()
+              + " <replay imposters> <captured imposters>");
+      System.exit(2);
+    }
+    final ReplayMissReport report =
+        check(ImposterIndex.read(Path.of(args[0])), Path.of(args[1]));
+    System.out.println(report);
+    System.exit(report.getMisses().isEmpty() ? 0 : 1);
+  }
+
+  /** Captured request which no stub would serve. */
+  public static final class Miss {
+
+    private final int port;
+    private final Map<String, Object> request;
+    private final boolean pathKnown;
+
+    private Miss(int port, Map<String, Object> request, boolean pathKnown) {
+      this.port = port;
+      this.request = request;
+      this.pathKnown = pathKnown;
+    }
+
+    public int getPort() {
+      return port;
+    }
+
+    /** @return the request as captured by mountebank */
+    public Map<String, Object> getRequest() {
+      return Collections.unmodifiableMap(request);
+    }
+
+    /**
+     * @return true if stubs exist for the method and path of the request, but other fields like
+     *     the query don't match
+     */
+    public boolean isPathKnown() {
+      return pathKnown;
+    }
+
+    /** @return e.g. {@code 5050 GET /users?page=2 (path known)} */
+    @Override
+    public String toString() {
+      final StringJoiner query = new StringJoiner("&", "?", "").setEmptyValue("");
+      final Map<String, Object> parameters = JsonTree.asObject(request.get("query"));
+      if (parameters != null) {
+        parameters.forEach(
+            (name, value) -> {
+              final List<Object> values = JsonTree.asArray(value);
+              for (Object element : values == null ? Collections.singletonList(value) : values) {
+                query.add(name + "=" + JsonTree.asString(element));
+              }
+            });
+      }
+      return port
+          + " "
+          + request.get("method")
+          + " "
+          + request.get("path")
+          + query
+          + (pathKnown ? " (path known)" : "");
+    }
+  }
+}
@@ -0,0 +1,431 @@
+package com.traum.mountebank.replay;
+
+/*-
+ * #%L
+ * testcontainers-proxy-mountebank
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.traum.json.JsonReader;
+import com.traum.json.JsonSyntaxException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process replacement for mountebank which replays recorded imposters without Docker. It serves
+ * the subset of mountebank's admin API which {@code MountebankProxy} uses, and HTTP imposters which
+ * answer with {@code is} responses selected by the predicates mountebank's proxies record (see
+ * {@link Predicates}). Imposters which need anything else, e.g. proxies to record responses or
+ * injected JavaScript, are rejected on import.
+ *
+ * <p>Every imposter port is served on a free port of the loopback interface, which stays the same
+ * until the server is stopped.
+ */
+public class ReplayServer implements AutoCloseable {
+
+  /** Managed by the HTTP server, which calculates them from the actual body. */
+  private static final Set<String> HOP_BY_HOP_HEADERS =
+      Set.of("content-length", "transfer-encoding", "connection");
+
+  private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+  private final Collection<Integer> imposterPorts;
+  private final Map<Integer, Imposter> imposters = new ConcurrentHashMap<>();
+
+  /** Guarded by {@code this}. */
+  private final Map<Integer, HttpServer> listeners = new HashMap<>();
+
+  private ExecutorService executor;
+  private HttpServer api;
+
+  /** @param imposterPorts served from the start, others as soon as imposters use them */
+  public ReplayServer(Collection<Integer> imposterPorts) {
+    this.imposterPorts = List.copyOf(imposterPorts);
+  }
+
+  public synchronized void start() throws IOException {
+    if (api != null) {
+      return;
+    }
+    executor =
+        Executors.newCachedThreadPool(
+            runnable -> {
+              final Thread thread =
+                  new Thread(runnable, "mountebank-replay-" + THREAD_NUMBER.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    try {
+      api = createServer();
+      api.createContext("/imposters", this::handleApi);
+      api.start();
+      for (Integer imposterPort : imposterPorts) {
+        listen(imposterPort);
+      }
+    } catch (IOException | RuntimeException e) {
+      stop();
+      throw e;
+    }
+  }
+
+  public synchronized void stop() {
+    if (api != null) {
+      api.stop(0);
+      api = null;
+    }
+    listeners.values().forEach(listener -> listener.stop(0));
+    listeners.clear();
+    imposters.clear();
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  public synchronized boolean isRunning() {
+    return api != null;
+  }
+
+  @Override
+  public void close() {
+    stop();
+  }
+
+  /** @return the address all ports are bound to */
+  public String getHost() {
+    return InetAddress.getLoopbackAddress().getHostAddress();
+  }
+
+  public synchronized int getApiPort() {
+    if (api == null) {
+      throw new IllegalStateException("server is not running");
+    }
+    return api.getAddress().getPort();
+  }
+
+  /** @return the local port serving the imposter port */
+  public synchronized int getImposterPort(int imposterPort) throws IllegalArgumentException {
+    final HttpServer listener = listeners.get(imposterPort);
+    if (listener == null) {
+      throw new IllegalArgumentException("No listener for imposter port " + imposterPort);
+    }
+    return listener.getAddress().getPort();
+  }
+
+  private HttpServer createServer() throws IOException {
+    final HttpServer server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.setExecutor(executor);
+    return server;
+  }
+
+  private synchronized void listen(int imposterPort) throws IOException {
+    if (listeners.containsKey(imposterPort)) {
+      return;
+    }
+    final HttpServer listener = createServer();
+    listener.createContext("/", exchange -> serve(imposterPort, exchange));
+    listener.start();
+    listeners.put(imposterPort, listener);
+  }
+
+  private void handleApi(HttpExchange exchange) throws IOException {
+    try {
+      final String method = exchange.getRequestMethod();
+      final String[] segments = exchange.getRequestURI().getPath().split("/");
+      if (segments.length == 2) {
+        handleImposters(method, exchange);
+      } else if (segments.length <= 4 && segments[2].matches("\\d+")) {
+        final String resource = segments.length == 4 ? segments[3] : "";
+        handleImposter(method, Integer.parseInt(segments[2]), resource, exchange);
+      } else {
+        respondError(exchange, 404, "no such resource");
+      }
+    } catch (IllegalArgumentException | JsonSyntaxException e) {
+      respondError(exchange, 400, e.getMessage());
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /** {@code /imposters} */
+  private void handleImposters(String method, HttpExchange exchange) throws IOException {
+    switch (method) {
+      case "GET":
+        respond(exchange, 200, export());
+        break;
+      case "PUT":
+        final List<Object> definitions =
+            JsonTree.asArray(JsonTree.asObject(readJson(exchange)).get("imposters"));
+        if (definitions == null) {
+          throw new IllegalArgumentException("imposters must be an array");
+        }
+        final List<Imposter> created = new ArrayList<>();
+        for (Object definition : definitions) {
+          created.add(Imposter.of(definition));
+        }
+        synchronized (this) {
+          for (Imposter imposter : created) {
+            listen(imposter.getPort());
+          }
+          imposters.clear();
+          created.forEach(imposter -> imposters.put(imposter.getPort(), imposter));
+        }
+        respond(exchange, 200, Map.of("imposters", summarize(created)));
+        break;
+      case "POST":
+        final Imposter imposter = Imposter.of(readJson(exchange));
+        synchronized (this) {
+          if (imposters.containsKey(imposter.getPort())) {
+            throw new IllegalArgumentException("port " + imposter.getPort() + " is in use");
+          }
+          listen(imposter.getPort());
+          imposters.put(imposter.getPort(), imposter);
+        }
+        respond(exchange, 201, imposter.toJson());
+        break;
+      case "DELETE":
+        final Map<String, Object> deleted;
+        synchronized (this) {
+          deleted = export();
+          imposters.clear();
+        }
+        respond(exchange, 200, deleted);
+        break;
+      default:
+        respondError(exchange, 405, "method " + method + " is not allowed");
+    }
+  }
+
+  /** {@code /imposters/{port}} and the {@code stubs} and {@code savedRequests} below */
+  private void handleImposter(String method, int port, String resource, HttpExchange exchange)
+      throws IOException {
+    final Imposter imposter = imposters.get(port);
+    switch (method + " " + resource) {
+      case "GET ":
+        if (imposter == null) {
+          respondError(exchange, 404, "no imposter on port " + port);
+        } else {
+          respond(exchange, 200, imposter.toJson());
+        }
+        break;
+      case "DELETE ":
+        // like mountebank, deleting a missing imposter succeeds
+        final Imposter deleted = imposters.remove(port);
+        respond(exchange, 200, deleted == null ? Map.of() : deleted.toJson());
+        break;
+      case "PUT stubs":
+        if (imposter == null) {
+          respondError(exchange, 404, "no imposter on port " + port);
+        } else {
+          imposter.setStubs(JsonTree.asObject(readJson(exchange)).get("stubs"));
+          respond(exchange, 200, imposter.toJson());
+        }
+        break;
+      case "DELETE savedRequests":
+        if (imposter != null) {
+          imposter.clearRequests();
+        }
+        respond(exchange, 200, imposter == null ? Map.of() : imposter.toJson());
+        break;
+      default:
+        respondError(exchange, 404, "no such resource");
+    }
+  }
+
+  private void serve(int imposterPort, HttpExchange exchange) throws IOException {
+    try {
+      final Imposter imposter = imposters.get(imposterPort);
+      if (imposter == null) {
+        respondError(exchange, 404, "no imposter on port " + imposterPort);
+        return;
+      }
+      final Imposter.Response response = imposter.respond(toRequest(exchange));
+      if (response.getWait() > 0) {
+        Thread.sleep(response.getWait());
+      }
+
+      final Headers headers = exchange.getResponseHeaders();
+      response
+          .getHeaders()
+          .forEach(
+              (name, value) -> {
+                if (HOP_BY_HOP_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                  return;
+                }
+                final List<Object> values = JsonTree.asArray(value);
+                if (values == null) {
+                  headers.add(name, String.valueOf(JsonTree.asString(value)));
+                } else {
+                  values.forEach(element -> headers.add(name, JsonTree.asString(element)));
+                }
+              });
+      final byte[] body = toBytes(response);
+      final boolean hasBody = body.length > 0 && !exchange.getRequestMethod().equals("HEAD");
+      exchange.sendResponseHeaders(response.getStatusCode(), hasBody ? body.length : -1);
+      if (hasBody) {
+        try (OutputStream output = exchange.getResponseBody()) {
+          output.write(body);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /** @return the request with the fields of mountebank's HTTP requests */
+  private static Map<String, Object> toRequest(HttpExchange exchange) throws IOException {
+    final Map<String, Object> headers = new LinkedHashMap<>();
+    // as in Node.js, repeated headers are joined
+    exchange
+        .getRequestHeaders()
+        .forEach((name, values) -> headers.put(name, String.join(", ", values)));
+
+    final Map<String, Object> request = new LinkedHashMap<>();
+    request.put("requestFrom", exchange.getRemoteAddress().getHostString());
+    request.put("method", exchange.getRequestMethod());
+    request.put("path", exchange.getRequestURI().getRawPath());
+    request.put("query", parseQuery(exchange.getRequestURI().getRawQuery()));
+    request.put("headers", headers);
+    try (InputStream body = exchange.getRequestBody()) {
+      request.put("body", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+    }
+    request.put("ip", exchange.getRemoteAddress().getAddress().getHostAddress());
+    request.put("timestamp", Instant.now().toString());
+    return request;
+  }
+
+  /** @return parameters with their decoded values, an array if repeated */
+  private static Map<String, Object> parseQuery(String rawQuery) {
+    final Map<String, Object> query = new LinkedHashMap<>();
+    if (rawQuery == null || rawQuery.isEmpty()) {
+      return query;
+    }
+    for (String parameter : rawQuery.split("&")) {
+      if (parameter.isEmpty()) {
+        continue;
+      }
+      final int separator = parameter.indexOf('=');
+      final String name =
+          URLDecoder.decode(
+              separator < 0 ? parameter : parameter.substring(0, separator),
+              StandardCharsets.UTF_8);
+      final String value =
+          separator < 0
+              ? ""
+              : URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8);
+      query.merge(
+          name,
+          value,
+          (previous, next) -> {
+            final List<Object> values = new ArrayList<>();
+            final List<Object> previousValues = JsonTree.asArray(previous);
+            if (previousValues == null) {
+              values.add(previous);
+            } else {
+              values.addAll(previousValues);
+            }
+            values.add(next);
+            return values;
+          });
+    }
+    return query;
+  }
+
+  private static byte[] toBytes(Imposter.Response response) {
+    final Object body = response.getBody();
+    if (body == null) {
+      return new byte[0];
+    }
+    if (body instanceof String) {
+      return response.isBinary()
+          ? Base64.getMimeDecoder().decode((String) body)
+          : ((String) body).getBytes(StandardCharsets.UTF_8);
+    }
+    // mountebank pretty-prints JSON bodies
+    return JsonTree.toJson(body, "    ").getBytes(StandardCharsets.UTF_8);
+  }
+
+  private Map<String, Object> export() {
+    final List<Object> exported = new ArrayList<>();
+    imposters.values().forEach(imposter -> exported.add(imposter.toJson()));
+    return Map.of("imposters", exported);
+  }
+
+  private static List<Object> summarize(List<Imposter> imposters) {
+    final List<Object> summaries = new ArrayList<>();
+    for (Imposter imposter : imposters) {
+      final Map<String, Object> summary = new LinkedHashMap<>();
+      summary.put("protocol", "http");
+      summary.put("port", new JsonTree.NumberText(String.valueOf(imposter.getPort())));
+      summaries.add(summary);
+    }
+    return summaries;
+  }
+
+  private static Object readJson(HttpExchange exchange) throws IOException {
+    try (JsonReader reader = new JsonReader(exchange.getRequestBody())) {
+      final Object json = JsonTree.read(reader);
+      if (JsonTree.asObject(json) == null) {
+        throw new IllegalArgumentException("request body must be an object");
+      }
+      return json;
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int statusCode, Object json)
+      throws IOException {
+    final byte[] body = JsonTree.toJson(json, "  ").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(statusCode, body.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(body);
+    }
+  }
+
+  private static void respondError(HttpExchange exchange, int statusCode, String message)
+      throws IOException {
+    final Map<String, Object> error = new LinkedHashMap<>();
+    error.put("code", statusCode == 400 ? "bad data" : "no such resource");
+    error.put("message", String.valueOf(message));
+    respond(exchange, statusCode, Map.of("errors", List.of(error)));
+  }
+}
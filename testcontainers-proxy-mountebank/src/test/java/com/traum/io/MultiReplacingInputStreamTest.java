@@ -0,0 +1,78 @@
+package com.traum.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class MultiReplacingInputStreamTest {
+
+  @Test
+  void appliesAllRulesInOnePass() throws IOException {
+    final Replacements replacements =
+        Replacements.of("api.github.com", "localhost:5050")
+            .with("token=s3cr3t", "token=***")
+            .with("&utm_source=newsletter", "");
+
+    assertEquals(
+        "https://localhost:5050/users?token=***&page=2",
+        replace(
+            "https://api.github.com/users?token=s3cr3t&utm_source=newsletter&page=2",
+            replacements));
+  }
+
+  @Test
+  void replacementsAreNotRescanned() throws IOException {
+    assertEquals("ba", replace("ab", Replacements.of("a", "b").with("b", "a")));
+  }
+
+  @Test
+  void earliestEndingOccurrenceWins() throws IOException {
+    assertEquals("a#d", replace("abcd", Replacements.of("abcd", "!").with("bc", "#")));
+    assertEquals("!", replace("abc", Replacements.of("abc", "!").with("bc", "#")));
+    assertEquals("x!y", replace("xabcy", Replacements.of("c", "#").with("abc", "!")));
+  }
+
+  @Test
+  void laterRuleForSameSearchWins() throws IOException {
+    assertEquals("2", replace("a", Replacements.of("a", "1").with("a", "2")));
+  }
+
+  @Test
+  void emptyReplacementsPassThrough() throws IOException {
+    assertEquals("unchanged", replace("unchanged", Replacements.none()));
+  }
+
+  @Test
+  void singleRuleMatchesReplacingInputStream() throws IOException {
+    final Random random = new Random(7);
+    final byte[] input = new byte[50_000];
+    for (int i = 0; i < input.length; i++) {
+      input[i] = (byte) "aab-".charAt(random.nextInt(4));
+    }
+
+    for (String search : new String[] {"ab", "aab", "aaba", "b-a"}) {
+      final byte[] expected =
+          new ReplacingInputStream(new ByteArrayInputStream(input), search, "#").readAllBytes();
+      final byte[] actual =
+          new MultiReplacingInputStream(
+                  new ByteArrayInputStream(input), Replacements.of(search, "#"))
+              .readAllBytes();
+
+      assertArrayEquals(expected, actual, search);
+    }
+  }
+
+  private static String replace(String input, Replacements replacements) throws IOException {
+    try (InputStream stream =
+        new MultiReplacingInputStream(
+            new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), replacements)) {
+      return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
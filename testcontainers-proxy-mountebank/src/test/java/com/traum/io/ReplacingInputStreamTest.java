@@ -0,0 +1,126 @@
+package com.traum.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class ReplacingInputStreamTest {
+
+  @Test
+  void replacesAllOccurrences() throws IOException {
+    assertEquals(
+        "{\"recordRequests\": true, \"recordRequests\": true}",
+        replace(
+            "{\"recordRequests\": false, \"recordRequests\": false}",
+            "\"recordRequests\": false",
+            "\"recordRequests\": true"));
+  }
+
+  @Test
+  void handlesSelfOverlappingSearch() throws IOException {
+    assertEquals("a#", replace("aaab", "aab", "#"));
+    assertEquals("#aa", replace("aabaa", "aab", "#"));
+    assertEquals("##a", replace("aaaaa", "aa", "#"));
+  }
+
+  @Test
+  void emitsPartialMatchAtEndOfStream() throws IOException {
+    assertEquals("xyzab", replace("xyzab", "abc", "#"));
+    assertEquals("", replace("", "abc", "#"));
+  }
+
+  @Test
+  void matchesAcrossChunkBoundaries() throws IOException {
+    final Random random = new Random(42);
+    final byte[] alphabet = "ab\"\u00e9".getBytes(StandardCharsets.UTF_8);
+    final byte[] input = new byte[100_000];
+    for (int i = 0; i < input.length; i++) {
+      input[i] = alphabet[random.nextInt(alphabet.length)];
+    }
+    final String text = new String(input, StandardCharsets.ISO_8859_1);
+
+    for (String search : new String[] {"ab", "aab", "abab", "\"a\"", "\u00c3\u00a9a"}) {
+      final byte[] expected =
+          text.replace(search, "<replaced>").getBytes(StandardCharsets.ISO_8859_1);
+      final InputStream stream =
+          new ReplacingInputStream(
+              new TricklingInputStream(input),
+              search.getBytes(StandardCharsets.ISO_8859_1),
+              "<replaced>".getBytes(StandardCharsets.ISO_8859_1));
+
+      assertArrayEquals(expected, stream.readAllBytes(), search);
+    }
+  }
+
+  @Test
+  void singleByteReadsMatchBulkReads() throws IOException {
+    final byte[] input = "--ab--aab--abab--".getBytes(StandardCharsets.UTF_8);
+    final InputStream stream =
+        new ReplacingInputStream(new ByteArrayInputStream(input), "ab", "ü");
+
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    for (int b = stream.read(); b != -1; b = stream.read()) {
+      output.write(b);
+    }
+    assertEquals("--ü--aü--üü--", output.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void propagatesExceptionsOfUnderlyingStream() {
+    final InputStream failing =
+        new InputStream() {
+          private int remaining = 20_000;
+
+          @Override
+          public int read() throws IOException {
+            if (remaining == 0) {
+              throw new IOException("connection reset");
+            }
+            remaining--;
+            return 'x';
+          }
+        };
+
+    assertThrows(
+        IOException.class, () -> new ReplacingInputStream(failing, "ab", "c").readAllBytes());
+  }
+
+  @Test
+  void rejectsEmptySearch() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new ReplacingInputStream(InputStream.nullInputStream(), "", "x"));
+  }
+
+  private static String replace(String input, String search, String replacement)
+      throws IOException {
+    try (InputStream stream =
+        new ReplacingInputStream(
+            new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+            search,
+            replacement)) {
+      return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /** Hands out at most a few bytes per read to exercise partial matches between chunks. */
+  private static class TricklingInputStream extends ByteArrayInputStream {
+
+    TricklingInputStream(byte[] buf) {
+      super(buf);
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+      return super.read(b, off, Math.min(len, 1 + pos % 7));
+    }
+  }
+}
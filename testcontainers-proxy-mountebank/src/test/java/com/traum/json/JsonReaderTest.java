@@ -0,0 +1,82 @@
+package com.traum.json;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.jupiter.api.Test;
+
+class JsonReaderTest {
+
+  @Test
+  void readsAllTokens() throws IOException {
+    final JsonReader reader =
+        new JsonReader(
+            new StringReader(
+                "{\"a\": [1, -2.50, 3e+2, true, false, null],"
+                    + " \"b\": {}, \"c\": \"\\u00e4\\n\\\"\"}"));
+
+    reader.beginObject();
+    assertEquals("a", reader.nextName());
+    reader.beginArray();
+    assertEquals("1", reader.nextNumber());
+    assertEquals("-2.50", reader.nextNumber());
+    assertEquals("3e+2", reader.nextNumber());
+    assertTrue(reader.nextBoolean());
+    assertFalse(reader.nextBoolean());
+    reader.nextNull();
+    assertFalse(reader.hasNext());
+    reader.endArray();
+    assertEquals("b", reader.nextName());
+    reader.beginObject();
+    reader.endObject();
+    assertEquals("c", reader.nextName());
+    assertEquals("ä\n\"", reader.nextString());
+    reader.endObject();
+    assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+  }
+
+  @Test
+  void readsAcrossBufferBoundaries() throws IOException {
+    final String value = "x".repeat(20_000) + "\\\"";
+    final JsonReader reader =
+        new JsonReader(new StringReader("[\"" + value + "\", 12345678901234567890]"));
+
+    reader.beginArray();
+    assertEquals("x".repeat(20_000) + "\"", reader.nextString());
+    assertEquals("12345678901234567890", reader.nextNumber());
+    reader.endArray();
+  }
+
+  @Test
+  void skipsNestedValues() throws IOException {
+    final JsonReader reader =
+        new JsonReader(new StringReader("{\"skipped\": {\"a\": [1, {\"b\": []}]}, \"kept\": 1}"));
+
+    reader.beginObject();
+    reader.skipValue();
+    assertEquals("kept", reader.nextName());
+    assertEquals(1, reader.getDepth());
+    assertEquals("1", reader.nextNumber());
+    reader.endObject();
+    assertEquals(0, reader.getDepth());
+  }
+
+  @Test
+  void rejectsMalformedInput() {
+    final String[] inputs = {"{\"a\" 1}", "[1,]", "[01]", "[1.]", "{\"a\": tru}", "[1] 2"};
+    for (String json : inputs) {
+      assertThrows(
+          JsonSyntaxException.class,
+          () -> {
+            final JsonReader reader = new JsonReader(new StringReader(json));
+            reader.skipValue();
+            reader.peek();
+          },
+          json);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.traum.json;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.junit.jupiter.api.Test;
+
+class JsonWriterTest {
+
+  @Test
+  void writesCompactJson() throws IOException {
+    final StringWriter output = new StringWriter();
+    new JsonWriter(output)
+        .beginObject()
+        .name("a")
+        .beginArray()
+        .numberValue("1.50")
+        .value(true)
+        .nullValue()
+        .value("\"\\\n\u0001")
+        .endArray()
+        .name("b")
+        .beginObject()
+        .endObject()
+        .endObject();
+
+    assertEquals("{\"a\":[1.50,true,null,\"\\\"\\\\\\n\\u0001\"],\"b\":{}}", output.toString());
+  }
+
+  @Test
+  void indentsLikeJavaScript() throws IOException {
+    final StringWriter output = new StringWriter();
+    new JsonWriter(output)
+        .setIndent("  ")
+        .copyValue(new JsonReader(new StringReader("{\"a\":[1,{}],\"b\":[],\"c\":{\"d\":null}}")));
+
+    assertEquals(
+        "{\n"
+            + "  \"a\": [\n"
+            + "    1,\n"
+            + "    {}\n"
+            + "  ],\n"
+            + "  \"b\": [],\n"
+            + "  \"c\": {\n"
+            + "    \"d\": null\n"
+            + "  }\n"
+            + "}",
+        output.toString());
+  }
+}
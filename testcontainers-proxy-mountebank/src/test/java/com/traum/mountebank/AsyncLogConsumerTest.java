@@ -0,0 +1,126 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.output.OutputFrame;
+
+class AsyncLogConsumerTest {
+
+  private final List<OutputFrame> delivered = new CopyOnWriteArrayList<>();
+  private final CountDownLatch blocked = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Test
+  void deliversFramesInOrder() throws InterruptedException {
+    final AsyncLogConsumer consumer = new AsyncLogConsumer(delivered::add);
+
+    IntStream.range(0, 100).mapToObj(AsyncLogConsumerTest::frame).forEach(consumer::accept);
+
+    awaitDelivery(consumer, 100);
+    assertEquals(range(0, 100), texts());
+    assertEquals(0, consumer.getDroppedFrames());
+  }
+
+  @Test
+  void dropsNewestFrames() throws InterruptedException {
+    final AsyncLogConsumer consumer =
+        floodWhileBlocked(AsyncLogConsumer.OverflowPolicy.DROP_NEWEST);
+
+    awaitDelivery(consumer, 5);
+    assertEquals(range(0, 5), texts());
+    assertEquals(20, consumer.getDroppedFrames());
+  }
+
+  @Test
+  void dropsOldestFrames() throws InterruptedException {
+    final AsyncLogConsumer consumer =
+        floodWhileBlocked(AsyncLogConsumer.OverflowPolicy.DROP_OLDEST);
+
+    awaitDelivery(consumer, 5);
+    assertEquals(List.of("0", "21", "22", "23", "24"), texts());
+    assertEquals(20, consumer.getDroppedFrames());
+  }
+
+  @Test
+  void samplesFramesOnceHalfFull() throws InterruptedException {
+    final AsyncLogConsumer consumer =
+        floodWhileBlocked(AsyncLogConsumer.OverflowPolicy.SAMPLE);
+
+    awaitDelivery(consumer, 5);
+    assertEquals(List.of("0", "1", "2", "7", "15"), texts());
+    assertEquals(20, consumer.getDroppedFrames());
+  }
+
+  @Test
+  void alwaysDeliversEndOfOutput() throws InterruptedException {
+    final AsyncLogConsumer consumer =
+        floodWhileBlocked(AsyncLogConsumer.OverflowPolicy.DROP_NEWEST);
+    consumer.accept(OutputFrame.END);
+
+    awaitDelivery(consumer, 5);
+    assertEquals(OutputFrame.END, delivered.get(delivered.size() - 1));
+    assertEquals(26, consumer.getAcceptedFrames());
+  }
+
+  /** Blocks the delegate with the first frame and passes 24 more to a buffer of 4. */
+  private AsyncLogConsumer floodWhileBlocked(AsyncLogConsumer.OverflowPolicy policy)
+      throws InterruptedException {
+    final AsyncLogConsumer consumer =
+        new AsyncLogConsumer(
+            frame -> {
+              blocked.countDown();
+              awaitRelease();
+              delivered.add(frame);
+            },
+            4,
+            policy);
+    consumer.accept(frame(0));
+    assertTrue(blocked.await(5, TimeUnit.SECONDS));
+    IntStream.range(1, 25).mapToObj(AsyncLogConsumerTest::frame).forEach(consumer::accept);
+    release.countDown();
+    return consumer;
+  }
+
+  private void awaitRelease() {
+    try {
+      release.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void awaitDelivery(AsyncLogConsumer consumer, int frames)
+      throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (consumer.getDeliveredFrames() < frames && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    // give the worker the chance to deliver more frames than expected
+    Thread.sleep(50);
+  }
+
+  private List<String> texts() {
+    return delivered.stream()
+        .filter(frame -> frame != OutputFrame.END)
+        .map(OutputFrame::getUtf8String)
+        .collect(Collectors.toList());
+  }
+
+  private static List<String> range(int from, int to) {
+    return IntStream.range(from, to).mapToObj(String::valueOf).collect(Collectors.toList());
+  }
+
+  private static OutputFrame frame(int number) {
+    return new OutputFrame(
+        OutputFrame.OutputType.STDOUT, String.valueOf(number).getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,104 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class BackgroundSavesTest {
+
+  @Test
+  void ordersSavesOfSamePath() throws InterruptedException {
+    final List<String> saved = new CopyOnWriteArrayList<>();
+    final CountDownLatch release = new CountDownLatch(1);
+    final BackgroundSaves saves = new BackgroundSaves(4);
+    try {
+      saves.submit(
+          List.of(Path.of("replay.json")),
+          () -> {
+            await(release);
+            saved.add("first");
+          });
+      final CompletableFuture<Void> other =
+          saves.submit(List.of(Path.of("other.json")), () -> saved.add("other"));
+      saves.submit(List.of(Path.of("./replay.json")), () -> saved.add("second"));
+
+      other.join();
+      assertEquals(List.of("other"), saved);
+
+      release.countDown();
+      saves.awaitPaths(List.of(Path.of("replay.json")));
+      assertEquals(List.of("other", "first", "second"), saved);
+    } finally {
+      saves.close();
+    }
+  }
+
+  @Test
+  void blocksWhenTooManySavesArePending() throws InterruptedException {
+    final CountDownLatch release = new CountDownLatch(1);
+    final BackgroundSaves saves = new BackgroundSaves(1);
+    try {
+      saves.submit(List.of(Path.of("first.json")), () -> await(release));
+
+      final CountDownLatch submitted = new CountDownLatch(1);
+      final Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  saves.submit(List.of(Path.of("second.json")), () -> {});
+                  submitted.countDown();
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              });
+      thread.start();
+
+      assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+      release.countDown();
+      assertTrue(submitted.await(5, TimeUnit.SECONDS));
+    } finally {
+      saves.close();
+    }
+  }
+
+  @Test
+  void reportsFailuresOnce() throws InterruptedException {
+    final IllegalStateException failure = new IllegalStateException("export failed");
+    final BackgroundSaves saves = new BackgroundSaves(2);
+    final CompletableFuture<Void> failed =
+        saves.submit(
+            List.of(Path.of("replay.json")),
+            () -> {
+              throw failure;
+            });
+    final CompletableFuture<Void> next =
+        saves.submit(List.of(Path.of("replay.json")), () -> {});
+
+    saves.awaitPaths(List.of(Path.of("replay.json")));
+    assertTrue(next.isDone() && !next.isCompletedExceptionally());
+
+    assertSame(
+        failure,
+        assertThrows(IllegalStateException.class, () -> saves.await(List.of(failed, next))));
+    saves.await(List.of(failed, next));
+    saves.close();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.traum.mountebank;
+
+import com.traum.io.Replacements;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/** Counts the lifecycle calls instead of talking to mountebank. */
+class CountingProxy extends MountebankProxy {
+
+  final List<Path> imports = new ArrayList<>();
+  int starts;
+  int stops;
+  int resets;
+  volatile RequestStats requestStats = stats("{\"imposters\": []}");
+
+  private boolean running;
+
+  @Override
+  public void start() {
+    starts++;
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    stops++;
+    running = false;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public void importImposters(Path impostersInput) {
+    imports.add(impostersInput);
+  }
+
+  @Override
+  public void resetImposters() {
+    resets++;
+  }
+
+  @Override
+  public void saveImposters(Path replayOutput, Path recordOutput, Replacements replacements) {}
+
+  @Override
+  public RequestStats getRequestStats() {
+    return requestStats;
+  }
+
+  @Override
+  public String getApiUrl() {
+    return "http://localhost:2525";
+  }
+
+  @Override
+  public String getImposterAuthority(int imposterPort) {
+    return "localhost:" + imposterPort;
+  }
+
+  @Override
+  public Collection<Integer> getImposterPorts() {
+    return List.of();
+  }
+
+  static RequestStats stats(String export) {
+    try {
+      return RequestStats.read(new ByteArrayInputStream(export.getBytes(StandardCharsets.UTF_8)));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.traum.io.Replacements;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opentest4j.AssertionFailedError;
+
+class EmbeddedMountebankProxyTest {
+
+  private static final String RECORDED =
+      "{\"imposters\": [{\"protocol\": \"http\", \"port\": 5050, \"recordRequests\": true,"
+          + " \"stubs\": [{"
+          + "\"predicates\": [{\"deepEquals\": {\"method\": \"GET\", \"path\": \"/users\","
+          + " \"query\": {\"page\": \"2\"}}}],"
+          + "\"responses\": ["
+          + "{\"is\": {\"statusCode\": 200, \"headers\": {\"Content-Type\": \"application/json\","
+          + " \"Transfer-Encoding\": \"chunked\"}, \"body\": {\"page\": 2}, \"_mode\": \"text\"}},"
+          + "{\"is\": {\"statusCode\": 429, \"body\": \"slow down\"}}]}]}]}";
+
+  private final HttpClient client = HttpClient.newHttpClient();
+
+  private EmbeddedMountebankProxy proxy;
+  private Path file;
+
+  @BeforeEach
+  void start() throws IOException {
+    proxy = new EmbeddedMountebankProxy();
+    proxy.start();
+    file = Files.createTempFile("imposters", ".json");
+    Files.writeString(file, RECORDED);
+  }
+
+  @AfterEach
+  void stop() throws IOException {
+    proxy.stop();
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  void replaysRecordedResponses() throws Exception {
+    proxy.importImposters(file);
+
+    final HttpResponse<String> first = get("/users?page=2");
+    assertEquals(200, first.statusCode());
+    assertEquals(List.of("application/json"), first.headers().allValues("Content-Type"));
+    assertEquals("{\n    \"page\": 2\n}", first.body());
+
+    final HttpResponse<String> second = get("/users?page=2");
+    assertEquals(429, second.statusCode());
+    assertEquals("slow down", second.body());
+    assertEquals(200, get("/users?page=2").statusCode());
+
+    final HttpResponse<String> unmatched = get("/users?page=3");
+    assertEquals(200, unmatched.statusCode());
+    assertEquals("", unmatched.body());
+  }
+
+  @Test
+  void savesRecordedRequests() throws Exception {
+    proxy.importImposters(file);
+    get("/users?page=2");
+
+    final Path replay = Files.createTempFile("replay", ".json");
+    final Path record = Files.createTempFile("record", ".json");
+    try {
+      proxy.saveImposters(replay, record, Replacements.none());
+
+      assertTrue(Files.readString(record).contains("\"path\": \"/users\""), "request recorded");
+      assertTrue(Files.readString(replay).contains("\"deepEquals\""), "stubs replayed");
+      assertFalse(Files.readString(replay).contains("\"requests\""), "requests dropped");
+
+      // a replay of the replay is served the same way, starting with the first response again
+      proxy.resetImposters();
+      proxy.importImposters(replay);
+      assertEquals("{\n    \"page\": 2\n}", get("/users?page=2").body());
+      assertEquals(429, get("/users?page=2").statusCode());
+    } finally {
+      Files.delete(replay);
+      Files.delete(record);
+    }
+  }
+
+  @Test
+  void rejectsImpostersWhichNeedMountebank() throws IOException {
+    Files.writeString(
+        file,
+        "{\"imposters\": [{\"protocol\": \"http\", \"port\": 5050, \"stubs\": [{\"responses\":"
+            + " [{\"proxy\": {\"to\": \"https://api.github.com\"}}]}]}]}");
+
+    final CompletionException e =
+        assertThrows(CompletionException.class, () -> proxy.importImposters(file));
+    assertTrue(e.getCause() instanceof AssertionFailedError, e.toString());
+    assertTrue(
+        e.getMessage().contains("response type 'proxy' is not supported"), e.getMessage());
+  }
+
+  private HttpResponse<String> get(String pathAndQuery) throws Exception {
+    return client.send(
+        HttpRequest.newBuilder()
+            .uri(URI.create("http://" + proxy.getImposterAuthority(5050) + pathAndQuery))
+            .GET()
+            .build(),
+        HttpResponse.BodyHandlers.ofString());
+  }
+}
@@ -0,0 +1,99 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ImposterFilesTest {
+
+  private static final byte[] CONTENT =
+      "{\"imposters\": []}".repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+  private Path directory;
+
+  @BeforeEach
+  void createDirectory() throws IOException {
+    directory = Files.createTempDirectory("imposters");
+  }
+
+  @AfterEach
+  void deleteDirectory() throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  void compressesGzFiles() throws IOException {
+    final Path path = directory.resolve("nested/replay.json.gz");
+    ImposterFiles.write(new ByteArrayInputStream(CONTENT), path);
+
+    assertTrue(Files.size(path) < CONTENT.length / 10);
+    try (InputStream input = new GZIPInputStream(Files.newInputStream(path))) {
+      assertArrayEquals(CONTENT, input.readAllBytes());
+    }
+    try (InputStream input = ImposterFiles.newInputStream(path)) {
+      assertArrayEquals(CONTENT, input.readAllBytes());
+    }
+  }
+
+  @Test
+  void writesOtherFilesAsIs() throws IOException {
+    final Path path = directory.resolve("replay.json");
+    ImposterFiles.write(new ByteArrayInputStream(CONTENT), path);
+
+    assertArrayEquals(CONTENT, Files.readAllBytes(path));
+  }
+
+  @Test
+  void keepsPreviousFileIfWritingFails() throws IOException {
+    final Path path = directory.resolve("replay.json.gz");
+    ImposterFiles.write(new ByteArrayInputStream(CONTENT), path);
+
+    final InputStream failing =
+        new InputStream() {
+          @Override
+          public int read() throws IOException {
+            throw new IOException("connection reset");
+          }
+        };
+    assertThrows(IOException.class, () -> ImposterFiles.write(failing, path));
+
+    try (InputStream input = ImposterFiles.newInputStream(path)) {
+      assertArrayEquals(CONTENT, input.readAllBytes());
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals(List.of(path), files.collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  void storesDigestNextToFile() throws IOException {
+    final Path path = directory.resolve("replay.json.gz");
+    assertNull(ImposterFiles.readDigest(path));
+
+    ImposterFiles.writeDigest(path, "8a0b");
+
+    assertEquals(directory.resolve("replay.json.gz.sha256"), ImposterFiles.getDigestFile(path));
+    assertEquals("8a0b", ImposterFiles.readDigest(path));
+  }
+}
@@ -0,0 +1,95 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ImposterFingerprintTest {
+
+  private Path file;
+
+  @BeforeEach
+  void createFile() throws IOException {
+    file = Files.createTempFile("imposters", ".json");
+  }
+
+  @AfterEach
+  void deleteFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  void digestCoversContentAndPorts() throws IOException {
+    final String digest = digest("{\"imposters\": []}", 5050);
+
+    assertEquals(digest, digest("{\"imposters\": []}", 5050));
+    assertNotEquals(digest, digest("{\"imposters\": []} ", 5050));
+    assertNotEquals(digest, digest("{\"imposters\": []}", 5051));
+  }
+
+  @Test
+  void fingerprintsReusableImposters() throws IOException {
+    Files.writeString(
+        file,
+        "{\"imposters\": [{\"port\": 5050, \"recordRequests\": true},"
+            + " {\"port\": 5051, \"protocol\": \"smtp\"}]}");
+
+    final ImposterFingerprint fingerprint =
+        ImposterFingerprint.of(ImposterSet.read(file), "digest").orElseThrow();
+    final ImposterFingerprint parsed = ImposterFingerprint.parse(fingerprint.toString());
+
+    assertEquals("digest", parsed.getDigest());
+    assertEquals(Set.of(5050, 5051), parsed.getRecordingPorts());
+  }
+
+  @Test
+  void doesNotFingerprintStatefulImposters() throws IOException {
+    Files.writeString(
+        file,
+        "{\"imposters\": [{\"port\": 5050, \"stubs\": [{\"responses\": [{\"proxy\": {}}]}]}]}");
+
+    assertTrue(ImposterFingerprint.of(ImposterSet.read(file), "digest").isEmpty());
+  }
+
+  @Test
+  void analyzesLikeImposterSet() throws IOException {
+    final List<String> documents =
+        List.of(
+            "{\"imposters\": [{\"port\": 5050, \"recordRequests\": true},"
+                + " {\"port\": 5051, \"protocol\": \"smtp\"}]}",
+            "{\"imposters\": [{\"port\": 5050, \"stubs\": [{\"responses\": [{\"proxy\": {}}]}]}]}",
+            "{\"imposters\": [{\"port\": 5050, \"stubs\": [{\"responses\": [{}, {}]}]}]}",
+            "{\"imposters\": [{\"recordRequests\": true}]}",
+            "<% include imposters.ejs %>");
+    for (String document : documents) {
+      Files.writeString(file, document);
+      final String expected =
+          document.startsWith("<")
+              ? null
+              : ImposterFingerprint.of(ImposterSet.read(file), "digest")
+                  .map(ImposterFingerprint::toString)
+                  .orElse(null);
+
+      assertEquals(
+          expected,
+          ImposterFingerprint.analyze(file, "digest")
+              .map(ImposterFingerprint::toString)
+              .orElse(null),
+          document);
+    }
+  }
+
+  private String digest(String imposters, int port) throws IOException {
+    Files.writeString(file, imposters);
+    return ImposterFingerprint.digest(file, List.of(port));
+  }
+}
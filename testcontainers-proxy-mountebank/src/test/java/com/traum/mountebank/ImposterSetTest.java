@@ -0,0 +1,102 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.traum.json.JsonSyntaxException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ImposterSetTest {
+
+  private Path file;
+
+  @BeforeEach
+  void createFile() throws IOException {
+    file = Files.createTempFile("imposters", ".json");
+  }
+
+  @AfterEach
+  void deleteFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  void splitsImpostersIntoHeaderAndStubs() throws IOException {
+    final ImposterSet imposters =
+        read(
+            "{\"imposters\": [\n"
+                + "  {\"port\": 5050,"
+                + " \"stubs\": [{\"responses\": [{\"is\": {}}]}], \"name\": \"a\"},\n"
+                + "  {\"port\": 5051}\n"
+                + "]}");
+
+    final ImposterSet.Imposter first = imposters.getImposters().get(0);
+    assertEquals(5050, first.getPort());
+    assertEquals("{\"port\":5050,\"name\":\"a\"}", first.getHeader());
+    assertEquals("[{\"responses\":[{\"is\":{}}]}]", first.getStubs());
+    assertEquals(
+        "{\"port\":5050,\"name\":\"a\",\"stubs\":[{\"responses\":[{\"is\":{}}]}]}",
+        first.toJson());
+
+    final ImposterSet.Imposter second = imposters.getImposters().get(1);
+    assertEquals("[]", second.getStubs());
+    assertEquals("{\"port\":5051}", second.toJson());
+    assertTrue(imposters.hasPorts());
+  }
+
+  @Test
+  void replayImpostersAreReusable() throws IOException {
+    final ImposterSet imposters =
+        read(
+            "{\"imposters\": [{\"port\": 5050, \"recordRequests\": true, \"stubs\": ["
+                + "{\"predicates\": [{\"equals\": {\"path\": \"/\"}}],"
+                + " \"responses\": [{\"is\": {\"statusCode\": 200}}]}]},"
+                + " {\"port\": 5051, \"stubs\": []}]}");
+
+    assertTrue(imposters.isReusable());
+    assertEquals(Set.of(5050), imposters.getRecordingPorts());
+  }
+
+  @Test
+  void statefulImpostersAreNotReusable() throws IOException {
+    final String[] stubs = {
+      "{\"responses\": [{\"proxy\": {\"to\": \"http://localhost\"}}]}",
+      "{\"responses\": [{\"is\": {}}, {\"is\": {}}]}",
+      "{\"predicates\": [{\"inject\": \"function () { return true; }\"}]}",
+      "{\"responses\": [{\"is\": {}, \"_behaviors\": {\"decorate\": \"function () {}\"}}]}"
+    };
+    for (String stub : stubs) {
+      assertFalse(
+          read("{\"imposters\": [{\"port\": 5050, \"stubs\": [" + stub + "]}]}").isReusable(),
+          stub);
+    }
+  }
+
+  @Test
+  void recordingImpostersWithoutPortAreNotReusable() throws IOException {
+    final ImposterSet imposters = read("{\"imposters\": [{\"protocol\": \"smtp\"}]}");
+
+    assertFalse(imposters.isReusable());
+    assertFalse(imposters.hasPorts());
+  }
+
+  @Test
+  void rejectsTemplates() throws IOException {
+    Files.writeString(file, "{\"imposters\": [<% include imposter.ejs %>]}");
+
+    assertThrows(JsonSyntaxException.class, () -> ImposterSet.read(file));
+  }
+
+  private ImposterSet read(String imposters) throws IOException {
+    Files.writeString(file, imposters);
+    return ImposterSet.read(file);
+  }
+}
@@ -0,0 +1,124 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+class LatencyAdjustedImpostersTest {
+
+  private static final String IMPOSTERS =
+      "{\"imposters\":[{\"port\":5050,\"stubs\":["
+          + "{\"responses\":["
+          + "{\"is\":{\"statusCode\":200,\"body\":\"wait\"},\"_behaviors\":{\"wait\":200}},"
+          + "{\"is\":{\"statusCode\":201},\"behaviors\":[{\"wait\":100},{\"decorate\":\"x\"}]},"
+          + "{\"is\":{},\"_behaviors\":{\"wait\":\"function () { return 5; }\"}}"
+          + "]},"
+          + "{\"responses\":[{\"proxy\":{\"to\":\"http://upstream\",\"addWaitBehavior\":false}}]}"
+          + "]}]}";
+
+  @Test
+  void turnsWaitsOff() throws IOException {
+    final String output = write(ReplayLatency.off(), 1);
+
+    assertEquals(
+        "{\"imposters\":[{\"port\":5050,\"stubs\":["
+            + "{\"responses\":["
+            + "{\"is\":{\"statusCode\":200,\"body\":\"wait\"},\"_behaviors\":{\"wait\":0}},"
+            + "{\"is\":{\"statusCode\":201},\"behaviors\":[{\"wait\":0},{\"decorate\":\"x\"}]},"
+            + "{\"is\":{},\"_behaviors\":{\"wait\":\"function () { return 5; }\"}}"
+            + "]},"
+            + "{\"responses\":[{\"proxy\":{\"to\":\"http://upstream\",\"addWaitBehavior\":false}}]}"
+            + "]}]}",
+        output);
+  }
+
+  @Test
+  void keepsImpostersWithUnchangedLatency() throws IOException {
+    assertEquals(IMPOSTERS, write(ReplayLatency.unchanged(), 1));
+  }
+
+  @Test
+  void copiesOnlyImpostersWhichNeedAdjusting() throws IOException {
+    final Path imposters = Files.createTempFile("imposters", ".json");
+    try {
+      Files.writeString(imposters, "{\"imposters\":[{\"port\":5050,\"stubs\":[]}]}");
+      assertNull(LatencyAdjustedImposters.copy(imposters, ReplayLatency.off()));
+
+      Files.writeString(imposters, IMPOSTERS);
+      assertNull(LatencyAdjustedImposters.copy(imposters, ReplayLatency.unchanged()));
+      // unchanged imposters aren't read at all
+      assertNull(
+          LatencyAdjustedImposters.copy(
+              imposters.resolveSibling("missing.json"), ReplayLatency.unchanged()));
+      final Path adjusted = LatencyAdjustedImposters.copy(imposters, ReplayLatency.recorded());
+      try {
+        assertTrue(Files.readString(adjusted).contains("\"addWaitBehavior\":true"));
+      } finally {
+        Files.delete(adjusted);
+      }
+    } finally {
+      Files.delete(imposters);
+    }
+  }
+
+  @Test
+  void scalesRecordedWaitsAndRecordsLatencyOfProxies() throws IOException {
+    final String output = write(ReplayLatency.recorded().withFactor(1.5), 1);
+
+    assertEquals(
+        "{\"imposters\":[{\"port\":5050,\"stubs\":["
+            + "{\"responses\":["
+            + "{\"is\":{\"statusCode\":200,\"body\":\"wait\"},\"_behaviors\":{\"wait\":300}},"
+            + "{\"is\":{\"statusCode\":201},\"behaviors\":[{\"wait\":150},{\"decorate\":\"x\"}]},"
+            + "{\"is\":{},\"_behaviors\":{\"wait\":\"function () { return 5; }\"}}"
+            + "]},"
+            + "{\"responses\":[{\"proxy\":{\"to\":\"http://upstream\",\"addWaitBehavior\":true}}]}"
+            + "]}]}",
+        output);
+  }
+
+  @Test
+  void variesWaitsDeterministically() throws IOException {
+    final ReplayLatency latency = ReplayLatency.recorded().withJitter(0.5);
+
+    final String output = write(latency, 42);
+
+    assertEquals(output, write(latency, 42));
+    assertNotEquals(output, write(latency, 43));
+    final Matcher matcher = Pattern.compile("\"wait\":(\\d+)").matcher(output);
+    assertTrue(matcher.find());
+    final int first = Integer.parseInt(matcher.group(1));
+    assertTrue(first >= 100 && first <= 300, output);
+    assertTrue(matcher.find());
+    final int second = Integer.parseInt(matcher.group(1));
+    assertTrue(second >= 50 && second <= 150, output);
+  }
+
+  @Test
+  void rejectsInvalidSettings() {
+    assertThrows(IllegalArgumentException.class, () -> ReplayLatency.recorded().withFactor(-1));
+    assertThrows(IllegalArgumentException.class, () -> ReplayLatency.recorded().withJitter(1.5));
+  }
+
+  private static String write(ReplayLatency latency, long seed) throws IOException {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    LatencyAdjustedImposters.write(
+        new ByteArrayInputStream(IMPOSTERS.getBytes(StandardCharsets.UTF_8)),
+        output,
+        latency,
+        seed);
+    return output.toString(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,62 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.utility.TestcontainersConfiguration;
+
+class MountebankContainerTest {
+
+  @Test
+  void reservesFixedHostPortsBeforeStart() {
+    final MountebankContainer container = new MountebankContainer(5050, 5051);
+    assertFalse(container.hasFixedHostPorts());
+
+    container.withFixedHostPorts();
+
+    assertTrue(container.hasFixedHostPorts());
+    assertFalse(container.isShouldBeReused());
+    final Set<Integer> hostPorts =
+        Set.of(
+            container.getMappedPort(MountebankContainer.MOUNTEBANK_API_PORT),
+            container.getMappedPort(5050),
+            container.getMappedPort(5051));
+    assertEquals(3, hostPorts.size());
+    hostPorts.forEach(port -> assertNotEquals(0, port));
+    assertEquals(3, container.getPortBindings().size());
+  }
+
+  @Test
+  void logsAsynchronouslyOnlyIfAsked() {
+    assertTrue(new MountebankContainer(5050).getAsyncLogConsumer().isEmpty());
+
+    final AsyncLogConsumer logConsumer = new AsyncLogConsumer(frame -> {});
+    assertSame(
+        logConsumer,
+        new MountebankContainer(logConsumer, 5050).getAsyncLogConsumer().orElseThrow());
+  }
+
+  @Test
+  void pooledProxiesGetDistinctContainersUnderReuse() throws InterruptedException {
+    assumeTrue(TestcontainersConfiguration.getInstance().environmentSupportsReuse());
+    try (MountebankProxyPool pool = new MountebankProxyPool(ContainerMountebankProxy::new, 2)) {
+      final MountebankProxy first = pool.lease();
+      final MountebankProxy second = pool.lease();
+      try {
+        first.start();
+        second.start();
+
+        assertNotEquals(first.getApiUrl(), second.getApiUrl());
+      } finally {
+        pool.release(first);
+        pool.release(second);
+      }
+    }
+  }
+}
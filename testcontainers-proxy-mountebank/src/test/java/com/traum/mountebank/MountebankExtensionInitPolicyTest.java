@@ -0,0 +1,104 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.traum.mountebank.MountebankExtension.MountebankProxyFactory;
+import com.traum.mountebank.MountebankExtension.WithProxy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class MountebankExtensionInitPolicyTest {
+
+  private static final Path DIRECTORY = Paths.get("target", "init-policy");
+  private static final String IMPOSTERS = "{\"imposters\": []}";
+
+  private final CountingProxy proxy = new CountingProxy();
+
+  private final MountebankExtension extension =
+      new MountebankExtension(
+          new MountebankProxyFactory() {
+            @Override
+            public MountebankProxy create() {
+              return proxy;
+            }
+          });
+
+  private final Path initial = DIRECTORY.resolve("initial.json");
+  private final Path replay = DIRECTORY.resolve("replay.json");
+
+  @AfterEach
+  void deleteFiles() throws IOException {
+    for (Path file : List.of(initial, replay, ImposterFiles.getDigestFile(replay))) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  void skipsInitialImpostersWithMatchingDigest() throws Throwable {
+    writeFiles(Instant.parse("2020-01-02T00:00:00Z"), Instant.parse("2020-01-01T00:00:00Z"));
+    ImposterFiles.writeDigest(replay, ImposterFingerprint.digest(initial));
+
+    runTest();
+
+    // the digest decides, although the replay file is older
+    assertEquals(List.of(replay), proxy.imports);
+  }
+
+  @Test
+  void initializesAgainWithChangedDigest() throws Throwable {
+    writeFiles(Instant.parse("2020-01-01T00:00:00Z"), Instant.parse("2020-01-02T00:00:00Z"));
+    ImposterFiles.writeDigest(replay, "outdated");
+
+    runTest();
+
+    // the digest decides, although the replay file is newer
+    assertEquals(List.of(initial), proxy.imports);
+    assertEquals(ImposterFingerprint.digest(initial), ImposterFiles.readDigest(replay));
+  }
+
+  @Test
+  void fallsBackToModificationTimesWithoutDigest() throws Throwable {
+    writeFiles(Instant.parse("2020-01-01T00:00:00Z"), Instant.parse("2020-01-02T00:00:00Z"));
+    runTest();
+
+    writeFiles(Instant.parse("2020-01-02T00:00:00Z"), Instant.parse("2020-01-01T00:00:00Z"));
+    runTest();
+
+    assertEquals(List.of(replay, initial), proxy.imports);
+  }
+
+  private void writeFiles(Instant initialModified, Instant replayModified) throws IOException {
+    Files.createDirectories(DIRECTORY);
+    Files.writeString(initial, IMPOSTERS);
+    Files.setLastModifiedTime(initial, FileTime.from(initialModified));
+    Files.writeString(replay, IMPOSTERS);
+    Files.setLastModifiedTime(replay, FileTime.from(replayModified));
+  }
+
+  private void runTest() throws Throwable {
+    final StubExtensionContext methodContext =
+        StubExtensionContext.root(Map.of())
+            .forClass(InitPolicyTestCase.class)
+            .forMethod(InitPolicyTestCase.class.getDeclaredMethod("replayed"));
+    extension.beforeEach(methodContext);
+    extension.afterEach(methodContext);
+    methodContext.close();
+  }
+
+  static class InitPolicyTestCase {
+
+    @WithProxy(
+        initialImposters = "target/init-policy/initial.json",
+        replayImposters = "target/init-policy/replay.json",
+        initPolicy = WithProxy.InitPolicy.IF_INITIAL_CHANGED)
+    void replayed() {}
+  }
+}
@@ -0,0 +1,179 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.traum.mountebank.MountebankExtension.MountebankProxyFactory;
+import com.traum.mountebank.MountebankExtension.WithProxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class MountebankExtensionScopeTest {
+
+  private final List<CountingProxy> proxies = new ArrayList<>();
+
+  private final MountebankExtension extension =
+      new MountebankExtension(
+          new MountebankProxyFactory() {
+            @Override
+            public MountebankProxy create() {
+              final CountingProxy proxy = new CountingProxy();
+              proxies.add(proxy);
+              return proxy;
+            }
+          });
+
+  private final StubExtensionContext root = StubExtensionContext.root(Map.of());
+
+  @Test
+  void methodScopeStopsProxyAfterEachTest() throws Throwable {
+    final StubExtensionContext classContext = root.forClass(MethodScopedTestCase.class);
+
+    runTest(classContext, "first");
+    runTest(classContext, "second");
+
+    assertEquals(2, proxies.size());
+    for (CountingProxy proxy : proxies) {
+      assertEquals(1, proxy.starts);
+      assertEquals(1, proxy.imports.size());
+      assertEquals(0, proxy.resets);
+      assertEquals(1, proxy.stops);
+    }
+  }
+
+  @Test
+  void classScopeKeepsProxyAndResetsImpostersBetweenTests() throws Throwable {
+    final StubExtensionContext classContext = root.forClass(ClassScopedTestCase.class);
+
+    runTest(classContext, "first");
+    runTest(classContext, "second");
+
+    assertEquals(1, proxies.size());
+    final CountingProxy proxy = proxies.get(0);
+    assertEquals(1, proxy.starts);
+    assertEquals(2, proxy.imports.size());
+    assertEquals(2, proxy.resets);
+    assertEquals(0, proxy.stops);
+
+    classContext.close();
+    assertEquals(1, proxy.stops);
+  }
+
+  @Test
+  void sessionScopeKeepsProxyAcrossTestClasses() throws Throwable {
+    final StubExtensionContext firstClass = root.forClass(SessionScopedTestCase.class);
+    runTest(firstClass, "first");
+    firstClass.close();
+    final StubExtensionContext secondClass = root.forClass(SessionScopedTestCase.class);
+    runTest(secondClass, "second");
+    secondClass.close();
+
+    assertEquals(1, proxies.size());
+    final CountingProxy proxy = proxies.get(0);
+    assertEquals(1, proxy.starts);
+    assertEquals(2, proxy.imports.size());
+    assertEquals(2, proxy.resets);
+    assertEquals(0, proxy.stops);
+
+    root.close();
+    assertEquals(1, proxy.stops);
+  }
+
+  @Test
+  void returnsProxyIfBackgroundSaveCantBeSubmitted() throws Throwable {
+    final StubExtensionContext classContext =
+        StubExtensionContext.root(
+                Map.of(
+                    MountebankExtension.SAVE_ASYNC_PROPERTY, "true",
+                    MountebankExtension.SAVE_ASYNC_MAX_PENDING_PROPERTY, "0"))
+            .forClass(ClassScopedTestCase.class);
+    final StubExtensionContext methodContext =
+        classContext.forMethod(ClassScopedTestCase.class.getDeclaredMethod("first"));
+    extension.beforeEach(methodContext);
+
+    assertThrows(IllegalArgumentException.class, () -> extension.afterEach(methodContext));
+
+    final CountingProxy proxy = proxies.get(0);
+    assertEquals(1, proxy.resets);
+    methodContext.close();
+    classContext.close();
+    assertEquals(1, proxy.stops);
+  }
+
+  @Test
+  void reportsRequestsOfSharedProxiesPerTest() throws Throwable {
+    final Path output = Files.createTempFile("requests", ".json");
+    try {
+      final StubExtensionContext root =
+          StubExtensionContext.root(
+              Map.of(MountebankExtension.REQUEST_STATS_REPORT_PROPERTY, output.toString()));
+      final StubExtensionContext classContext = root.forClass(ClassScopedTestCase.class);
+      for (int requests : new int[] {2, 5}) {
+        final StubExtensionContext methodContext =
+            classContext.forMethod(ClassScopedTestCase.class.getDeclaredMethod("first"));
+        extension.beforeEach(methodContext);
+        // mountebank keeps counting the requests of imposters which weren't imported again
+        proxies.get(0).requestStats =
+            CountingProxy.stats(
+                "{\"imposters\": [{\"port\": 5050, \"numberOfRequests\": " + requests + "}]}");
+        extension.afterEach(methodContext);
+        methodContext.close();
+      }
+      classContext.close();
+      root.close();
+
+      assertTrue(Files.readString(output).startsWith("{\n  \"requests\": 5,"));
+    } finally {
+      Files.deleteIfExists(output);
+    }
+  }
+
+  private void runTest(StubExtensionContext classContext, String methodName) throws Throwable {
+    final StubExtensionContext methodContext =
+        classContext.forMethod(classContext.getRequiredTestClass().getDeclaredMethod(methodName));
+    extension.beforeEach(methodContext);
+    extension.afterEach(methodContext);
+    methodContext.close();
+  }
+
+  @WithProxy(
+      initialImposters = "src/test/resources/proxy/github-proxy.json",
+      scope = WithProxy.Scope.METHOD)
+  static class MethodScopedTestCase {
+
+    @WithProxy
+    void first() {}
+
+    @WithProxy
+    void second() {}
+  }
+
+  @WithProxy(
+      initialImposters = "src/test/resources/proxy/github-proxy.json",
+      scope = WithProxy.Scope.CLASS)
+  static class ClassScopedTestCase {
+
+    @WithProxy
+    void first() {}
+
+    @WithProxy
+    void second() {}
+  }
+
+  @WithProxy(
+      initialImposters = "src/test/resources/proxy/github-proxy.json",
+      scope = WithProxy.Scope.SESSION)
+  static class SessionScopedTestCase {
+
+    @WithProxy
+    void first() {}
+
+    @WithProxy
+    void second() {}
+  }
+}
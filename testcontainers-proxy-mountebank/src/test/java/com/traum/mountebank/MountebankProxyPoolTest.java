@@ -0,0 +1,90 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class MountebankProxyPoolTest {
+
+  private final AtomicInteger created = new AtomicInteger();
+
+  private final MountebankProxyPool pool =
+      new MountebankProxyPool(
+          () ->
+              new ExternalMountebankProxy(
+                  "http://localhost:" + (2525 + created.incrementAndGet()), Map.of()),
+          2);
+
+  @Test
+  void reusesReleasedProxies() throws InterruptedException {
+    final MountebankProxy first = pool.lease();
+    pool.release(first);
+
+    assertSame(first, pool.lease());
+    assertEquals(1, created.get());
+  }
+
+  @Test
+  void concurrentLeasesGetDistinctProxies() throws InterruptedException {
+    final MountebankProxy first = pool.lease();
+    final MountebankProxy second = pool.lease();
+
+    assertNotSame(first, second);
+    assertEquals(2, pool.size());
+  }
+
+  @Test
+  void blocksUntilProxyIsReleased() throws Exception {
+    final MountebankProxy first = pool.lease();
+    pool.lease();
+
+    final CompletableFuture<MountebankProxy> third =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return pool.lease();
+              } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    assertThrows(TimeoutException.class, () -> third.get(100, TimeUnit.MILLISECONDS));
+
+    pool.release(first);
+    assertSame(first, third.get(5, TimeUnit.SECONDS));
+    assertEquals(2, created.get());
+  }
+
+  @Test
+  void discardedProxiesFreeTheirSlot() throws InterruptedException {
+    final MountebankProxy first = pool.lease();
+    pool.lease();
+    pool.discard(first);
+
+    assertNotSame(first, pool.lease());
+    assertEquals(3, created.get());
+  }
+
+  @Test
+  void rejectsForeignProxies() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> pool.release(new ExternalMountebankProxy("http://localhost:2525", Map.of())));
+  }
+
+  @Test
+  void leasingFromClosedPoolFails() {
+    pool.close();
+    final IllegalStateException exception =
+        assertThrows(IllegalStateException.class, pool::lease);
+    assertTrue(exception.getMessage().contains("closed"));
+  }
+}
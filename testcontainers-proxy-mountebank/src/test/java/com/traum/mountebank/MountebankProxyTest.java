@@ -0,0 +1,284 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.traum.io.Replacements;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MountebankProxyTest {
+
+  private static final String REPLAY_IMPOSTER =
+      "{\"port\": 5050, \"recordRequests\": true,"
+          + " \"stubs\": [{\"responses\": [{\"is\": {\"body\": \"a\"}}]}]}";
+
+  private static final String IMPOSTER_LIST =
+      "{\"imposters\": [{\"protocol\": \"http\", \"port\": 5050, \"numberOfRequests\": 3,"
+          + " \"_links\": {\"self\": {\"href\": \"http://localhost:2525/imposters/5050\"}}}]}";
+
+  private final List<String> requests = new ArrayList<>();
+  private volatile int savedRequestsStatus = 200;
+  private volatile String lastImport;
+  private volatile String export = "{\"imposters\": []}";
+
+  private HttpServer server;
+  private MountebankProxy proxy;
+  private Path file;
+
+  @BeforeEach
+  void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", this::handle);
+    server.start();
+    proxy =
+        new ExternalMountebankProxy(
+            "http://localhost:" + server.getAddress().getPort(), Map.of(5050, "localhost:5050"));
+    file = Files.createTempFile("imposters", ".json");
+  }
+
+  @AfterEach
+  void stop() throws IOException {
+    server.stop(0);
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  void skipsImportOfLoadedImposters() throws IOException {
+    importImposters(REPLAY_IMPOSTER);
+    assertTrue(proxy.hasReusableImposters());
+    importImposters(REPLAY_IMPOSTER);
+
+    assertEquals(
+        List.of("PUT /imposters", "DELETE /imposters/5050/savedRequests"), takeRequests());
+  }
+
+  @Test
+  void importsAgainIfSavedRequestsCanNotBeDeleted() throws IOException {
+    savedRequestsStatus = 404;
+    importImposters(REPLAY_IMPOSTER);
+    importImposters(REPLAY_IMPOSTER);
+    importImposters(REPLAY_IMPOSTER);
+
+    assertEquals(
+        List.of(
+            "PUT /imposters",
+            "DELETE /imposters/5050/savedRequests",
+            "PUT /imposters",
+            "PUT /imposters"),
+        takeRequests());
+  }
+
+  @Test
+  void importsStatefulImpostersAgain() throws IOException {
+    final String proxyImposter =
+        "{\"port\": 5050, \"stubs\": [{\"responses\": [{\"proxy\": {\"to\": \"http://a\"}}]}]}";
+    importImposters(proxyImposter);
+    assertFalse(proxy.hasReusableImposters());
+    importImposters(proxyImposter);
+
+    assertEquals(List.of("PUT /imposters", "PUT /imposters"), takeRequests());
+  }
+
+  @Test
+  void importsChangedImpostersIncrementally() throws IOException {
+    proxy.setIncrementalImport(true);
+    importImposters(
+        "{\"port\": 5050, \"stubs\": [{\"responses\": [{\"is\": {\"body\": \"a\"}}]}]}",
+        "{\"port\": 5051, \"stubs\": [{\"responses\": [{\"is\": {\"body\": \"b\"}}]}]}",
+        "{\"port\": 5052, \"name\": \"c\"}",
+        "{\"port\": 5054}");
+    assertEquals(List.of("PUT /imposters"), takeRequests());
+
+    importImposters(
+        "{\"port\": 5050, \"stubs\": [{\"responses\": [{\"is\": {\"body\": \"a\"}}]}]}",
+        "{\"port\": 5051, \"stubs\": [{\"responses\": [{\"is\": {\"body\": \"B\"}}]}]}",
+        "{\"port\": 5052, \"name\": \"C\"}",
+        "{\"port\": 5053}");
+
+    final List<String> requests = takeRequests();
+    assertEquals(
+        List.of("DELETE /imposters/5052", "DELETE /imposters/5054"),
+        sorted(requests.subList(0, 2)));
+    assertEquals(
+        List.of(
+            "POST /imposters {\"port\":5052,\"name\":\"C\"}",
+            "POST /imposters {\"port\":5053}",
+            "PUT /imposters/5051/stubs {\"stubs\":[{\"responses\":[{\"is\":{\"body\":\"B\"}}]}]}"),
+        sorted(requests.subList(2, requests.size())));
+  }
+
+  @Test
+  void replacesStubsOfStatefulImpostersIncrementally() throws IOException {
+    final String proxyImposter =
+        "{\"port\": 5050, \"stubs\": [{\"responses\": [{\"proxy\": {\"to\": \"http://a\"}}]}]}";
+    proxy.setIncrementalImport(true);
+    importImposters(proxyImposter);
+    assertTrue(proxy.hasReusableImposters());
+    importImposters(proxyImposter);
+
+    final List<String> requests = takeRequests();
+    assertEquals(2, requests.size());
+    assertTrue(requests.get(1).startsWith("PUT /imposters/5050/stubs "), requests.get(1));
+  }
+
+  @Test
+  void importsCompressedImposters() throws IOException {
+    final Path compressed = Files.createTempFile("imposters", ".json.gz");
+    try {
+      ImposterFiles.write(
+          new ByteArrayInputStream(
+              ("{\"imposters\": [" + REPLAY_IMPOSTER + "]}").getBytes(StandardCharsets.UTF_8)),
+          compressed);
+      proxy.importImposters(compressed);
+    } finally {
+      Files.delete(compressed);
+    }
+
+    assertEquals(List.of("PUT /imposters"), takeRequests());
+    assertEquals("{\"imposters\": [" + REPLAY_IMPOSTER + "]}", lastImport);
+    assertTrue(proxy.hasReusableImposters());
+  }
+
+  @Test
+  void savesReplayAndRecordFromSingleExport() throws IOException {
+    export =
+        "{\n  \"imposters\": [\n    {\n      \"port\": 5050,\n"
+            + "      \"recordRequests\": false,\n"
+            + "      \"numberOfRequests\": 1,\n"
+            + "      \"requests\": [\n        {\n          \"path\": \"/\"\n        }\n      ],\n"
+            + "      \"stubs\": []\n    }\n  ]\n}";
+    final Path record = Files.createTempFile("imposters", ".json");
+    try {
+      proxy.saveImposters(file, record, Replacements.none());
+
+      assertEquals(List.of("GET /imposters?removeProxies=true"), takeRequests());
+      assertEquals(
+          "{\n  \"imposters\": [\n    {\n      \"port\": 5050,\n"
+              + "      \"recordRequests\": true,\n"
+              + "      \"stubs\": []\n    }\n  ]\n}",
+          Files.readString(file));
+      assertEquals(
+          export.replace("\"recordRequests\": false", "\"recordRequests\": true"),
+          Files.readString(record));
+    } finally {
+      Files.delete(record);
+    }
+  }
+
+  @Test
+  void countsRequestsByEndpoint() {
+    export =
+        "{\"imposters\": [{\"port\": 5051, \"numberOfRequests\": 0, \"requests\": []},"
+            + " {\"port\": 5050, \"numberOfRequests\": 3, \"requests\": ["
+            + "{\"method\": \"GET\", \"path\": \"/users\", \"body\": {\"skipped\": true}},"
+            + " {\"method\": \"POST\", \"path\": \"/users\"},"
+            + " {\"method\": \"GET\", \"path\": \"/users\"}]}]}";
+
+    final RequestStats stats = proxy.getRequestStats();
+
+    assertEquals(List.of("GET /imposters?removeProxies=true"), takeRequests());
+    assertEquals(3, stats.getRequests());
+    final RequestStats.Imposter imposter = stats.getImposters().get(0);
+    assertEquals(5050, imposter.getPort());
+    assertEquals(
+        List.of(Map.entry("GET /users", 2), Map.entry("POST /users", 1)),
+        List.copyOf(imposter.getEndpoints().entrySet()));
+    assertEquals(0, stats.getImposters().get(1).getRequests());
+  }
+
+  @Test
+  void preparesProxiesConcurrently() throws IOException {
+    final MountebankProxy other =
+        new ExternalMountebankProxy(
+            "http://localhost:" + server.getAddress().getPort(), Map.of(5051, "localhost:5051"));
+    Files.writeString(file, "{\"imposters\": [" + REPLAY_IMPOSTER + "]}");
+
+    CompletableFuture.allOf(proxy.importImpostersAsync(file), other.resetImpostersAsync()).join();
+    assertTrue(proxy.hasReusableImposters());
+    proxy.deleteImposterAsync(5050).join();
+
+    assertFalse(proxy.hasReusableImposters());
+    assertEquals(
+        List.of("PUT /imposters", "PUT /imposters", "DELETE /imposters/5050"), takeRequests());
+  }
+
+  @Test
+  void failsAsyncOperations() {
+    export = "not json";
+
+    final CompletionException e =
+        assertThrows(CompletionException.class, () -> proxy.getRequestStatsAsync().join());
+    assertTrue(e.getCause() instanceof UncheckedIOException, e.getCause().toString());
+  }
+
+  private void importImposters(String... imposters) throws IOException {
+    Files.writeString(file, "{\"imposters\": [" + String.join(",", imposters) + "]}");
+    proxy.importImposters(file);
+  }
+
+  private synchronized List<String> takeRequests() {
+    final List<String> taken = new ArrayList<>(requests);
+    requests.clear();
+    return taken;
+  }
+
+  private static List<String> sorted(List<String> requests) {
+    final List<String> sorted = new ArrayList<>(requests);
+    sorted.sort(null);
+    return sorted;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      final String method = exchange.getRequestMethod();
+      final String path = exchange.getRequestURI().getPath();
+      final String body =
+          new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+      // whole imports are recorded without their body
+      final boolean wholeImport = method.equals("PUT") && path.equals("/imposters");
+      if (wholeImport) {
+        lastImport = body;
+      }
+      final String query = exchange.getRequestURI().getQuery();
+      synchronized (this) {
+        requests.add(
+            method
+                + " "
+                + path
+                + (query == null ? "" : "?" + query)
+                + (body.isEmpty() || wholeImport ? "" : " " + body));
+      }
+      if (method.equals("GET")) {
+        // like mountebank, only list the imposters unless they are exported
+        final byte[] response =
+            (query == null ? IMPOSTER_LIST : export).getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, response.length);
+        exchange.getResponseBody().write(response);
+        return;
+      }
+      exchange.sendResponseHeaders(
+          path.endsWith("/savedRequests") ? savedRequestsStatus : 200, -1);
+    } finally {
+      exchange.close();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.ContainerLaunchException;
+
+class MountebankWaitStrategyTest {
+
+  private final AtomicInteger requests = new AtomicInteger();
+  private volatile int unavailableRequests;
+
+  private HttpServer server;
+  private URI uri;
+
+  @BeforeEach
+  void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", this::handle);
+    server.start();
+    uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/imposters");
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  void pollsUntilApiResponds() {
+    unavailableRequests = 3;
+
+    new MountebankWaitStrategy().waitUntilReady(uri, Duration.ofSeconds(10), () -> true);
+
+    assertEquals(4, requests.get());
+  }
+
+  @Test
+  void failsWhenContainerStops() {
+    unavailableRequests = Integer.MAX_VALUE;
+
+    final ContainerLaunchException exception =
+        assertThrows(
+            ContainerLaunchException.class,
+            () ->
+                new MountebankWaitStrategy()
+                    .waitUntilReady(uri, Duration.ofSeconds(10), () -> false));
+
+    assertEquals(1, requests.get());
+    assertTrue(exception.getMessage().contains("status code 503"), exception.getMessage());
+  }
+
+  @Test
+  void failsAfterTimeout() {
+    unavailableRequests = Integer.MAX_VALUE;
+
+    final ContainerLaunchException exception =
+        assertThrows(
+            ContainerLaunchException.class,
+            () ->
+                new MountebankWaitStrategy()
+                    .waitUntilReady(uri, Duration.ofMillis(100), () -> true));
+
+    assertTrue(exception.getMessage().startsWith("Timed out"), exception.getMessage());
+    assertTrue(requests.get() > 1);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      final int statusCode = requests.incrementAndGet() > unavailableRequests ? 200 : 503;
+      exchange.sendResponseHeaders(statusCode, -1);
+    } finally {
+      exchange.close();
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ProxyEventsTest {
+
+  private final List<ProxyOperation> operations = new CopyOnWriteArrayList<>();
+  private final ProxyLifecycleListener listener = operations::add;
+  private final MountebankProxy proxy =
+      new ExternalMountebankProxy("http://localhost:2525", Map.of(5050, "localhost:5050"));
+
+  private Path file;
+
+  @BeforeEach
+  void addListener() throws IOException {
+    file = Files.createTempFile("imposters", ".json");
+    Files.writeString(file, "{\"imposters\": []}");
+    ProxyEvents.addListener(listener);
+  }
+
+  @AfterEach
+  void removeListener() throws IOException {
+    ProxyEvents.removeListener(listener);
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  void reportsOperation() {
+    ProxyEvents.begin(ProxyOperation.Type.SAVE, proxy)
+        .withTest("[test]")
+        .withPaths(file, null)
+        .run(() -> {});
+
+    assertEquals(1, operations.size());
+    final ProxyOperation operation = operations.get(0);
+    assertEquals(ProxyOperation.Type.SAVE, operation.getType());
+    assertSame(proxy, operation.getProxy().orElseThrow());
+    assertEquals("[test]", operation.getTest().orElseThrow());
+    assertEquals(List.of(file), operation.getPaths());
+    assertEquals(17, operation.getBytes());
+    assertFalse(operation.getDuration().isNegative());
+    assertFalse(operation.getFailure().isPresent());
+  }
+
+  @Test
+  void reportsFailure() {
+    final IOException failure = new IOException("unreachable");
+
+    assertSame(
+        failure,
+        assertThrows(
+            IOException.class,
+            () ->
+                ProxyEvents.begin(ProxyOperation.Type.IMPORT, proxy)
+                    .withPaths(file)
+                    .run(
+                        () -> {
+                          throw failure;
+                        })));
+    assertSame(failure, operations.get(0).getFailure().orElseThrow());
+  }
+
+  @Test
+  void reportsStartAndStop() {
+    ProxyEvents.start(proxy);
+    ProxyEvents.stop(proxy);
+
+    assertEquals(ProxyOperation.Type.START, operations.get(0).getType());
+    assertEquals(ProxyOperation.Type.STOP, operations.get(1).getType());
+    assertTrue(operations.get(1).getPaths().isEmpty());
+  }
+
+  @Test
+  void ignoresFailingListener() {
+    final ProxyLifecycleListener failing =
+        operation -> {
+          throw new IllegalStateException("metrics are down");
+        };
+    ProxyEvents.addListener(failing);
+    try {
+      ProxyEvents.start(proxy);
+    } finally {
+      ProxyEvents.removeListener(failing);
+    }
+
+    assertEquals(1, operations.size());
+  }
+
+  @Test
+  void skipsTimingWithoutListeners() {
+    ProxyEvents.removeListener(listener);
+
+    final ProxyEvents.Recording recording = ProxyEvents.begin(ProxyOperation.Type.START, proxy);
+
+    assertSame(recording, ProxyEvents.begin(ProxyOperation.Type.STOP, null).withTest("[test]"));
+  }
+}
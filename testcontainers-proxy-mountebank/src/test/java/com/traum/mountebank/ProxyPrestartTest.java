@@ -0,0 +1,97 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ProxyPrestartTest {
+
+  @AfterEach
+  void stop() {
+    ProxyPrestart.stop();
+  }
+
+  @Test
+  void handsOverStartedProxyOnce() {
+    final AtomicInteger created = new AtomicInteger();
+    final MountebankExtension.MountebankProxyFactory factory =
+        new MountebankExtension.MountebankProxyFactory() {
+          @Override
+          public MountebankProxy create() {
+            created.incrementAndGet();
+            return new StartableProxy();
+          }
+        };
+    ProxyPrestart.start(factory);
+    ProxyPrestart.start(factory);
+
+    final Optional<MountebankProxy> proxy = ProxyPrestart.claim();
+    assertTrue(proxy.isPresent());
+    assertTrue(proxy.get().isRunning());
+    assertEquals(1, created.get());
+
+    assertFalse(ProxyPrestart.claim().isPresent());
+  }
+
+  @Test
+  void claimsNothingWhenStartFails() {
+    ProxyPrestart.start(
+        new MountebankExtension.MountebankProxyFactory() {
+          @Override
+          public MountebankProxy create() {
+            throw new IllegalStateException("docker is not available");
+          }
+        });
+
+    assertFalse(ProxyPrestart.claim().isPresent());
+  }
+
+  @Test
+  void stopsUnclaimedProxy() {
+    final StartableProxy proxy = new StartableProxy();
+    ProxyPrestart.start(
+        new MountebankExtension.MountebankProxyFactory() {
+          @Override
+          public MountebankProxy create() {
+            return proxy;
+          }
+        });
+
+    ProxyPrestart.stop();
+
+    assertTrue(proxy.stopped);
+    assertFalse(ProxyPrestart.claim().isPresent());
+  }
+
+  private static class StartableProxy extends ExternalMountebankProxy {
+
+    private volatile boolean running;
+    private volatile boolean stopped;
+
+    StartableProxy() {
+      super("http://localhost:2525", Map.of());
+    }
+
+    @Override
+    public void start() {
+      running = true;
+    }
+
+    @Override
+    public void stop() {
+      running = false;
+      stopped = true;
+    }
+
+    @Override
+    public boolean isRunning() {
+      return running;
+    }
+  }
+}
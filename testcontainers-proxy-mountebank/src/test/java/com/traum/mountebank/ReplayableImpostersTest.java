@@ -0,0 +1,134 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class ReplayableImpostersTest {
+
+  private static final String EXPORT =
+      "{\n"
+          + "  \"imposters\": [\n"
+          + "    {\n"
+          + "      \"protocol\": \"http\",\n"
+          + "      \"port\": 5050,\n"
+          + "      \"numberOfRequests\": 1,\n"
+          + "      \"requests\": [\n"
+          + "        {\n"
+          + "          \"path\": \"/users\",\n"
+          + "          \"query\": {}\n"
+          + "        }\n"
+          + "      ],\n"
+          + "      \"stubs\": [\n"
+          + "        {\n"
+          + "          \"predicates\": [],\n"
+          + "          \"responses\": [\n"
+          + "            {\n"
+          + "              \"is\": {\n"
+          + "                \"statusCode\": 200,\n"
+          + "                \"body\": \"line\\nbreak \\u00e4\"\n"
+          + "              }\n"
+          + "            }\n"
+          + "          ],\n"
+          + "          \"_links\": {\n"
+          + "            \"self\": {\n"
+          + "              \"href\": \"http://localhost:2525/imposters/5050/stubs/0\"\n"
+          + "            }\n"
+          + "          }\n"
+          + "        }\n"
+          + "      ],\n"
+          + "      \"_links\": {\n"
+          + "        \"self\": {\n"
+          + "          \"href\": \"http://localhost:2525/imposters/5050\"\n"
+          + "        }\n"
+          + "      }\n"
+          + "    }\n"
+          + "  ]\n"
+          + "}";
+
+  private static final String REPLAYABLE =
+      "{\n"
+          + "  \"imposters\": [\n"
+          + "    {\n"
+          + "      \"protocol\": \"http\",\n"
+          + "      \"port\": 5050,\n"
+          + "      \"stubs\": [\n"
+          + "        {\n"
+          + "          \"predicates\": [],\n"
+          + "          \"responses\": [\n"
+          + "            {\n"
+          + "              \"is\": {\n"
+          + "                \"statusCode\": 200,\n"
+          + "                \"body\": \"line\\nbreak \u00e4\"\n"
+          + "              }\n"
+          + "            }\n"
+          + "          ]\n"
+          + "        }\n"
+          + "      ]\n"
+          + "    }\n"
+          + "  ]\n"
+          + "}";
+
+  @Test
+  void dropsRequestsAndLinks() throws IOException {
+    final ByteArrayOutputStream replay = new ByteArrayOutputStream();
+    final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+    ReplayableImposters.write(
+        new ByteArrayInputStream(EXPORT.getBytes(StandardCharsets.UTF_8)),
+        replay,
+        record,
+        ReplayFormat.defaults());
+
+    assertEquals(REPLAYABLE, replay.toString(StandardCharsets.UTF_8));
+    assertEquals(EXPORT, record.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void dropsAndSortsResponseHeaders() throws IOException {
+    final String export =
+        "{\"imposters\": [{\"port\": 5050, \"stubs\": [{"
+            + "\"predicates\": [{\"equals\": {\"headers\": {\"Date\": \"today\"}}}],"
+            + "\"responses\": [{\"is\": {\"headers\": {"
+            + "\"X-RateLimit-Remaining\": \"59\", \"content-type\": \"text/plain\","
+            + " \"Date\": \"today\", \"Accept-Ranges\": [\"bytes\", \"none\"]},"
+            + " \"body\": \"a\"}}]}]}]}";
+    final ByteArrayOutputStream replay = new ByteArrayOutputStream();
+
+    ReplayableImposters.write(
+        new ByteArrayInputStream(export.getBytes(StandardCharsets.UTF_8)),
+        replay,
+        null,
+        ReplayFormat.defaults()
+            .withoutHeaders("date", "X-RateLimit-*")
+            .withSortedHeaders(true)
+            .withMinified(true));
+
+    assertEquals(
+        "{\"imposters\":[{\"port\":5050,\"stubs\":[{"
+            + "\"predicates\":[{\"equals\":{\"headers\":{\"Date\":\"today\"}}}],"
+            + "\"responses\":[{\"is\":{\"headers\":{"
+            + "\"Accept-Ranges\":[\"bytes\",\"none\"],\"content-type\":\"text/plain\"},"
+            + "\"body\":\"a\"}}]}]}]}",
+        replay.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void copiesUnexpectedDocumentsAsIs() throws IOException {
+    final ByteArrayOutputStream replay = new ByteArrayOutputStream();
+
+    ReplayableImposters.write(
+        new ByteArrayInputStream("{\"imposters\": {}, \"other\": [1]}".getBytes()),
+        replay,
+        null,
+        ReplayFormat.defaults());
+
+    assertEquals(
+        "{\n  \"imposters\": {},\n  \"other\": [\n    1\n  ]\n}",
+        replay.toString(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,101 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+
+class RequestStatsReportTest {
+
+  @Test
+  void sortsClassesAndTestsByRequests() throws IOException {
+    final Path output = Files.createTempFile("requests", ".json");
+    try {
+      final RequestStatsReport report = new RequestStatsReport(output);
+      report.add("[a]/[quiet]", "A", "quiet", stats(1, "\"numberOfRequests\": 1"));
+      report.add(
+          "[b]/[chatty]",
+          "B",
+          "chatty",
+          stats(
+              5050,
+              "\"numberOfRequests\": 3, \"requests\": [{\"method\": \"GET\", \"path\": \"/\"}]"));
+      report.add("[a]/[idle]", "A", "idle", stats(5050, "\"numberOfRequests\": 0"));
+      report.close();
+
+      assertEquals(
+          "{\n"
+              + "  \"requests\": 4,\n"
+              + "  \"classes\": [\n"
+              + "    {\n      \"class\": \"B\",\n      \"requests\": 3,\n"
+              + "      \"tests\": 1\n    },\n"
+              + "    {\n      \"class\": \"A\",\n      \"requests\": 1,\n"
+              + "      \"tests\": 2\n    }\n"
+              + "  ],\n"
+              + "  \"tests\": [\n"
+              + "    {\n"
+              + "      \"test\": \"[b]/[chatty]\",\n"
+              + "      \"class\": \"B\",\n"
+              + "      \"method\": \"chatty\",\n"
+              + "      \"requests\": 3,\n"
+              + "      \"imposters\": [\n"
+              + "        {\n"
+              + "          \"port\": 5050,\n"
+              + "          \"requests\": 3,\n"
+              + "          \"recordedRequests\": 1,\n"
+              + "          \"endpoints\": [\n"
+              + "            {\n"
+              + "              \"endpoint\": \"GET /\",\n"
+              + "              \"requests\": 1\n"
+              + "            }\n"
+              + "          ]\n"
+              + "        }\n"
+              + "      ]\n"
+              + "    },\n"
+              + "    {\n"
+              + "      \"test\": \"[a]/[quiet]\",\n"
+              + "      \"class\": \"A\",\n"
+              + "      \"method\": \"quiet\",\n"
+              + "      \"requests\": 1,\n"
+              + "      \"imposters\": [\n"
+              + "        {\n"
+              + "          \"port\": 1,\n"
+              + "          \"requests\": 1,\n"
+              + "          \"recordedRequests\": 0,\n"
+              + "          \"endpoints\": []\n"
+              + "        }\n"
+              + "      ]\n"
+              + "    },\n"
+              + "    {\n"
+              + "      \"test\": \"[a]/[idle]\",\n"
+              + "      \"class\": \"A\",\n"
+              + "      \"method\": \"idle\",\n"
+              + "      \"requests\": 0,\n"
+              + "      \"imposters\": [\n"
+              + "        {\n"
+              + "          \"port\": 5050,\n"
+              + "          \"requests\": 0,\n"
+              + "          \"recordedRequests\": 0,\n"
+              + "          \"endpoints\": []\n"
+              + "        }\n"
+              + "      ]\n"
+              + "    }\n"
+              + "  ]\n"
+              + "}",
+          Files.readString(output));
+    } finally {
+      Files.deleteIfExists(output);
+    }
+  }
+
+  private static RequestStats stats(int port, String fields) throws IOException {
+    return RequestStats.read(
+        new ByteArrayInputStream(
+            ("{\"imposters\": [{\"port\": " + port + ", " + fields + "}]}")
+                .getBytes(StandardCharsets.UTF_8)));
+  }
+}
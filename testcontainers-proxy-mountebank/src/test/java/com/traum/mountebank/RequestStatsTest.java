@@ -0,0 +1,47 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class RequestStatsTest {
+
+  @Test
+  void subtractsEarlierRequests() {
+    final RequestStats earlier =
+        CountingProxy.stats(
+            "{\"imposters\": [{\"port\": 5050, \"numberOfRequests\": 3, \"requests\": ["
+                + "{\"method\": \"GET\", \"path\": \"/a\"},"
+                + " {\"method\": \"GET\", \"path\": \"/b\"}]},"
+                + " {\"port\": 5051, \"numberOfRequests\": 4}]}");
+    final RequestStats later =
+        CountingProxy.stats(
+            "{\"imposters\": [{\"port\": 5050, \"numberOfRequests\": 5, \"requests\": ["
+                + "{\"method\": \"GET\", \"path\": \"/a\"},"
+                + " {\"method\": \"GET\", \"path\": \"/b\"},"
+                + " {\"method\": \"GET\", \"path\": \"/b\"}]},"
+                + " {\"port\": 5051, \"numberOfRequests\": 1}, {\"port\": 5052}]}");
+
+    final RequestStats since = later.since(earlier);
+
+    assertEquals(List.of(5050, 5051, 5052), ports(since));
+    final RequestStats.Imposter changed = since.getImposters().get(0);
+    assertEquals(2, changed.getRequests());
+    assertEquals(1, changed.getRecordedRequests());
+    assertEquals(Map.of("GET /b", 1), changed.getEndpoints());
+    // imported again in the meantime
+    assertEquals(1, since.getImposters().get(1).getRequests());
+    assertEquals(3, since.getRequests());
+  }
+
+  private static List<Integer> ports(RequestStats stats) {
+    return stats
+        .getImposters()
+        .stream()
+        .map(RequestStats.Imposter::getPort)
+        .collect(Collectors.toList());
+  }
+}
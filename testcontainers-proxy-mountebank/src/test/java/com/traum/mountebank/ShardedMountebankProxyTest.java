@@ -0,0 +1,150 @@
+package com.traum.mountebank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.traum.io.Replacements;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ShardedMountebankProxyTest {
+
+  private final List<Shard> shards = new ArrayList<>();
+
+  private ShardedMountebankProxy proxy;
+  private Path file;
+
+  @BeforeEach
+  void start() throws IOException {
+    shards.add(new Shard(Map.of(5050, "localhost:6050", 5052, "localhost:6052")));
+    shards.add(new Shard(Map.of(5051, "localhost:6051")));
+    proxy = new ShardedMountebankProxy(List.of(shards.get(0).proxy, shards.get(1).proxy));
+    file = Files.createTempFile("imposters", ".json");
+  }
+
+  @AfterEach
+  void stop() throws IOException {
+    shards.forEach(shard -> shard.server.stop(0));
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  void routesPortsToShards() {
+    assertEquals(List.of(5050, 5051, 5052), List.copyOf(proxy.getImposterPorts()));
+    assertEquals("localhost:6051", proxy.getImposterAuthority(5051));
+    assertEquals("localhost:6052", proxy.getImposterAuthority(5052));
+    assertThrows(IllegalArgumentException.class, () -> proxy.getImposterAuthority(5053));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new ShardedMountebankProxy(List.of(shards.get(0).proxy, shards.get(0).proxy)));
+  }
+
+  @Test
+  void splitsImportsByPort() throws IOException {
+    Files.writeString(
+        file,
+        "{\"imposters\": [{\"port\": 5050}, {\"port\": 5051, \"name\": \"b\"}, {\"port\": 5052}]}");
+
+    proxy.importImposters(file);
+
+    assertEquals("{\"imposters\":[{\"port\":5050},{\"port\":5052}]}", shards.get(0).lastImport);
+    assertEquals("{\"imposters\":[{\"port\":5051,\"name\":\"b\"}]}", shards.get(1).lastImport);
+  }
+
+  @Test
+  void rejectsImpostersWithoutShard() throws IOException {
+    Files.writeString(file, "{\"imposters\": [{\"port\": 5053}]}");
+
+    assertThrows(IllegalArgumentException.class, () -> proxy.importImposters(file));
+  }
+
+  @Test
+  void mergesSavesByPort() throws IOException {
+    shards.get(0).export = "{\"imposters\": [{\"port\": 5050}, {\"port\": 5052}]}";
+    shards.get(1).export = "{\"imposters\": [{\"port\": 5051, \"requests\": []}]}";
+
+    proxy.saveImposters(null, file, Replacements.none());
+
+    assertEquals(
+        "{\n  \"imposters\": [\n    {\n      \"port\": 5050\n    },\n"
+            + "    {\n      \"port\": 5051,\n      \"requests\": []\n    },\n"
+            + "    {\n      \"port\": 5052\n    }\n  ]\n}",
+        Files.readString(file));
+  }
+
+  @Test
+  void mergesRequestStats() {
+    shards.get(0).export = "{\"imposters\": [{\"port\": 5052, \"numberOfRequests\": 2}]}";
+    shards.get(1).export = "{\"imposters\": [{\"port\": 5051, \"numberOfRequests\": 1}]}";
+
+    final RequestStats stats = proxy.getRequestStats();
+
+    assertEquals(3, stats.getRequests());
+    assertEquals(5051, stats.getImposters().get(0).getPort());
+  }
+
+  @Test
+  void waitsForShardsOnBoundedExecutor() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    MountebankProxy.setAdminExecutor(executor);
+    try {
+      shards.get(0).export = "{\"imposters\": [{\"port\": 5052, \"numberOfRequests\": 2}]}";
+
+      assertEquals(2, proxy.getRequestStatsAsync().get(10, TimeUnit.SECONDS).getRequests());
+    } finally {
+      MountebankProxy.setAdminExecutor(null);
+      executor.shutdownNow();
+    }
+  }
+
+  private static final class Shard {
+
+    private final HttpServer server;
+    private final MountebankProxy proxy;
+    private volatile String lastImport;
+    private volatile String export = "{\"imposters\": []}";
+
+    Shard(Map<Integer, String> imposterAuthorities) throws IOException {
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+      server.createContext("/", this::handle);
+      server.start();
+      proxy =
+          new ExternalMountebankProxy(
+              "http://localhost:" + server.getAddress().getPort(), imposterAuthorities);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+      try {
+        final String body =
+            new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        if (exchange.getRequestMethod().equals("PUT")) {
+          lastImport = body;
+        }
+        if (exchange.getRequestMethod().equals("GET")) {
+          final byte[] response = export.getBytes(StandardCharsets.UTF_8);
+          exchange.sendResponseHeaders(200, response.length);
+          exchange.getResponseBody().write(response);
+          return;
+        }
+        exchange.sendResponseHeaders(200, -1);
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+}
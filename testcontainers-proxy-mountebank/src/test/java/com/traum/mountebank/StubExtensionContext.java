@@ -0,0 +1,198 @@
+package com.traum.mountebank;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.TestInstances;
+
+/**
+ * Minimal {@link ExtensionContext} hierarchy (engine, class, method) with working stores, so that
+ * tests and benchmarks can drive the lifecycle of {@link MountebankExtension} without a JUnit
+ * launcher.
+ */
+class StubExtensionContext implements ExtensionContext {
+
+  private final StubExtensionContext parent;
+  private final Class<?> testClass;
+  private final Method testMethod;
+  private final Map<String, String> configurationParameters;
+  private final Map<Namespace, StubStore> stores = new HashMap<>();
+
+  private StubExtensionContext(
+      StubExtensionContext parent,
+      Class<?> testClass,
+      Method testMethod,
+      Map<String, String> configurationParameters) {
+    this.parent = parent;
+    this.testClass = testClass;
+    this.testMethod = testMethod;
+    this.configurationParameters = configurationParameters;
+  }
+
+  static StubExtensionContext root(Map<String, String> configurationParameters) {
+    return new StubExtensionContext(null, null, null, configurationParameters);
+  }
+
+  StubExtensionContext forClass(Class<?> testClass) {
+    return new StubExtensionContext(this, testClass, null, configurationParameters);
+  }
+
+  StubExtensionContext forMethod(Method testMethod) {
+    return new StubExtensionContext(this, testClass, testMethod, configurationParameters);
+  }
+
+  @Override
+  public Optional<ExtensionContext> getParent() {
+    return Optional.ofNullable(parent);
+  }
+
+  @Override
+  public ExtensionContext getRoot() {
+    return parent == null ? this : parent.getRoot();
+  }
+
+  @Override
+  public String getUniqueId() {
+    return (parent == null ? "" : parent.getUniqueId() + "/")
+        + getElement().map(Object::toString).orElse("[engine:test]");
+  }
+
+  @Override
+  public String getDisplayName() {
+    return getUniqueId();
+  }
+
+  @Override
+  public Set<String> getTags() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public Optional<AnnotatedElement> getElement() {
+    return Optional.<AnnotatedElement>ofNullable(testMethod)
+        .or(() -> Optional.ofNullable(testClass));
+  }
+
+  @Override
+  public Optional<Class<?>> getTestClass() {
+    return Optional.ofNullable(testClass);
+  }
+
+  @Override
+  public Optional<TestInstance.Lifecycle> getTestInstanceLifecycle() {
+    return getTestClass().map(clazz -> TestInstance.Lifecycle.PER_METHOD);
+  }
+
+  @Override
+  public Optional<Object> getTestInstance() {
+    return Optional.empty();
+  }
+
+  @Override
+  public Optional<TestInstances> getTestInstances() {
+    return Optional.empty();
+  }
+
+  @Override
+  public Optional<Method> getTestMethod() {
+    return Optional.ofNullable(testMethod);
+  }
+
+  @Override
+  public Optional<Throwable> getExecutionException() {
+    return Optional.empty();
+  }
+
+  @Override
+  public Optional<String> getConfigurationParameter(String key) {
+    return Optional.ofNullable(configurationParameters.get(key))
+        .or(() -> Optional.ofNullable(System.getProperty(key)));
+  }
+
+  @Override
+  public void publishReportEntry(Map<String, String> map) {}
+
+  @Override
+  public Store getStore(Namespace namespace) {
+    return stores.computeIfAbsent(
+        namespace,
+        key -> new StubStore(parent == null ? null : (StubStore) parent.getStore(namespace)));
+  }
+
+  /** Closes stored {@link Store.CloseableResource}s like JUnit does when a context ends. */
+  void close() throws Throwable {
+    for (StubStore store : stores.values()) {
+      final List<Object> values = new ArrayList<>(store.values.values());
+      Collections.reverse(values);
+      for (Object value : values) {
+        if (value instanceof Store.CloseableResource) {
+          ((Store.CloseableResource) value).close();
+        }
+      }
+    }
+    stores.clear();
+  }
+
+  private static class StubStore implements Store {
+
+    private final StubStore parent;
+    private final Map<Object, Object> values = new LinkedHashMap<>();
+
+    StubStore(StubStore parent) {
+      this.parent = parent;
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+      final Object value = values.get(key);
+      return value != null || parent == null ? value : parent.get(key);
+    }
+
+    @Override
+    public <V> V get(Object key, Class<V> requiredType) {
+      return requiredType.cast(get(key));
+    }
+
+    @Override
+    public synchronized <K, V> Object getOrComputeIfAbsent(K key, Function<K, V> defaultCreator) {
+      final Object value = get(key);
+      if (value != null) {
+        return value;
+      }
+      final V created = defaultCreator.apply(key);
+      values.put(key, created);
+      return created;
+    }
+
+    @Override
+    public <K, V> V getOrComputeIfAbsent(
+        K key, Function<K, V> defaultCreator, Class<V> requiredType) {
+      return requiredType.cast(getOrComputeIfAbsent(key, defaultCreator));
+    }
+
+    @Override
+    public synchronized void put(Object key, Object value) {
+      values.put(key, value);
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+      return values.remove(key);
+    }
+
+    @Override
+    public <V> V remove(Object key, Class<V> requiredType) {
+      return requiredType.cast(remove(key));
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.traum.mountebank.load;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void reportsPercentilesWithinPrecision() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 100_000; value++) {
+      histogram.record(value);
+    }
+
+    assertEquals(100_000, histogram.getCount());
+    assertEquals(1, histogram.getMin());
+    assertEquals(100_000, histogram.getMax());
+    assertEquals(50_000.5, histogram.getMean());
+    assertWithinPrecision(50_000, histogram.getValueAtPercentile(50));
+    assertWithinPrecision(99_000, histogram.getValueAtPercentile(99));
+    assertWithinPrecision(99_900, histogram.getValueAtPercentile(99.9));
+    assertEquals(100_000, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  void countsSmallValuesExactly() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(3);
+    histogram.record(3);
+    histogram.record(7);
+
+    assertEquals(3, histogram.getValueAtPercentile(50));
+    assertEquals(7, histogram.getValueAtPercentile(90));
+  }
+
+  @Test
+  void coversAllValues() {
+    for (long value : new long[] {0, 127, 128, 129, 1_000_003, Long.MAX_VALUE}) {
+      final int index = LatencyHistogram.indexOf(value);
+      assertTrue(LatencyHistogram.highestEquivalentValue(index) >= value);
+      assertTrue(index == 0 || LatencyHistogram.highestEquivalentValue(index - 1) < value);
+    }
+    assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+    assertThrows(IllegalArgumentException.class, () -> new LatencyHistogram().record(-1));
+  }
+
+  private static void assertWithinPrecision(long expected, long actual) {
+    assertTrue(
+        Math.abs(actual - expected) <= expected / 64,
+        "expected ~" + expected + " but was " + actual);
+  }
+}
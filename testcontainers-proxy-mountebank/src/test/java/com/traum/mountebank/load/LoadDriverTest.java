@@ -0,0 +1,115 @@
+package com.traum.mountebank.load;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.traum.mountebank.ExternalMountebankProxy;
+import com.traum.mountebank.MountebankProxy;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LoadDriverTest {
+
+  private static final String RECORDED =
+      "{\"imposters\": ["
+          + "{\"protocol\": \"http\", \"port\": 5050, \"requests\": ["
+          + "{\"method\": \"GET\", \"path\": \"/users\", \"query\": {\"q\": [\"a b\", \"c\"]},"
+          + " \"headers\": {\"Host\": \"upstream\", \"Accept\": \"application/json\"},"
+          + " \"body\": \"\"},"
+          + "{\"method\": \"POST\", \"path\": \"/users\", \"query\": {},"
+          + " \"headers\": {\"Content-Length\": \"2\"}, \"body\": \"{}\"}]},"
+          + "{\"protocol\": \"tcp\", \"port\": 5051, \"requests\": [{\"data\": \"x\"}]}]}";
+
+  private final Set<String> requests = ConcurrentHashMap.newKeySet();
+
+  private HttpServer server;
+  private MountebankProxy proxy;
+
+  @BeforeEach
+  void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", this::handle);
+    server.start();
+    proxy =
+        new ExternalMountebankProxy(
+            "http://localhost:2525",
+            Map.of(5050, "localhost:" + server.getAddress().getPort()));
+  }
+
+  @AfterEach
+  void stop() {
+    server.stop(0);
+  }
+
+  @Test
+  void replaysRecordedRequests() throws IOException, InterruptedException {
+    final LoadDriver driver = LoadDriver.replaying(input(RECORDED)).withClients(4);
+    assertEquals(2, driver.getRecordedRequests());
+
+    final LoadResult result = driver.withMaxRequests(200).run(proxy);
+
+    assertEquals(200, result.getRequests());
+    assertEquals(0, result.getErrors());
+    assertEquals(Map.of(200, 200L), result.getStatusCodes());
+    assertEquals(200, result.getLatency().getCount());
+    assertTrue(result.getThroughput() > 0);
+    assertEquals(
+        Set.of("GET /users?q=a+b&q=c application/json ", "POST /users?null null {}"), requests);
+  }
+
+  @Test
+  void stopsAfterDuration() throws IOException, InterruptedException {
+    final LoadResult result =
+        LoadDriver.replaying(input(RECORDED))
+            .withWarmup(Duration.ofMillis(50))
+            .withDuration(Duration.ofMillis(100))
+            .run(proxy);
+
+    assertTrue(result.getRequests() > 0);
+    assertTrue(result.getDuration().toMillis() < 1000, result.toString());
+  }
+
+  @Test
+  void rejectsRecordingsWithoutHttpRequests() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> LoadDriver.replaying(input("{\"imposters\": [{\"port\": 5050}]}")));
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    final String body;
+    try (InputStream input = exchange.getRequestBody()) {
+      body = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    requests.add(
+        exchange.getRequestMethod()
+            + " "
+            + exchange.getRequestURI().getPath()
+            + "?"
+            + exchange.getRequestURI().getRawQuery()
+            + " "
+            + exchange.getRequestHeaders().getFirst("Accept")
+            + " "
+            + body);
+    exchange.sendResponseHeaders(200, -1);
+    exchange.close();
+  }
+
+  private static InputStream input(String json) {
+    return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,76 @@
+package com.traum.mountebank.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.OptionalInt;
+import org.junit.jupiter.api.Test;
+
+class ImposterIndexTest {
+
+  private static final String REPLAY =
+      "{\"imposters\": [{\"protocol\": \"http\", \"port\": 5050, \"stubs\": ["
+          + "{\"predicates\": [{\"deepEquals\": {\"method\": \"GET\", \"path\": \"/users\","
+          + " \"query\": {\"page\": \"1\"}}}]},"
+          + "{\"predicates\": [{\"equals\": {\"headers\": {\"X-Debug\": \"true\"}}}]},"
+          + "{\"predicates\": [{\"deepEquals\": {\"method\": \"GET\", \"path\": \"/users\","
+          + " \"query\": {\"page\": \"2\"}}}]},"
+          + "{\"predicates\": [{\"equals\": {\"method\": \"POST\"}},"
+          + " {\"equals\": {\"path\": \"/USERS\"}}]}"
+          + "]}]}";
+
+  @Test
+  void findsFirstMatchingStub() throws IOException {
+    final ImposterIndex index = read(REPLAY);
+
+    assertEquals(OptionalInt.of(0), index.findStub(5050, request("GET", "/users", "1", "false")));
+    assertEquals(OptionalInt.of(2), index.findStub(5050, request("GET", "/users", "2", "false")));
+    // stubs without method and path are evaluated in order, too
+    assertEquals(OptionalInt.of(1), index.findStub(5050, request("GET", "/users", "2", "true")));
+    assertEquals(OptionalInt.of(3), index.findStub(5050, request("POST", "/users", "", "false")));
+    assertEquals(OptionalInt.empty(), index.findStub(5050, request("GET", "/users", "3", "false")));
+    assertEquals(OptionalInt.empty(), index.findStub(6060, request("GET", "/users", "1", "false")));
+    assertTrue(index.getStub(5050, 3).startsWith("{\"predicates\":[{\"equals\""));
+  }
+
+  @Test
+  void reportsMissesOfCapturedRequests() throws IOException {
+    final String captured =
+        "{\"imposters\": [{\"protocol\": \"http\", \"port\": 5050, \"requests\": ["
+            + "{\"method\": \"GET\", \"path\": \"/users\", \"query\": {\"page\": \"2\"},"
+            + " \"headers\": {}},"
+            + "{\"method\": \"GET\", \"path\": \"/users\", \"query\": {\"page\": [\"3\", \"4\"]},"
+            + " \"headers\": {}},"
+            + "{\"method\": \"DELETE\", \"path\": \"/users\", \"query\": {}, \"headers\": {}}"
+            + "], \"stubs\": []}]}";
+
+    final ReplayMissReport report =
+        ReplayMissReport.check(
+            read(REPLAY), new ByteArrayInputStream(captured.getBytes(StandardCharsets.UTF_8)));
+
+    assertEquals(3, report.getRequests());
+    assertEquals(
+        "MISS 5050 GET /users?page=3&page=4 (path known)\n"
+            + "MISS 5050 DELETE /users\n"
+            + "2 of 3 captured requests miss the replay imposters",
+        report.toString());
+  }
+
+  private static ImposterIndex read(String json) throws IOException {
+    return ImposterIndex.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static Map<String, Object> request(
+      String method, String path, String page, String debug) {
+    return Map.of(
+        "method", method,
+        "path", path,
+        "query", page.isEmpty() ? Map.of() : Map.of("page", page),
+        "headers", Map.of("X-Debug", debug),
+        "body", "");
+  }
+}
@@ -0,0 +1,75 @@
+package com.traum.mountebank.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class PredicatesTest {
+
+  private static final Map<String, Object> REQUEST =
+      Map.of(
+          "method", "GET",
+          "path", "/users/Octocat",
+          "query", Map.of("page", "2", "tag", List.of("a", "b")),
+          "headers", Map.of("Accept", "application/json", "X-Trace", "123"),
+          "body", "{\"name\": \"octocat\", \"id\": 1}");
+
+  @Test
+  void equalsIgnoresCaseAndMissingFields() throws IOException {
+    assertTrue(matches("{\"equals\": {\"method\": \"get\", \"path\": \"/users/octocat\"}}"));
+    assertTrue(
+        matches(
+            "{\"equals\": {\"query\": {\"tag\": \"b\"},"
+                + " \"headers\": {\"accept\": \"APPLICATION/JSON\"}}}"));
+    assertTrue(matches("{\"equals\": {\"body\": {\"id\": 1}}}"));
+    assertFalse(matches("{\"equals\": {\"path\": \"/users/octocat\"}, \"caseSensitive\": true}"));
+    assertFalse(matches("{\"equals\": {\"query\": {\"page\": \"3\"}}}"));
+  }
+
+  @Test
+  void deepEqualsRequiresSameFields() throws IOException {
+    assertTrue(matches("{\"deepEquals\": {\"query\": {\"page\": 2, \"tag\": [\"b\", \"a\"]}}}"));
+    assertFalse(matches("{\"deepEquals\": {\"query\": {\"page\": \"2\"}}}"));
+    assertFalse(matches("{\"deepEquals\": {\"query\": {}}}"));
+    assertTrue(matches("{\"deepEquals\": {\"path\": \"/users/\"}, \"except\": \"octocat\"}"));
+  }
+
+  @Test
+  void combinesPredicates() throws IOException {
+    assertTrue(
+        matches(
+            "{\"and\": [{\"equals\": {\"method\": \"GET\"}},"
+                + " {\"not\": {\"equals\": {\"method\": \"POST\"}}}]}"));
+    assertTrue(
+        matches(
+            "{\"or\": [{\"equals\": {\"method\": \"POST\"}},"
+                + " {\"equals\": {\"method\": \"GET\"}}]}"));
+  }
+
+  @Test
+  void rejectsUnsupportedPredicates() throws IOException {
+    final IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> Predicates.validate(JsonTree.parse("{\"matches\": {\"path\": \"^/users\"}}")));
+    assertEquals("predicate 'matches' is not supported", e.getMessage());
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            Predicates.validate(
+                JsonTree.parse(
+                    "{\"equals\": {\"body\": \"a\"}, \"jsonpath\": {\"selector\": \"$\"}}")));
+  }
+
+  private static boolean matches(String predicate) throws IOException {
+    final Object json = JsonTree.parse(predicate);
+    Predicates.validate(json);
+    return Predicates.matches(JsonTree.asObject(json), REQUEST);
+  }
+}
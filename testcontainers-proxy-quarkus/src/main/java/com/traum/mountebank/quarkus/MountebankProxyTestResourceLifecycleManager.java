@@ -24,43 +24,113 @@ import com.traum.mountebank.ContainerMountebankProxy;
 import com.traum.mountebank.MountebankExtension;
 import com.traum.mountebank.MountebankProxy;
 import io.quarkus.test.common.QuarkusTestResourceLifecycleManager;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 public class MountebankProxyTestResourceLifecycleManager
     implements QuarkusTestResourceLifecycleManager {
 
+  /**
+   * System property starting containers in the background, e.g. {@code
+   * -Dmountebank.proxy.background-start=true}. Their host ports are reserved up front, so that the
+   * configuration is returned right away and the application boots while mountebank starts; tests
+   * wait for it when they first use the proxy. See {@link
+   * ContainerMountebankProxy#startInBackground()}.
+   */
+  public static final String BACKGROUND_START_PROPERTY = "mountebank.proxy.background-start";
+
+  /**
+   * System property disabling the proxies shared across Quarkus restarts, e.g. {@code
+   * -Dmountebank.proxy.quarkus.shared=false}. By default managers created with imposter ports share
+   * one container per set of ports with all managers of the JVM; restarts of the application, e.g.
+   * for another test profile, reset its imposters instead of starting a new container.
+   */
+  public static final String SHARED_PROPERTY = "mountebank.proxy.quarkus.shared";
+
   private final MountebankProxy proxy;
+  private final boolean shared;
+  private volatile CompletableFuture<Void> backgroundStart;
 
   public MountebankProxyTestResourceLifecycleManager() {
     this(new Integer[0]);
   }
 
   public MountebankProxyTestResourceLifecycleManager(Integer... imposterPorts) {
-    this(new ContainerMountebankProxy(imposterPorts));
+    this(() -> new ContainerMountebankProxy(imposterPorts), imposterPorts);
+  }
+
+  /** @param factory creates the proxy, unless a shared one serves the imposter ports already */
+  MountebankProxyTestResourceLifecycleManager(
+      Supplier<MountebankProxy> factory, Integer... imposterPorts) {
+    this(
+        Boolean.parseBoolean(System.getProperty(SHARED_PROPERTY, "true")), factory, imposterPorts);
+  }
+
+  private MountebankProxyTestResourceLifecycleManager(
+      boolean shared, Supplier<MountebankProxy> factory, Integer... imposterPorts) {
+    this(shared ? SharedProxies.get(factory, imposterPorts) : factory.get(), shared);
   }
 
+  /** @param proxy started and stopped with the application */
   public MountebankProxyTestResourceLifecycleManager(MountebankProxy proxy) {
+    this(proxy, false);
+  }
+
+  private MountebankProxyTestResourceLifecycleManager(MountebankProxy proxy, boolean shared) {
     this.proxy = proxy;
+    this.shared = shared;
   }
 
+  /**
+   * @return the API URL and imposter authorities, which are also set as system properties for the
+   *     {@link MountebankExtension}
+   */
   @Override
   public Map<String, String> start() {
-    getProxy().start();
-    System.setProperty(MountebankExtension.EXTERNAL_PROXY_API_URL_PROPERTY, proxy.getApiUrl());
+    // shared proxies keep running, their imposters were reset when the previous application stopped
+    if (!shared || !getProxy().isRunning()) {
+      startProxy();
+    }
+    final Map<String, String> properties = new HashMap<>();
+    properties.put(MountebankExtension.EXTERNAL_PROXY_API_URL_PROPERTY, proxy.getApiUrl());
     getProxy()
         .getImposterPorts()
         .forEach(
             port -> {
               String key =
                   MountebankExtension.EXTERNAL_PROXY_PROPERTY_PREFIX + "." + port + ".authority";
-              System.setProperty(key, proxy.getImposterAuthority(port));
+              properties.put(key, proxy.getImposterAuthority(port));
             });
-    return Map.of();
+    properties.forEach(System::setProperty);
+    return properties;
+  }
+
+  private void startProxy() {
+    if (Boolean.getBoolean(BACKGROUND_START_PROPERTY)
+        && getProxy() instanceof ContainerMountebankProxy) {
+      backgroundStart = ((ContainerMountebankProxy) getProxy()).startInBackground();
+    } else {
+      getProxy().start();
+    }
   }
 
+  /** Stops the proxy, unless it is shared; then only its imposters are removed. */
   @Override
   public void stop() {
-    proxy.stop();
+    if (!shared) {
+      proxy.stop();
+      return;
+    }
+    final CompletableFuture<Void> started = backgroundStart;
+    if (started != null) {
+      // the container isn't running until it started, the application may have imported already
+      started.handle((result, failure) -> null).join();
+    }
+    if (proxy.isRunning()) {
+      proxy.resetImposters();
+    }
   }
 
   protected MountebankProxy getProxy() {
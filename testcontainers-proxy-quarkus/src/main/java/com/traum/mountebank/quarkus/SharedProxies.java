@@ -0,0 +1,65 @@
+package com.traum.mountebank.quarkus;
+
+
+/*-
+ * #%L
+ * testcontainers-proxy-quarkus
+ * %%
+ * Copyright (C) 2020 Traum-Ferienwohnungen GmbH
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.traum.mountebank.MountebankProxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Proxies which the test resources of all Quarkus restarts of the JVM share, e.g. of test profiles,
+ * by the imposter ports of their container. They are stopped once, when the JVM exits.
+ */
+final class SharedProxies {
+
+  private static final Map<Set<Integer>, MountebankProxy> PROXIES = new HashMap<>();
+
+  private SharedProxies() {}
+
+  /** @param factory creates the proxy of the imposter ports, unless there is one already */
+  static synchronized MountebankProxy get(
+      Supplier<? extends MountebankProxy> factory, Integer... imposterPorts) {
+    if (PROXIES.isEmpty()) {
+      Runtime.getRuntime()
+          .addShutdownHook(new Thread(SharedProxies::stopAll, "mountebank-shared-stop"));
+    }
+    return PROXIES.computeIfAbsent(
+        Set.copyOf(Arrays.asList(imposterPorts)), ports -> factory.get());
+  }
+
+  private static synchronized void stopAll() {
+    PROXIES
+        .values()
+        .forEach(
+            proxy -> {
+              try {
+                proxy.stop();
+              } catch (RuntimeException e) {
+                // the JVM exits anyway, the remaining proxies are still stopped
+              }
+            });
+    PROXIES.clear();
+  }
+}
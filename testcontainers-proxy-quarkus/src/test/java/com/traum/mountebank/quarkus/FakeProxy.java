@@ -0,0 +1,71 @@
+package com.traum.mountebank.quarkus;
+
+import com.traum.mountebank.ContainerMountebankProxy;
+import com.traum.mountebank.MountebankContainer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/** Counts the lifecycle calls instead of starting a container. */
+class FakeProxy extends ContainerMountebankProxy {
+
+  private final int imposterPort;
+  private final CompletableFuture<Void> backgroundStart = new CompletableFuture<>();
+  int starts;
+  int stops;
+  int resets;
+  private volatile boolean running;
+
+  FakeProxy(int imposterPort) {
+    super((MountebankContainer) null);
+    this.imposterPort = imposterPort;
+  }
+
+  @Override
+  public synchronized CompletableFuture<Void> startInBackground() {
+    return backgroundStart;
+  }
+
+  /** Completes the {@link #startInBackground() background start}. */
+  void started() {
+    running = true;
+    backgroundStart.complete(null);
+  }
+
+  @Override
+  public void start() {
+    starts++;
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    stops++;
+    running = false;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public void resetImposters() {
+    resets++;
+  }
+
+  @Override
+  public String getApiUrl() {
+    return "http://localhost:2525";
+  }
+
+  @Override
+  public String getImposterAuthority(int imposterPort) {
+    return "localhost:" + imposterPort;
+  }
+
+  @Override
+  public Collection<Integer> getImposterPorts() {
+    return List.of(imposterPort);
+  }
+}
@@ -0,0 +1,100 @@
+package com.traum.mountebank.quarkus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.traum.mountebank.MountebankExtension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class MountebankProxyTestResourceLifecycleManagerTest {
+
+  private final List<FakeProxy> proxies = new ArrayList<>();
+
+  @AfterEach
+  void clearProperties() {
+    System.clearProperty(MountebankProxyTestResourceLifecycleManager.SHARED_PROPERTY);
+    System.clearProperty(MountebankProxyTestResourceLifecycleManager.BACKGROUND_START_PROPERTY);
+    System.clearProperty(MountebankExtension.EXTERNAL_PROXY_API_URL_PROPERTY);
+    System.clearProperty(MountebankExtension.EXTERNAL_PROXY_PROPERTY_PREFIX + ".7070.authority");
+    System.clearProperty(MountebankExtension.EXTERNAL_PROXY_PROPERTY_PREFIX + ".7071.authority");
+    System.clearProperty(MountebankExtension.EXTERNAL_PROXY_PROPERTY_PREFIX + ".7072.authority");
+  }
+
+  @Test
+  void resetsSharedProxyInsteadOfStoppingIt() {
+    final MountebankProxyTestResourceLifecycleManager first = manager(7070);
+    final Map<String, String> properties = first.start();
+    first.stop();
+    final MountebankProxyTestResourceLifecycleManager restarted = manager(7070);
+    restarted.start();
+    restarted.stop();
+
+    assertSame(first.getProxy(), restarted.getProxy());
+    final FakeProxy proxy = proxies.get(0);
+    assertEquals(1, proxies.size());
+    assertEquals(1, proxy.starts);
+    assertEquals(2, proxy.resets);
+    assertEquals(0, proxy.stops);
+    assertEquals(
+        Map.of(
+            MountebankExtension.EXTERNAL_PROXY_API_URL_PROPERTY,
+            "http://localhost:2525",
+            MountebankExtension.EXTERNAL_PROXY_PROPERTY_PREFIX + ".7070.authority",
+            "localhost:7070"),
+        properties);
+  }
+
+  @Test
+  void stopsProxiesWhichAreNotShared() {
+    System.setProperty(MountebankProxyTestResourceLifecycleManager.SHARED_PROPERTY, "false");
+    final MountebankProxyTestResourceLifecycleManager first = manager(7071);
+    first.start();
+    first.stop();
+    final MountebankProxyTestResourceLifecycleManager restarted = manager(7071);
+    restarted.start();
+    restarted.stop();
+
+    assertNotSame(first.getProxy(), restarted.getProxy());
+    for (FakeProxy proxy : proxies) {
+      assertEquals(1, proxy.starts);
+      assertEquals(0, proxy.resets);
+      assertEquals(1, proxy.stops);
+    }
+  }
+
+  @Test
+  void resetsSharedProxyOnceItStartedInBackground() throws Exception {
+    System.setProperty(
+        MountebankProxyTestResourceLifecycleManager.BACKGROUND_START_PROPERTY, "true");
+    final MountebankProxyTestResourceLifecycleManager manager = manager(7072);
+    manager.start();
+    final FakeProxy proxy = proxies.get(0);
+
+    final CompletableFuture<Void> stopped = CompletableFuture.runAsync(manager::stop);
+    Thread.sleep(100);
+    assertFalse(stopped.isDone());
+    proxy.started();
+    stopped.get(5, TimeUnit.SECONDS);
+
+    assertEquals(0, proxy.starts);
+    assertEquals(1, proxy.resets);
+  }
+
+  private MountebankProxyTestResourceLifecycleManager manager(int imposterPort) {
+    return new MountebankProxyTestResourceLifecycleManager(
+        () -> {
+          final FakeProxy proxy = new FakeProxy(imposterPort);
+          proxies.add(proxy);
+          return proxy;
+        },
+        imposterPort);
+  }
+}
@@ -0,0 +1,28 @@
+package com.traum.mountebank.quarkus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.traum.mountebank.MountebankProxy;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class SharedProxiesTest {
+
+  private final AtomicInteger created = new AtomicInteger();
+
+  @Test
+  void sharesOneProxyPerSetOfPorts() {
+    final MountebankProxy proxy = SharedProxies.get(this::create, 6060, 6061);
+
+    assertSame(proxy, SharedProxies.get(this::create, 6061, 6060));
+    assertNotSame(proxy, SharedProxies.get(this::create, 6061));
+    assertEquals(2, created.get());
+  }
+
+  private MountebankProxy create() {
+    created.incrementAndGet();
+    return new FakeProxy(6060);
+  }
+}